@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct buffers, in power of two sizes, shared by the batches of
+ * a parse. Allocating direct memory is slow and freeing it is up to the
+ * garbage collector, so the buffers of released batches are kept for the
+ * next ones, up to a limit on the retained bytes. Buffers may be released
+ * from any thread.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class DirectBufferPool {
+
+    static final long DEFAULT_MAX_RETAINED = 0x4000000;
+
+    private static final int MIN_SIZE_CLASS = 12;
+
+    private static final int MAX_SIZE_CLASS = 30;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<ByteBuffer>[] free = new ArrayDeque[MAX_SIZE_CLASS + 1];
+
+    private final long maxRetained;
+
+    private long retained;
+
+    DirectBufferPool(long maxRetained) {
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Returns a little-endian buffer of at least the given size. Its contents
+     * are undefined.
+     */
+    ByteBuffer allocate(int size) {
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(size - 1));
+
+        if (sizeClass > MAX_SIZE_CLASS) {
+            return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> buffers = free[sizeClass];
+            ByteBuffer buf = buffers != null ? buffers.poll() : null;
+
+            if (buf != null) {
+                retained -= buf.capacity();
+                return buf.clear();
+            }
+        }
+
+        return ByteBuffer.allocateDirect(1 << sizeClass).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns a buffer to the pool, unless the pool already retains the
+     * maximum.
+     */
+    synchronized void release(ByteBuffer buf) {
+        int capacity = buf.capacity();
+
+        if (Integer.bitCount(capacity) != 1 || capacity > 1 << MAX_SIZE_CLASS || retained + capacity > maxRetained) {
+            return;
+        }
+
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+
+        if (free[sizeClass] == null) {
+            free[sizeClass] = new ArrayDeque<>();
+        }
+
+        free[sizeClass].push(buf);
+        retained += capacity;
+    }
+
+    synchronized long getRetained() {
+        return retained;
+    }
+
+}
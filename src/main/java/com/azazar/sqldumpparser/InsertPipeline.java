@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import com.azazar.sqldumpparser.util.IOExceptionWrapper;
+import com.azazar.sqldumpparser.util.InputStreamParseBuffer;
+import com.azazar.sqldumpparser.util.ParseBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Parses INSERT statements from a Reader in stages connected by bounded
+ * queues, so that reading, lexing, decoding and delivery of rows overlap:
+ * <ul>
+ * <li>read: blocks of chars are read from the Reader on a stage thread;</li>
+ * <li>lex: the blocks are split into chunks of whole statements on a stage
+ * thread, tracking strings, quoted identifiers and comments;</li>
+ * <li>decode: the chunks are parsed into rows on the calling thread;</li>
+ * <li>deliver: the rows are passed to the callbacks by the workers of a
+ * ParallelRowCallback.</li>
+ * </ul>
+ * Chunks have a fixed size, so a statement longer than a chunk, such as an
+ * extended INSERT of a large table, is passed on in chunks marked as
+ * continued, which the decode stage streams to the parser as they come.
+ * Error positions are offsets in the bytes the Reader decodes if it decodes
+ * UTF-8, as in the sequential path for files and streams, and char offsets
+ * otherwise. A failure of a stage is passed down to the calling thread,
+ * which stops the other stages. The read stage isn't interrupted, since interrupting a read
+ * from a channel closes the channel, but is waited for to complete the read
+ * in progress.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class InsertPipeline {
+
+    /**
+     * The number of chars in a block read, and the minimum number of chars in
+     * a chunk of statements.
+     */
+    static final int BLOCK_SIZE = 0x10000;
+
+    /**
+     * The maximum number of chars in a chunk.
+     */
+    static final int CHUNK_SIZE = BLOCK_SIZE * 2;
+
+    static final ThreadFactory DEFAULT_THREAD_FACTORY = r -> {
+        Thread t = new Thread(r, "sql-insert-pipeline");
+        t.setDaemon(true);
+        return t;
+    };
+
+    private static final class Block {
+
+        final char[] data;
+
+        int length;
+
+        /**
+         * The position of the first char of a chunk in the input, in bytes if
+         * the input is decoded from UTF-8.
+         */
+        long position;
+
+        /**
+         * The failure of a previous stage, passed on instead of data.
+         */
+        Throwable error;
+
+        /**
+         * Whether the last statement of a chunk continues in the next chunk.
+         */
+        boolean continued;
+
+        boolean last;
+
+        Block(int size) {
+            data = new char[size];
+        }
+
+        Block reset() {
+            length = 0;
+            error = null;
+            continued = false;
+            last = false;
+            return this;
+        }
+
+    }
+
+    final SqlPipelineStage read;
+
+    final SqlPipelineStage lex;
+
+    final SqlPipelineStage decode;
+
+    private final ThreadFactory threadFactory;
+
+    /**
+     * Whether positions are counted in the UTF-8 bytes the chars are
+     * decoded from.
+     */
+    private final boolean utf8;
+
+    private final BlockingQueue<Block> readQueue;
+
+    private final BlockingQueue<Block> readFree;
+
+    private final BlockingQueue<Block> lexQueue;
+
+    private final BlockingQueue<Block> lexFree;
+
+    /**
+     * Put into readFree to stop the read stage.
+     */
+    private final Block poison = new Block(0);
+
+    private volatile boolean stopped;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param depth the number of blocks queued between stages.
+     * @param threadFactory the factory of the read and lex threads.
+     * @param utf8 whether the Reader decodes UTF-8 bytes, in which error
+     * positions are reported.
+     */
+    InsertPipeline(int depth, ThreadFactory threadFactory, boolean utf8) {
+        this.threadFactory = threadFactory;
+        this.utf8 = utf8;
+
+        // Room for every read block, so that the read stage only waits for
+        // free blocks
+        readQueue = new ArrayBlockingQueue<>(depth + 2);
+        lexQueue = new ArrayBlockingQueue<>(depth);
+
+        // A block more is being filled and another one is being consumed,
+        // and readFree also has room for the poison block
+        readFree = new ArrayBlockingQueue<>(depth + 3);
+        lexFree = new ArrayBlockingQueue<>(depth + 2);
+
+        for (int i = 0; i < depth + 2; i++) {
+            readFree.add(new Block(BLOCK_SIZE));
+            lexFree.add(new Block(CHUNK_SIZE));
+        }
+
+        read = new SqlPipelineStage("read", 0, () -> 0);
+        lex = new SqlPipelineStage("lex", depth, readQueue::size);
+        decode = new SqlPipelineStage("decode", depth, lexQueue::size);
+    }
+
+    /**
+     * Parses statements from a Reader, passing them to the parser along with
+     * the handler the parser passes rows to.
+     *
+     * @param reader the Reader to read from.
+     * @param parser the parser with the insert handler set.
+     * @param handler the consumer of other statements.
+     * @param deliver the callback the handler passes rows to.
+     */
+    void run(Reader reader, SqlParser parser, Consumer<SqlStatement> handler, ParallelRowCallback deliver) throws SqlParseException, IOException {
+        Thread readThread = threadFactory.newThread(() -> readBlocks(reader));
+        Thread lexThread = threadFactory.newThread(this::splitStatements);
+
+        readThread.start();
+        lexThread.start();
+
+        try {
+            while (true) {
+                Block block = take(lexQueue);
+
+                if (block.error != null) {
+                    rethrow(block.error);
+                }
+
+                if (block.continued) {
+                    block = parseContinued(block, parser, handler, deliver);
+                }
+                else if (block.length > 0) {
+                    long start = System.nanoTime();
+                    long blocked = deliver.getBlockedNanos();
+
+                    try {
+                        parser.parse(ParseBuffer.wrap(CharBuffer.wrap(block.data, 0, block.length)), handler);
+                    } catch (SqlParseException ex) {
+                        int index = (int) ex.getPosition();
+
+                        throw new SqlParseException(ex, block.position + length(block.data, index) - index);
+                    } catch (IOExceptionWrapper ex) {
+                        throw ex.getCause();
+                    }
+
+                    decode.addBusy(System.nanoTime() - start - (deliver.getBlockedNanos() - blocked));
+                    decode.addCount(1);
+                }
+
+                if (block.last) {
+                    break;
+                }
+
+                lexFree.add(block.reset());
+            }
+        }
+        finally {
+            stopped = true;
+            readFree.offer(poison);
+            lexThread.interrupt();
+
+            try {
+                readThread.join();
+                lexThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void readBlocks(Reader reader) {
+        try {
+            while (!stopped) {
+                Block block = readFree.take();
+
+                if (block == poison || stopped) {
+                    break;
+                }
+
+                long start = System.nanoTime();
+
+                try {
+                    while (block.length < block.data.length) {
+                        int n = reader.read(block.data, block.length, block.data.length - block.length);
+
+                        if (n == -1) {
+                            break;
+                        }
+
+                        block.length += n;
+                    }
+                } catch (Throwable ex) {
+                    block.error = ex;
+                }
+
+                read.addBusy(System.nanoTime() - start);
+                read.addCount(1);
+
+                block.last = block.error != null || block.length < block.data.length;
+
+                readQueue.put(block);
+
+                if (block.last) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Parses a statement that continues across chunks, along with the other
+     * statements of its chunks, streaming the chunks to the parser. Streamed
+     * UTF-8 input is encoded back to bytes, so that error positions are in
+     * bytes.
+     *
+     * @return the chunk the statement ends in.
+     */
+    private Block parseContinued(Block first, SqlParser parser, Consumer<SqlStatement> handler, ParallelRowCallback deliver) throws SqlParseException, IOException {
+        // The chunk is reused once it's read
+        long position = first.position;
+        ChunkReader reader = new ChunkReader(first);
+        long start = System.nanoTime();
+        long blocked = deliver.getBlockedNanos();
+
+        try {
+            parser.parse(utf8 ? new InputStreamParseBuffer(new Utf8Stream(reader)) : ParseBuffer.wrap(reader, parser.getMaxBufferSize()), handler);
+        } catch (SqlParseException ex) {
+            throw new SqlParseException(ex, position);
+        } catch (IOExceptionWrapper ex) {
+            throw ex.getCause();
+        }
+
+        decode.addBusy(System.nanoTime() - start - (deliver.getBlockedNanos() - blocked) - reader.waitNanos);
+        decode.addCount(reader.count);
+
+        return reader.block;
+    }
+
+    /**
+     * Copies blocks into chunks, cutting a chunk after the first statement
+     * that ends past BLOCK_SIZE chars. A chunk that fills up is cut after its
+     * last statement, or passed on as continued if no statement ends in it,
+     * with the lexical state carried over to the next chunk.
+     */
+    private void splitStatements() {
+        try {
+            byte state = StatementBoundaryScanner.OUT;
+            Block out = lexFree.take();
+
+            out.position = 0;
+
+            // The length of the whole statements in out
+            int cut = 0;
+
+            while (true) {
+                Block in = readQueue.take();
+
+                if (in.error != null) {
+                    out.length = 0;
+                    out.error = in.error;
+                    out.last = true;
+                    lexQueue.put(out);
+                    break;
+                }
+
+                long start = System.nanoTime();
+                char[] src = in.data;
+                int i = 0;
+
+                while (i < in.length) {
+                    if (out.length == out.data.length) {
+                        lex.addBusy(System.nanoTime() - start);
+                        out = pass(out, cut);
+                        cut = 0;
+                        start = System.nanoTime();
+                    }
+
+                    char[] dst = out.data;
+                    int o = out.length;
+                    int end = i + Math.min(in.length - i, dst.length - o);
+
+                    for (; i < end; i++) {
+                        char c = src[i];
+
+                        dst[o++] = c;
+
+                        if (StatementBoundaryScanner.terminates(state, c)) {
+                            cut = o;
+                        }
+
+                        state = StatementBoundaryScanner.next(state, c);
+                    }
+
+                    out.length = o;
+                }
+
+                boolean last = in.last;
+
+                readFree.put(in.reset());
+
+                lex.addBusy(System.nanoTime() - start);
+                lex.addCount(1);
+
+                if (last) {
+                    out.last = true;
+                    lexQueue.put(out);
+                    break;
+                }
+
+                if (cut > 0 && out.length >= BLOCK_SIZE) {
+                    out = pass(out, cut);
+                    cut = 0;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Passes a chunk on to the decode stage, cut after the given number of
+     * chars, or as a whole and continued if no statement ends in it.
+     *
+     * @param cut the length of the whole statements in the chunk, 0 if none.
+     * @return the next chunk, holding the rest of the chunk after the cut.
+     */
+    private Block pass(Block out, int cut) throws InterruptedException {
+        Block next = lexFree.take();
+        long start = System.nanoTime();
+
+        if (cut == 0) {
+            cut = out.length;
+            out.continued = true;
+        }
+
+        int rest = out.length - cut;
+
+        System.arraycopy(out.data, cut, next.data, 0, rest);
+        next.length = rest;
+        next.position = out.position + length(out.data, cut);
+        out.length = cut;
+
+        lex.addBusy(System.nanoTime() - start);
+
+        lexQueue.put(out);
+
+        return next;
+    }
+
+    /**
+     * Returns the length of the first chars of a chunk in the units of
+     * positions.
+     */
+    private long length(char[] data, int count) {
+        if (!utf8) {
+            return count;
+        }
+
+        long length = count;
+
+        for (int i = 0; i < count; i++) {
+            char ch = data[i];
+
+            if (ch >= 0x80) {
+                // A surrogate pair is 4 bytes, 2 per surrogate
+                length += ch < 0x800 || Character.isSurrogate(ch) ? 1 : 2;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Reads the chunks of a statement that continues across chunks, from its
+     * first chunk to the one it ends in, putting each chunk back to be reused
+     * once it's read.
+     */
+    private final class ChunkReader extends Reader {
+
+        /**
+         * The chunk being read.
+         */
+        private Block block;
+
+        private int offset;
+
+        /**
+         * The number of chunks read.
+         */
+        private int count = 1;
+
+        /**
+         * The time spent waiting for chunks.
+         */
+        private long waitNanos;
+
+        ChunkReader(Block first) {
+            this.block = first;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (offset == block.length) {
+                if (!block.continued) {
+                    return -1;
+                }
+
+                long start = System.nanoTime();
+                Block next = take(lexQueue);
+
+                waitNanos += System.nanoTime() - start;
+
+                lexFree.add(block.reset());
+                block = next;
+                offset = 0;
+                count++;
+
+                if (block.error != null) {
+                    rethrow(block.error);
+                }
+            }
+
+            int n = Math.min(len, block.length - offset);
+
+            System.arraycopy(block.data, offset, cbuf, off, n);
+            offset += n;
+
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // The chunks are put back as they are read
+        }
+
+    }
+
+    /**
+     * Encodes the chars of a Reader back to UTF-8.
+     */
+    private static final class Utf8Stream extends InputStream {
+
+        private final Reader reader;
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE).flip();
+
+        private final ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE * 3).flip();
+
+        private boolean eof;
+
+        Utf8Stream(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? bytes.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            int n = Math.min(len, bytes.remaining());
+
+            bytes.get(b, off, n);
+
+            return n;
+        }
+
+        /**
+         * Encodes more chars once the encoded bytes are read.
+         *
+         * @return false at the end of the chars.
+         */
+        private boolean fill() throws IOException {
+            while (!bytes.hasRemaining()) {
+                if (eof) {
+                    return false;
+                }
+
+                // A high surrogate may be left over for the next read
+                chars.compact();
+                eof = reader.read(chars) == -1;
+                chars.flip();
+
+                bytes.clear();
+                encoder.encode(chars, bytes, eof);
+
+                if (eof) {
+                    encoder.flush(bytes);
+                }
+
+                bytes.flip();
+            }
+
+            return true;
+        }
+
+    }
+
+    private static Block take(BlockingQueue<Block> queue) throws InterruptedIOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void rethrow(Throwable ex) throws IOException {
+        if (ex instanceof IOException ioe) {
+            throw ioe;
+        }
+
+        if (ex instanceof RuntimeException re) {
+            throw re;
+        }
+
+        if (ex instanceof Error e) {
+            throw e;
+        }
+
+        throw new IOException(ex);
+    }
+
+}
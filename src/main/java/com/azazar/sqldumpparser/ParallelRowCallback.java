@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import com.azazar.sqldumpparser.util.IOExceptionWrapper;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Passes rows to callbacks running on worker threads. Each table is assigned
+ * to a worker by its name, so rows of a table are delivered in order by a
+ * single thread, while different tables are processed concurrently. Rows are
+ * copied into chunks, and each worker queues a bounded number of chunks, so
+ * the parsing thread waits for workers that fall behind.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class ParallelRowCallback implements SqlInsertRowCallback {
+
+    /**
+     * The number of rows passed to a worker at once.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * The number of chunks queued per worker.
+     */
+    static final int QUEUE_DEPTH = 4;
+
+    static final ThreadFactory DEFAULT_THREAD_FACTORY = r -> {
+        Thread t = new Thread(r, "sql-insert-worker");
+        t.setDaemon(true);
+        return t;
+    };
+
+    /**
+     * Marks the end of the rows in a queue.
+     */
+    private static final Object END = new Object();
+
+    private static final class Chunk {
+
+        final SqlRow[] rows = new SqlRow[CHUNK_SIZE];
+
+        int size;
+
+    }
+
+    private record CreateTable(String tableName, List<String> fieldNames) {
+    }
+
+    private final class Worker implements Runnable {
+
+        /**
+         * Chunks and CreateTable messages in order, then END.
+         */
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+
+        /**
+         * Delivered chunks available for reuse.
+         */
+        final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUE_DEPTH + 2);
+
+        final SqlInsertRowCallback callback;
+
+        final Thread thread;
+
+        /**
+         * The chunk being filled by the parsing thread.
+         */
+        Chunk current;
+
+        Worker(SqlInsertRowCallback callback, ThreadFactory threadFactory) {
+            this.callback = callback;
+
+            for (int i = 0; i < QUEUE_DEPTH + 2; i++) {
+                free.add(new Chunk());
+            }
+
+            thread = threadFactory.newThread(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object item;
+
+                while ((item = queue.take()) != END) {
+                    // After a failure the remaining items are only drained
+                    if (error == null && !aborted) {
+                        try {
+                            SqlPipelineStage stats = stage;
+
+                            if (stats != null) {
+                                long start = System.nanoTime();
+
+                                deliver(item);
+                                stats.addBusy(System.nanoTime() - start);
+
+                                if (item instanceof Chunk chunk) {
+                                    stats.addCount(chunk.size);
+                                }
+                            }
+                            else {
+                                deliver(item);
+                            }
+                        }
+                        catch (Throwable ex) {
+                            fail(ex);
+                        }
+                    }
+
+                    if (item instanceof Chunk chunk) {
+                        chunk.size = 0;
+                        free.put(chunk);
+                    }
+                }
+
+                if (error == null && !aborted) {
+                    try {
+                        finisher.accept(callback);
+                    }
+                    catch (Throwable ex) {
+                        fail(ex);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // Interrupted by the owner of the thread
+            }
+        }
+
+        private void deliver(Object item) {
+            if (item instanceof Chunk chunk) {
+                for (int i = 0; i < chunk.size; i++) {
+                    callback.onRow(chunk.rows[i]);
+                }
+            }
+            else {
+                CreateTable create = (CreateTable) item;
+
+                callback.onCreateTable(create.tableName(), create.fieldNames());
+            }
+        }
+
+    }
+
+    private final Worker[] workers;
+
+    /**
+     * The table of the previous row and its worker, since consecutive rows
+     * are usually of the same table.
+     */
+    private String lastTableName;
+
+    private Worker lastWorker;
+
+    private final Consumer<SqlInsertRowCallback> finisher;
+
+    private volatile Throwable error;
+
+    private volatile boolean aborted;
+
+    /**
+     * The statistics of the workers, or null if they aren't collected.
+     */
+    private volatile SqlPipelineStage stage;
+
+    /**
+     * The time the parsing thread waited for the workers, if statistics are
+     * collected.
+     */
+    private long blockedNanos;
+
+    /**
+     * Starts the workers.
+     *
+     * @param threads the number of workers.
+     * @param threadFactory the factory of the worker threads.
+     * @param callbacks creates the callback of each worker.
+     * @param finisher called on each worker with its callback after the last
+     * row.
+     */
+    ParallelRowCallback(int threads, ThreadFactory threadFactory, Supplier<SqlInsertRowCallback> callbacks, Consumer<SqlInsertRowCallback> finisher) {
+        this.workers = new Worker[threads];
+        this.finisher = finisher;
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(callbacks.get(), threadFactory);
+        }
+
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Starts collecting statistics of the workers.
+     *
+     * @return the statistics.
+     */
+    SqlPipelineStage monitor() {
+        SqlPipelineStage stats = new SqlPipelineStage("deliver", workers.length * QUEUE_DEPTH, () -> {
+            int size = 0;
+
+            for (Worker worker : workers) {
+                size += worker.queue.size();
+            }
+
+            return size;
+        });
+
+        stage = stats;
+
+        return stats;
+    }
+
+    /**
+     * Returns the time the parsing thread waited for the workers since
+     * {@link #monitor()} was called.
+     */
+    long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * Returns the worker of a table. Tables are assigned by their lower case
+     * names, which {@link #onCreateTable} is called with, so a table's rows
+     * follow its definition whatever case its statements use.
+     */
+    private Worker worker(String tableName) {
+        if (!tableName.equals(lastTableName)) {
+            lastTableName = tableName;
+            lastWorker = workers[Math.floorMod(tableName.toLowerCase(Locale.ROOT).hashCode(), workers.length)];
+        }
+
+        return lastWorker;
+    }
+
+    private synchronized void fail(Throwable ex) {
+        if (error == null) {
+            error = ex;
+        }
+    }
+
+    private void checkError() {
+        Throwable ex = error;
+
+        if (ex instanceof RuntimeException re) {
+            throw re;
+        }
+
+        if (ex instanceof Error e) {
+            throw e;
+        }
+
+        if (ex != null) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void send(Worker worker, Object item) {
+        try {
+            if (stage != null && worker.queue.remainingCapacity() == 0) {
+                long start = System.nanoTime();
+
+                worker.queue.put(item);
+                blockedNanos += System.nanoTime() - start;
+            }
+            else {
+                worker.queue.put(item);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOExceptionWrapper(new InterruptedIOException());
+        }
+    }
+
+    private void flush(Worker worker) {
+        if (worker.current != null) {
+            send(worker, worker.current);
+            worker.current = null;
+        }
+    }
+
+    @Override
+    public void onRow(SqlRowView view) {
+        checkError();
+
+        SqlRow row = (SqlRow) view;
+        Worker worker = worker(row.tableName);
+        Chunk chunk = worker.current;
+
+        if (chunk == null) {
+            try {
+                if (stage != null && worker.free.isEmpty()) {
+                    long start = System.nanoTime();
+
+                    chunk = worker.current = worker.free.take();
+                    blockedNanos += System.nanoTime() - start;
+                }
+                else {
+                    chunk = worker.current = worker.free.take();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOExceptionWrapper(new InterruptedIOException());
+            }
+        }
+
+        SqlRow copy = chunk.rows[chunk.size];
+
+        if (copy == null) {
+            copy = chunk.rows[chunk.size] = new SqlRow();
+        }
+
+        copy.copyFrom(row);
+
+        if (++chunk.size == CHUNK_SIZE) {
+            flush(worker);
+        }
+    }
+
+    @Override
+    public void onCreateTable(String tableName, List<String> fieldNames) {
+        checkError();
+
+        Worker worker = worker(tableName);
+
+        flush(worker);
+        send(worker, new CreateTable(tableName, fieldNames));
+    }
+
+    /**
+     * Passes the remaining rows to the workers and waits for them to finish.
+     * A failure of a callback is rethrown.
+     */
+    void finish() {
+        for (Worker worker : workers) {
+            flush(worker);
+            send(worker, END);
+        }
+
+        join();
+        checkError();
+    }
+
+    /**
+     * Stops the workers without delivering the remaining rows. The workers
+     * aren't interrupted, since an interrupt closes any channel a callback
+     * is writing to, but drain their queues up to END.
+     */
+    void abort() {
+        aborted = true;
+
+        boolean interrupted = false;
+
+        for (Worker worker : workers) {
+            worker.current = null;
+
+            while (true) {
+                try {
+                    worker.queue.put(END);
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        join();
+    }
+
+    private void join() {
+        boolean interrupted = false;
+
+        for (Worker worker : workers) {
+            while (true) {
+                try {
+                    worker.thread.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -16,6 +16,8 @@
  */
 package com.azazar.sqldumpparser;
 
+import com.azazar.sqldumpparser.util.ParseBuffer;
+
 /**
  *
  * @author Azazar <spam@azazar.com>
@@ -24,6 +26,12 @@ public class ParseBufferUtils {
 
     public static final int INDEX_NOT_FOUND = -1;
 
+    /**
+     * Number of characters searched at once in a ParseBuffer, so that stream
+     * buffers aren't read far ahead of a match.
+     */
+    private static final int SEARCH_STEP = 0x1000;
+
     public static int indexOf(final CharSequence seq, final CharSequence searchSeq, final int startPos) {
         if (seq == null || searchSeq == null) {
             return INDEX_NOT_FOUND;
@@ -39,6 +47,10 @@ public class ParseBufferUtils {
 
         char startChar = searchSeq.charAt(0);
 
+        if (seq instanceof ParseBuffer buf) {
+            return indexOf(buf, searchSeq, startChar, startPos);
+        }
+
         mainLoop:
         for(int i = startPos, max = seq.length() - searchSeq.length(); i <= max; i++) {
             if (seq.charAt(i) != startChar) {
@@ -57,4 +69,36 @@ public class ParseBufferUtils {
         return INDEX_NOT_FOUND;
     }
 
+    /**
+     * Searches a ParseBuffer, letting the buffer locate candidates for the
+     * first character, which scans byte buffers a word at a time.
+     */
+    private static int indexOf(final ParseBuffer buf, final CharSequence searchSeq, final char startChar, final int startPos) {
+        int from = startPos;
+
+        while (from <= buf.length() - searchSeq.length()) {
+            int to = (int) Math.min((long) from + SEARCH_STEP, buf.length() - searchSeq.length() + 1);
+            int i = buf.indexOf(startChar, startChar, from, to);
+
+            if (i == -1) {
+                from = to;
+                continue;
+            }
+
+            int j = 1;
+
+            while (j < searchSeq.length() && buf.has(i + j) && buf.charAt(i + j) == searchSeq.charAt(j)) {
+                j++;
+            }
+
+            if (j == searchSeq.length()) {
+                return i;
+            }
+
+            from = i + 1;
+        }
+
+        return INDEX_NOT_FOUND;
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * A binary literal: {@code 0x...}, {@code X'...'} or a string with the
+ * {@code _binary} introducer, decoded into bytes.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class SqlBinary implements SqlValue {
+
+    private final byte[] bytes;
+
+    public SqlBinary(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final SqlBinary other = (SqlBinary) obj;
+        return Arrays.equals(this.bytes, other.bytes);
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns a read-only view of the bytes.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getValue() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "0x" + HexFormat.of().withUpperCase().formatHex(bytes);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A number that doesn't fit into SqlInteger, e.g. BIGINT UNSIGNED values
+ * above Long.MAX_VALUE.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class SqlDecimal extends Number implements SqlValue {
+
+    private final BigDecimal value;
+
+    public SqlDecimal(BigDecimal value) {
+        this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 3;
+        hash = 41 * hash + Objects.hashCode(this.value);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final SqlDecimal other = (SqlDecimal) obj;
+        return Objects.equals(this.value, other.value);
+    }
+
+    public BigDecimal getDecimal() {
+        return value;
+    }
+
+    @Override
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value.toPlainString();
+    }
+
+    @Override
+    public int intValue() {
+        return value.intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return value.longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return value.floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return value.doubleValue();
+    }
+
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Rows of a table stored by column in direct buffers outside of the heap, in
+ * the layout of Apache Arrow. Each column has a validity bitmap, with the bit
+ * of a row set unless its value is NULL, and depending on its type a vector
+ * of 8 byte values, or 32 bit offsets into a buffer of variable width values.
+ * All buffers are little-endian.
+ * <p>
+ * The type of a column is the narrowest one that fits all of its values:
+ * BIGINT for integers, DOUBLE once decimals appear, BINARY once binary
+ * literals appear and UTF8 for strings and anything else, with other values
+ * stored as their UTF-8 text. A UTF8 column thus only holds valid UTF-8.
+ * <p>
+ * Unlike a {@link SqlRowBatch}, a batch belongs to the callback it's passed
+ * to, which may keep it and pass it to other threads. Its buffers come from
+ * a pool, and {@link #release()} returns them for the next batches. A batch
+ * that isn't released is freed by the garbage collector instead.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public final class SqlDirectBatch implements AutoCloseable {
+
+    public enum Type {
+        NULL, BIGINT, DOUBLE, BINARY, UTF8
+    }
+
+    private static final class Column {
+
+        final ByteBuffer validity;
+
+        Type type = Type.NULL;
+
+        ByteBuffer values;
+
+        ByteBuffer offsets;
+
+        ByteBuffer data;
+
+        int dataEnd;
+
+        int nullCount;
+
+        Column(ByteBuffer validity) {
+            this.validity = validity;
+        }
+
+    }
+
+    private final DirectBufferPool pool;
+
+    private final int capacity;
+
+    private String tableName;
+
+    private List<String> columnNames;
+
+    private String[] names = new String[0];
+
+    private Column[] columns = new Column[0];
+
+    private int columnCount;
+
+    private int size;
+
+    /**
+     * UTF-8 bytes of the value being added.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * The text of a number being added to a UTF8 column.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    private boolean released;
+
+    SqlDirectBatch(DirectBufferPool pool, int capacity) {
+        this.pool = pool;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Checks whether a row can be added: the batch is empty or holds rows of
+     * the same table and column list.
+     */
+    boolean accepts(SqlRow row) {
+        if (size == 0) {
+            return true;
+        }
+
+        return tableName.equals(row.tableName) && (columnNames == row.columnNames || Objects.equals(columnNames, row.columnNames));
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    void add(SqlRow row) {
+        if (size == 0) {
+            tableName = row.tableName;
+            columnNames = row.columnNames;
+        }
+
+        int count = row.columnCount();
+
+        while (columnCount < count) {
+            addColumn(row.columnName(columnCount));
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            if (i < count) {
+                set(columns[i], size, row, i);
+            }
+            else {
+                setNull(columns[i], size);
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * Adds a column, NULL in the rows added so far.
+     */
+    private void addColumn(String name) {
+        if (columnCount == columns.length) {
+            columns = Arrays.copyOf(columns, Math.max(columnCount * 2, 8));
+            names = Arrays.copyOf(names, columns.length);
+        }
+
+        int bytes = ((capacity + 63) >>> 6) * 8;
+        ByteBuffer validity = pool.allocate(bytes);
+
+        for (int i = 0; i < bytes; i += 8) {
+            validity.putLong(i, 0);
+        }
+
+        Column column = columns[columnCount] = new Column(validity);
+
+        column.nullCount = size;
+        names[columnCount++] = name;
+    }
+
+    private void setNull(Column column, int r) {
+        column.nullCount++;
+
+        switch (column.type) {
+            case BIGINT, DOUBLE -> column.values.putLong(r * 8, 0);
+            case BINARY, UTF8 -> column.offsets.putInt((r + 1) * 4, column.dataEnd);
+            default -> {
+            }
+        }
+    }
+
+    private void set(Column column, int r, SqlRow row, int i) {
+        byte rowType = row.type(i);
+        Object value = null;
+        Type type;
+
+        switch (rowType) {
+            case SqlRow.NULL, SqlRow.SKIPPED -> {
+                setNull(column, r);
+                return;
+            }
+            case SqlRow.LONG -> type = Type.BIGINT;
+            case SqlRow.DOUBLE -> type = Type.DOUBLE;
+            case SqlRow.STRING -> type = Type.UTF8;
+            default -> {
+                value = row.getValue(i);
+                type = value instanceof byte[] ? Type.BINARY : Type.UTF8;
+            }
+        }
+
+        Type widened = widen(column.type, type);
+
+        if (widened != column.type) {
+            convert(column, r, widened);
+        }
+
+        switch (column.type) {
+            case BIGINT -> column.values.putLong(r * 8, row.getLong(i));
+            case DOUBLE -> column.values.putDouble(r * 8, row.getDouble(i));
+            default -> {
+                if (value instanceof byte[] bytes) {
+                    putBytes(column, bytes, bytes.length);
+                }
+                else if (rowType == SqlRow.STRING) {
+                    putText(column, row.getCharSequence(i));
+                }
+                else if (rowType == SqlRow.LONG) {
+                    text.setLength(0);
+                    putText(column, text.append(row.getLong(i)));
+                }
+                else if (rowType == SqlRow.DOUBLE) {
+                    text.setLength(0);
+                    putText(column, text.append(row.getDouble(i)));
+                }
+                else {
+                    putText(column, SqlUtil.text(value));
+                }
+
+                column.offsets.putInt((r + 1) * 4, column.dataEnd);
+            }
+        }
+
+        column.validity.put(r >>> 3, (byte) (column.validity.get(r >>> 3) | (1 << (r & 7))));
+    }
+
+    private static Type widen(Type current, Type type) {
+        if (current == Type.NULL || current == type) {
+            return type;
+        }
+
+        if ((current == Type.BIGINT || current == Type.DOUBLE) && (type == Type.BIGINT || type == Type.DOUBLE)) {
+            return Type.DOUBLE;
+        }
+
+        // Binary data may not be valid UTF-8
+        return current == Type.BINARY || type == Type.BINARY ? Type.BINARY : Type.UTF8;
+    }
+
+    /**
+     * Changes the type of a column, converting the values of the rows before
+     * the given one.
+     */
+    private void convert(Column column, int r, Type type) {
+        Type old = column.type;
+
+        column.type = type;
+
+        if (old == Type.BIGINT && type == Type.DOUBLE) {
+            for (int k = 0; k < r; k++) {
+                column.values.putDouble(k * 8, column.values.getLong(k * 8));
+            }
+        }
+        else if (old == Type.NULL && (type == Type.BIGINT || type == Type.DOUBLE)) {
+            column.values = pool.allocate(capacity * 8);
+
+            for (int k = 0; k < r; k++) {
+                column.values.putLong(k * 8, 0);
+            }
+        }
+        else if (old == Type.NULL || old == Type.BIGINT || old == Type.DOUBLE) {
+            column.offsets = pool.allocate((capacity + 1) * 4);
+            column.data = pool.allocate(capacity * 8);
+            column.dataEnd = 0;
+            column.offsets.putInt(0, 0);
+
+            for (int k = 0; k < r; k++) {
+                if (old != Type.NULL && isValid(column, k)) {
+                    text.setLength(0);
+
+                    if (old == Type.BIGINT) {
+                        text.append(column.values.getLong(k * 8));
+                    }
+                    else {
+                        text.append(column.values.getDouble(k * 8));
+                    }
+
+                    putText(column, text);
+                }
+
+                column.offsets.putInt((k + 1) * 4, column.dataEnd);
+            }
+
+            if (column.values != null) {
+                pool.release(column.values);
+                column.values = null;
+            }
+        }
+
+        // UTF8 to BINARY keeps the data as it is
+    }
+
+    /**
+     * Appends the UTF-8 encoding of chars to the data of a column.
+     */
+    private void putText(Column column, CharSequence chars) {
+        int length = chars.length();
+
+        if (scratch.length < length * 3) {
+            scratch = new byte[Math.max(scratch.length * 2, length * 3)];
+        }
+
+        byte[] out = scratch;
+        int n = 0;
+
+        for (int i = 0; i < length; i++) {
+            char ch = chars.charAt(i);
+
+            if (ch < 0x80) {
+                out[n++] = (byte) ch;
+            }
+            else if (ch < 0x800) {
+                out[n++] = (byte) (0xC0 | (ch >> 6));
+                out[n++] = (byte) (0x80 | (ch & 0x3F));
+            }
+            else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int cp = Character.toCodePoint(ch, chars.charAt(++i));
+
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(ch)) {
+                // Unpaired surrogates are replaced, as by String.getBytes()
+                out[n++] = '?';
+            }
+            else {
+                out[n++] = (byte) (0xE0 | (ch >> 12));
+                out[n++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+
+        putBytes(column, out, n);
+    }
+
+    private void putBytes(Column column, byte[] bytes, int length) {
+        int end = column.dataEnd + length;
+
+        if (end < 0) {
+            throw new IllegalStateException("Data of a column exceeds 2 GB");
+        }
+
+        if (end > column.data.capacity()) {
+            ByteBuffer data = pool.allocate(Math.max(end, (int) Math.min(Integer.MAX_VALUE - 8, column.data.capacity() * 2L)));
+
+            data.put(0, column.data, 0, column.dataEnd);
+            pool.release(column.data);
+            column.data = data;
+        }
+
+        column.data.put(column.dataEnd, bytes, 0, length);
+        column.dataEnd = end;
+    }
+
+    private static boolean isValid(Column column, int r) {
+        return (column.validity.get(r >>> 3) & (1 << (r & 7))) != 0;
+    }
+
+    private Column column(int col) {
+        if (released) {
+            throw new IllegalStateException("Batch was released");
+        }
+
+        Objects.checkIndex(col, columnCount);
+
+        return columns[col];
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of columns, the largest number of values of the rows.
+     * Rows with fewer values are NULL in the remaining columns.
+     *
+     * @return the number of columns.
+     */
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Returns the name of a column, as {@link SqlRowView#columnName(int)}
+     * does.
+     *
+     * @param col the index of the column.
+     * @return the name of the column.
+     */
+    public String columnName(int col) {
+        return names[col];
+    }
+
+    public Type getType(int col) {
+        return column(col).type;
+    }
+
+    public int getNullCount(int col) {
+        return column(col).nullCount;
+    }
+
+    public boolean isNull(int row, int col) {
+        return !isValid(column(col), Objects.checkIndex(row, size));
+    }
+
+    /**
+     * Returns a value as a long: integers as they are, decimals truncated,
+     * text parsed and 0 for NULL.
+     */
+    public long getLong(int row, int col) {
+        Column column = column(col);
+
+        return switch (column.type) {
+            case NULL -> 0;
+            case BIGINT -> column.values.getLong(row * 8);
+            case DOUBLE -> (long) column.values.getDouble(row * 8);
+            default -> isNull(row, col) ? 0 : Long.parseLong(getString(row, col));
+        };
+    }
+
+    /**
+     * Returns a value as a double, with text parsed and 0 for NULL.
+     */
+    public double getDouble(int row, int col) {
+        Column column = column(col);
+
+        return switch (column.type) {
+            case NULL -> 0;
+            case BIGINT -> column.values.getLong(row * 8);
+            case DOUBLE -> column.values.getDouble(row * 8);
+            default -> isNull(row, col) ? 0 : Double.parseDouble(getString(row, col));
+        };
+    }
+
+    /**
+     * Returns the text of a value, decoding variable width values as UTF-8.
+     *
+     * @return the text of the value, or null for NULL.
+     */
+    public String getString(int row, int col) {
+        if (isNull(row, col)) {
+            return null;
+        }
+
+        Column column = columns[col];
+
+        return switch (column.type) {
+            case BIGINT -> Long.toString(column.values.getLong(row * 8));
+            case DOUBLE -> Double.toString(column.values.getDouble(row * 8));
+            default -> new String(getBytes(row, col), StandardCharsets.UTF_8);
+        };
+    }
+
+    /**
+     * Returns a copy of the bytes of a value of a BINARY or UTF8 column.
+     *
+     * @return the bytes, or null for NULL.
+     * @throws IllegalStateException if the column has fixed width values.
+     */
+    public byte[] getBytes(int row, int col) {
+        Column column = column(col);
+
+        if (column.offsets == null) {
+            if (column.type == Type.NULL) {
+                return null;
+            }
+
+            throw new IllegalStateException("Column " + names[col] + " is " + column.type);
+        }
+
+        if (isNull(row, col)) {
+            return null;
+        }
+
+        int offset = column.offsets.getInt(row * 4);
+        byte[] bytes = new byte[column.offsets.getInt((row + 1) * 4) - offset];
+
+        column.data.get(offset, bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Returns the validity bitmap of a column. Bit {@code row % 8} of byte
+     * {@code row / 8} is set unless the value of the row is NULL.
+     *
+     * @param col the index of the column.
+     * @return a view of the bitmap, which is padded to 8 bytes.
+     */
+    public ByteBuffer getValidityBuffer(int col) {
+        return view(column(col).validity, ((size + 63) >>> 6) * 8);
+    }
+
+    /**
+     * Returns the values of a BIGINT or DOUBLE column, 8 bytes per row.
+     *
+     * @param col the index of the column.
+     * @return a view of the values, or null for other types.
+     */
+    public ByteBuffer getValueBuffer(int col) {
+        Column column = column(col);
+
+        return column.values != null ? view(column.values, size * 8) : null;
+    }
+
+    /**
+     * Returns the offsets of the values of a BINARY or UTF8 column in its
+     * data buffer. The value of a row spans from the int at index
+     * {@code row} to the int at index {@code row + 1}.
+     *
+     * @param col the index of the column.
+     * @return a view of {@code size() + 1} offsets, or null for other types.
+     * @see #getDataBuffer(int)
+     */
+    public ByteBuffer getOffsetBuffer(int col) {
+        Column column = column(col);
+
+        return column.offsets != null ? view(column.offsets, (size + 1) * 4) : null;
+    }
+
+    /**
+     * Returns the bytes of the values of a BINARY or UTF8 column.
+     *
+     * @param col the index of the column.
+     * @return a view of the data, or null for other types.
+     * @see #getOffsetBuffer(int)
+     */
+    public ByteBuffer getDataBuffer(int col) {
+        Column column = column(col);
+
+        return column.data != null ? view(column.data, column.dataEnd) : null;
+    }
+
+    private static ByteBuffer view(ByteBuffer buf, int length) {
+        return buf.slice(0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the buffers of the batch to the pool they came from. Views
+     * returned by the batch must not be used afterwards, since the buffers
+     * are reused by other batches. Releasing a batch again has no effect.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+
+        for (int i = 0; i < columnCount; i++) {
+            Column column = columns[i];
+
+            pool.release(column.validity);
+
+            for (ByteBuffer buf : new ByteBuffer[] { column.values, column.offsets, column.data }) {
+                if (buf != null) {
+                    pool.release(buf);
+                }
+            }
+
+            columns[i] = null;
+        }
+    }
+
+    /**
+     * Releases the batch.
+     *
+     * @see #release()
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    @Override
+    public String toString() {
+        return tableName + "[" + size + " rows x " + columnCount + " columns" + (released ? ", released]" : "]");
+    }
+
+}
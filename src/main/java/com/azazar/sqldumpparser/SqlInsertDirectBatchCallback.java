@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.util.List;
+
+/**
+ * Receives rows of INSERT statements in off-heap columnar batches.
+ *
+ * @author Azazar <spam@azazar.com>
+ * @see SqlInsertParser#parseDirectBatches(java.nio.file.Path, SqlInsertDirectBatchCallback)
+ */
+public interface SqlInsertDirectBatchCallback {
+
+    /**
+     * Called for each batch of rows of a selected table. The callback owns the
+     * batch: it may keep it and pass it to other threads, and should
+     * {@link SqlDirectBatch#release() release} it once it's done with it.
+     *
+     * @param tableName the name of the table.
+     * @param batch the rows.
+     */
+    void onInsertBatch(String tableName, SqlDirectBatch batch);
+
+    default void onCreateTable(String tableName, List<String> fieldNames) {}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.util.List;
+
+/**
+ * Receives INSERT statements from SqlParser one tuple at a time, so that
+ * statements of any length are parsed in constant memory.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+interface SqlInsertHandler {
+
+    /**
+     * Called once the table of an INSERT statement is known. Statements of
+     * tables that aren't selected are skipped without being tokenized.
+     *
+     * @param tableName the name of the table.
+     * @return true if the rows of the table are wanted.
+     */
+    boolean isTableSelected(String tableName);
+
+    /**
+     * Called when the header of an INSERT statement has been parsed.
+     *
+     * @param tableName the name of the table.
+     * @param columnNames the column list of the statement, or null if it has
+     * none.
+     * @return the row to parse the tuples of the statement into, or null to
+     * skip them.
+     */
+    SqlRow beginInsert(String tableName, List<String> columnNames);
+
+    /**
+     * Called for each tuple of the statement.
+     *
+     * @param row the row returned by beginInsert, filled with the values of
+     * the tuple.
+     */
+    void insertRow(SqlRow row);
+
+}
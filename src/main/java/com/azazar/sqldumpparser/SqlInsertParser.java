@@ -16,15 +16,30 @@
  */
 package com.azazar.sqldumpparser;
 
+import com.azazar.sqldumpparser.codec.InputCodec;
+import com.azazar.sqldumpparser.codec.InputCodecs;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  *
@@ -34,56 +49,1028 @@ import java.util.function.Consumer;
  */
 public class SqlInsertParser {
 
-    private static Consumer<SqlStatement> createConsumer(Set<String> tableNames, SqlInsertParseCallback callback) {
-        var tableFields = new HashMap<String, List<String>>();
+    /**
+     * The default number of rows in a batch passed to a
+     * SqlInsertBatchCallback.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
 
-        return stmt -> {
+    /**
+     * Passes rows of the selected tables to the callback. INSERT statements
+     * arrive tuple by tuple through the parser fast path, other statements,
+     * and INSERT statements of an unexpected shape, as SqlStatement objects.
+     */
+    private static class InsertHandler implements SqlInsertHandler, Consumer<SqlStatement> {
+
+        private final Map<String, Set<String>> projection;
+
+        private final Map<String, Map<String, SqlValuePredicate>> filters;
+
+        private final Map<String, Map<String, SqlStringCache>> caches;
+
+        private final SqlInsertRowCallback callback;
+
+        private final Map<String, List<String>> tableFields = new HashMap<>();
+
+        private final SqlRow row = new SqlRow();
+
+        private int spillThreshold = Integer.MAX_VALUE;
+
+        private SqlSpillSink spillSink;
+
+        InsertHandler(Map<String, Set<String>> projection, Map<String, Map<String, SqlValuePredicate>> filters, Map<String, Map<String, SqlStringCache>> caches, SqlInsertRowCallback callback) {
+            this.projection = projection;
+            this.filters = filters;
+            this.caches = caches;
+            this.callback = callback;
+        }
+
+        @Override
+        public void accept(SqlStatement stmt) {
             switch (stmt.getCommand().toString().toUpperCase()) {
                 case "CREATE":
                     if (stmt.getTokens().size() >= 4 && stmt.getTokens().get(1).toString().equalsIgnoreCase("TABLE")) {
                         var tableName = ((SqlIdentifier) stmt.getTokens().get(2)).getId();
 
-                        if (tableNames.contains(tableName) && stmt.getTokens().get(3) instanceof SqlTokenGroup tableDef) {
-                            try {
-                                tableFields.put(tableName.toLowerCase(), parseCreateTableStatement(stmt, tableName, tableDef, callback));
-                            }
-                            catch (SqlInsertParseException e) {
-                                throw e.wrap();
+                        if (projection.containsKey(tableName) && stmt.getTokens().get(3) instanceof SqlTokenGroup tableDef) {
+                            var fieldNames = parseCreateTableStatement(tableDef);
+
+                            if (fieldNames != null) {
+                                callback.onCreateTable(tableName.toLowerCase(Locale.ROOT), fieldNames);
                             }
+
+                            tableFields.put(tableName.toLowerCase(Locale.ROOT), fieldNames);
                         }
                     }
                     break;
                 case "INSERT":
                     try {
-                        processInsertStatement(stmt, tableNames, tableFields, callback);
+                        processInsertStatement(stmt, this);
                     }
                     catch (SqlInsertParseException e) {
                         throw e.wrap();
                     }
                     break;
             }
-        };
+        }
+
+        @Override
+        public boolean isTableSelected(String tableName) {
+            return projection.containsKey(tableName);
+        }
+
+        @Override
+        public SqlRow beginInsert(String tableName, List<String> columnNames) {
+            if (!isTableSelected(tableName)) {
+                return null;
+            }
+
+            row.tableName = tableName;
+            row.columnNames = columnNames != null ? columnNames : tableFields.get(tableName.toLowerCase(Locale.ROOT));
+            try {
+                row.select(projection.get(tableName));
+                row.filter(filters.get(tableName));
+            }
+            catch (SqlInsertParseException e) {
+                throw e.wrap();
+            }
+
+            row.dedup(caches.get(tableName));
+            row.spill(spillThreshold, spillSink);
+
+            return row;
+        }
+
+        @Override
+        public void insertRow(SqlRow row) {
+            row.skipFilterOnly();
+            callback.onRow(row);
+        }
+
     }
 
-    public static void parse(Reader reader, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+    /**
+     * Passes rows to a SqlInsertParseCallback as maps of column names to
+     * values, leaving out skipped columns.
+     */
+    private static class MapRowCallback implements SqlInsertRowCallback {
+
+        private final SqlInsertParseCallback callback;
+
+        private final LinkedHashMap<String, Object> rowValues = new LinkedHashMap<>();
+
+        MapRowCallback(SqlInsertParseCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onRow(SqlRowView view) {
+            SqlRow row = (SqlRow) view;
+
+            rowValues.clear();
+
+            for(int i = 0; i < row.columnCount(); i++) {
+                if (row.type(i) == SqlRow.SKIPPED) {
+                    continue;
+                }
+
+                if (row.type(i) == SqlRow.TOKEN) {
+                    throw new SqlInsertParseException("Failed to parse tuple, bad value \"" + row.getToken(i) + "\" at index #" + i).wrap();
+                }
+
+                rowValues.put(row.columnName(i), row.getValue(i));
+            }
+
+            callback.onInsert(row.tableName, rowValues);
+        }
+
+        @Override
+        public void onCreateTable(String tableName, List<String> fieldNames) {
+            callback.onCreateTable(tableName, fieldNames);
+        }
+
+    }
+
+    /**
+     * Collects rows of the same table and columns into batches. A batch is
+     * passed on when it's full, before rows of another table or a CREATE
+     * TABLE statement, and at the end of the input.
+     */
+    private static class BatchRowCallback implements SqlInsertRowCallback {
+
+        private final SqlInsertBatchCallback callback;
+
+        private final SqlRowBatch batch;
+
+        BatchRowCallback(SqlInsertBatchCallback callback, int batchSize) {
+            this.callback = callback;
+            this.batch = new SqlRowBatch(batchSize);
+        }
+
+        @Override
+        public void onRow(SqlRowView view) {
+            SqlRow row = (SqlRow) view;
+
+            if (!batch.accepts(row)) {
+                flush();
+            }
+
+            batch.add(row);
+
+            if (batch.isFull()) {
+                flush();
+            }
+        }
+
+        @Override
+        public void onCreateTable(String tableName, List<String> fieldNames) {
+            flush();
+            callback.onCreateTable(tableName, fieldNames);
+        }
+
+        void flush() {
+            if (batch.size() > 0) {
+                callback.onInsertBatch(batch.getTableName(), batch);
+                batch.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Collects rows of the same table and columns into off-heap batches, like
+     * BatchRowCallback, handing each batch over to the callback.
+     */
+    private static class DirectBatchRowCallback implements SqlInsertRowCallback {
+
+        private final SqlInsertDirectBatchCallback callback;
+
+        private final DirectBufferPool pool;
+
+        private final int batchSize;
+
+        private SqlDirectBatch batch;
+
+        DirectBatchRowCallback(SqlInsertDirectBatchCallback callback, DirectBufferPool pool, int batchSize) {
+            this.callback = callback;
+            this.pool = pool;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onRow(SqlRowView view) {
+            SqlRow row = (SqlRow) view;
+
+            if (batch != null && !batch.accepts(row)) {
+                flush();
+            }
+
+            if (batch == null) {
+                batch = new SqlDirectBatch(pool, batchSize);
+            }
+
+            batch.add(row);
+
+            if (batch.isFull()) {
+                flush();
+            }
+        }
+
+        @Override
+        public void onCreateTable(String tableName, List<String> fieldNames) {
+            flush();
+            callback.onCreateTable(tableName, fieldNames);
+        }
+
+        void flush() {
+            if (batch != null) {
+                SqlDirectBatch full = batch;
+
+                batch = null;
+                callback.onInsertBatch(full.getTableName(), full);
+            }
+        }
+
+    }
+
+    private final Map<String, Set<String>> projection = new HashMap<>();
+
+    private final Map<String, Map<String, SqlValuePredicate>> filters = new HashMap<>();
+
+    private final Map<String, Map<String, SqlStringCache>> caches = new HashMap<>();
+
+    private int spillThreshold = Integer.MAX_VALUE;
+
+    private SqlSpillSink spillSink;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long directPoolSize = DirectBufferPool.DEFAULT_MAX_RETAINED;
+
+    private int workers;
+
+    private ThreadFactory workerThreadFactory = ParallelRowCallback.DEFAULT_THREAD_FACTORY;
+
+    private int pipelineDepth;
+
+    private ThreadFactory pipelineThreadFactory = InsertPipeline.DEFAULT_THREAD_FACTORY;
+
+    private volatile List<SqlPipelineStage> pipelineStages = List.of();
+
+    /**
+     * Selects a table to parse rows of. Columns can be named by their "#"
+     * index names, such as {@code #0}. Other names are resolved against the
+     * column list of each INSERT or the CREATE TABLE of the table, and an
+     * INSERT with neither fails with SqlInsertParseException.
+     *
+     * @param tableName the name of the table.
+     * @param columnNames the columns to decode, or none to decode all columns.
+     * @return this parser.
+     */
+    public SqlInsertParser select(String tableName, String... columnNames) {
+        if (columnNames.length == 0) {
+            projection.put(tableName, null);
+        }
+        else if (!projection.containsKey(tableName) || projection.get(tableName) != null) {
+            projection.computeIfAbsent(tableName, t -> new HashSet<>()).addAll(Arrays.asList(columnNames));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a condition on a column of a selected table. Rows are tested while
+     * they are lexed, and the values of rejected rows following the tested
+     * one are skipped without being decoded. Conditions on the same column
+     * are combined with AND. The column is decoded even if it isn't selected,
+     * but is then left out of the rows passed on. An INSERT of the table
+     * without the column, or whose column names are unknown, fails with
+     * SqlInsertParseException instead of passing its rows untested.
+     *
+     * @param tableName the name of the table.
+     * @param columnName the name of the column.
+     * @param predicate the condition.
+     * @return this parser.
+     */
+    public SqlInsertParser where(String tableName, String columnName, SqlValuePredicate predicate) {
+        filters.computeIfAbsent(tableName, t -> new HashMap<>()).merge(columnName, predicate, SqlValuePredicate::and);
+
+        return this;
+    }
+
+    /**
+     * Deduplicates the string values of columns of a selected table, each
+     * with a cache of its own of {@link SqlStringCache#DEFAULT_CAPACITY}
+     * values. Values returned by getValue() of rows and batches, and the
+     * values passed to a SqlInsertParseCallback, are then shared instances,
+     * which makes rows kept in memory much smaller for columns with few
+     * distinct values.
+     *
+     * @param tableName the name of the table.
+     * @param columnNames the columns to deduplicate.
+     * @return this parser.
+     */
+    public SqlInsertParser dedup(String tableName, String... columnNames) {
+        for (String columnName : columnNames) {
+            dedup(tableName, columnName, new SqlStringCache());
+        }
+
+        return this;
+    }
+
+    /**
+     * Deduplicates the string values of a column with the given cache.
+     *
+     * @param tableName the name of the table.
+     * @param columnName the name of the column.
+     * @param cache the cache, which may be shared by columns of the table.
+     * @return this parser.
+     * @see #dedup(String, String...)
+     */
+    public SqlInsertParser dedup(String tableName, String columnName, SqlStringCache cache) {
+        caches.computeIfAbsent(tableName, t -> new HashMap<>()).put(columnName, cache);
+
+        return this;
+    }
+
+    /**
+     * Returns the cache of a column, e.g. to check its hit rate.
+     *
+     * @return the cache, or null if the column isn't deduplicated.
+     */
+    public SqlStringCache getStringCache(String tableName, String columnName) {
+        return caches.getOrDefault(tableName, Map.of()).get(columnName);
+    }
+
+    /**
+     * Writes string and binary values longer than the threshold to temporary
+     * files instead of keeping them in memory.
+     *
+     * @param threshold the maximum length of a value kept in memory, in chars
+     * for strings and in bytes for binary values.
+     * @return this parser.
+     * @see #spill(int, SqlSpillSink)
+     */
+    public SqlInsertParser spill(int threshold) {
+        return spill(threshold, SqlSpillSink.tempFiles());
+    }
+
+    /**
+     * Writes string and binary values longer than the threshold to
+     * destinations opened by the sink while they are parsed, so that a value
+     * never has to fit in memory as a whole. Rows then hold a
+     * {@link SqlSpilledValue} in place of the value. Values that are not
+     * quoted strings or binary literals, and statements that don't go
+     * through the row fast path, are kept in memory regardless. Predicates
+     * of spilled columns see the SqlSpilledValue as the value. Direct
+     * batches can't hold spilled values, so {@code parseDirectBatches}
+     * rejects a parser that spills them.
+     *
+     * @param threshold the maximum length of a value kept in memory, in chars
+     * for strings and in bytes for binary values.
+     * @param sink the sink, or null to keep all values in memory.
+     * @return this parser.
+     */
+    public SqlInsertParser spill(int threshold, SqlSpillSink sink) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold=" + threshold);
+        }
+
+        this.spillThreshold = threshold;
+        this.spillSink = sink;
+
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of rows in a batch passed to a
+     * SqlInsertBatchCallback.
+     *
+     * @param batchSize the number of rows.
+     * @return this parser.
+     */
+    public SqlInsertParser setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize=" + batchSize);
+        }
+
+        this.batchSize = batchSize;
+
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how many bytes of direct buffers of released batches are kept for
+     * reuse by later batches of a {@code parseDirectBatches} call.
+     *
+     * @param bytes the number of bytes, 0 to free all buffers of released
+     * batches.
+     * @return this parser.
+     */
+    public SqlInsertParser setDirectPoolSize(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes=" + bytes);
+        }
+
+        this.directPoolSize = bytes;
+
+        return this;
+    }
+
+    public long getDirectPoolSize() {
+        return directPoolSize;
+    }
+
+    /**
+     * Sets the number of worker threads the callback is called on. Rows of a
+     * table are passed to the callback in order and on one thread at a time,
+     * while rows of different tables may be passed concurrently, so the
+     * callback must be thread-safe across tables. With no workers, the
+     * callback is called on the parsing thread.
+     *
+     * @param workers the number of worker threads, 0 to disable them.
+     * @return this parser.
+     */
+    public SqlInsertParser setWorkers(int workers) {
+        return setWorkers(workers, ParallelRowCallback.DEFAULT_THREAD_FACTORY);
+    }
+
+    /**
+     * Sets the number of worker threads the callback is called on.
+     *
+     * @param workers the number of worker threads, 0 to disable them.
+     * @param threadFactory the factory of the worker threads.
+     * @return this parser.
+     * @see #setWorkers(int)
+     */
+    public SqlInsertParser setWorkers(int workers, ThreadFactory threadFactory) {
+        if (workers < 0) {
+            throw new IllegalArgumentException("workers=" + workers);
+        }
+
+        this.workers = workers;
+        this.workerThreadFactory = threadFactory;
+
+        return this;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Enables parsing of streamed input (Reader, Path and InputStream) in a
+     * pipeline of stages connected by bounded queues: reading of chars,
+     * splitting them into statements, decoding of rows and delivery of rows
+     * to the callback. The stages run concurrently, so a slow disk, heavy
+     * lexing and a slow callback don't add up. Rows are decoded on the
+     * calling thread and delivered on the workers, or on a single thread if
+     * no workers are set. In-memory input is parsed as without a pipeline.
+     *
+     * @param depth the number of blocks of 64K chars queued between stages,
+     * 0 to disable the pipeline.
+     * @return this parser.
+     * @see #getPipelineStages()
+     */
+    public SqlInsertParser setPipelineDepth(int depth) {
+        return setPipelineDepth(depth, InsertPipeline.DEFAULT_THREAD_FACTORY);
+    }
+
+    /**
+     * Enables the pipeline with threads created by the given factory, such
+     * as {@code Thread.ofVirtual().factory()} on Java 21 and later. The
+     * factory is also used for delivery if no workers are set.
+     *
+     * @param depth the number of blocks of 64K chars queued between stages,
+     * 0 to disable the pipeline.
+     * @param threadFactory the factory of the stage threads.
+     * @return this parser.
+     * @see #setPipelineDepth(int)
+     */
+    public SqlInsertParser setPipelineDepth(int depth, ThreadFactory threadFactory) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth=" + depth);
+        }
+
+        this.pipelineDepth = depth;
+        this.pipelineThreadFactory = threadFactory;
+
+        return this;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Returns the statistics of the stages of the pipeline that is running,
+     * or that ran last: read, lex, decode and deliver.
+     *
+     * @return the stages, or an empty list if no input was parsed in a
+     * pipeline.
+     */
+    public List<SqlPipelineStage> getPipelineStages() {
+        return pipelineStages;
+    }
+
+    /**
+     * Returns the buffer pool of a {@code parseDirectBatches} call, once it's
+     * known that no value will be spilled.
+     */
+    private DirectBufferPool directPool() {
+        if (spillSink != null) {
+            throw new IllegalStateException("Spilled values can't be parsed into direct batches");
+        }
+
+        return new DirectBufferPool(directPoolSize);
+    }
+
+    private InsertHandler createHandler(SqlInsertRowCallback callback) {
+        var handler = new InsertHandler(new HashMap<>(projection), filters, caches, callback);
+
+        handler.spillThreshold = spillThreshold;
+        handler.spillSink = spillSink;
+
+        return handler;
+    }
+
+    public void parse(Reader reader, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(reader), () -> new MapRowCallback(callback));
+    }
+
+    public void parse(CharSequence str, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(str), () -> new MapRowCallback(callback));
+    }
+
+    public void parse(ByteBuffer bytes, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(bytes), () -> new MapRowCallback(callback));
+    }
+
+    public void parse(Path path, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(path), () -> new MapRowCallback(callback));
+    }
+
+    public void parse(InputStream in, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(in), () -> new MapRowCallback(callback));
+    }
+
+    public void parse(Reader reader, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(reader), () -> callback);
+    }
+
+    public void parse(CharSequence str, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(str), () -> callback);
+    }
+
+    public void parse(ByteBuffer bytes, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(bytes), () -> callback);
+    }
+
+    public void parse(Path path, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(path), () -> callback);
+    }
+
+    public void parse(InputStream in, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(in), () -> callback);
+    }
+
+    /**
+     * Parses rows of the selected tables into columnar batches of up to
+     * {@link #getBatchSize()} rows. Rows of a batch belong to the same table
+     * and column list, and the batch is reused once the callback returns.
+     */
+    public void parseBatches(Reader reader, SqlInsertBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(reader), () -> new BatchRowCallback(callback, batchSize));
+    }
+
+    public void parseBatches(CharSequence str, SqlInsertBatchCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(str), () -> new BatchRowCallback(callback, batchSize));
+    }
+
+    public void parseBatches(ByteBuffer bytes, SqlInsertBatchCallback callback) throws SqlInsertParseException, SqlParseException {
+        run(input(bytes), () -> new BatchRowCallback(callback, batchSize));
+    }
+
+    public void parseBatches(Path path, SqlInsertBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(path), () -> new BatchRowCallback(callback, batchSize));
+    }
+
+    public void parseBatches(InputStream in, SqlInsertBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        run(input(in), () -> new BatchRowCallback(callback, batchSize));
+    }
+
+    /**
+     * Parses rows of the selected tables into off-heap columnar batches of up
+     * to {@link #getBatchSize()} rows. Unlike the batches of
+     * {@code parseBatches}, each batch is handed over to the callback, which
+     * releases it when it's done with it, so that its buffers are reused.
+     *
+     * @throws IllegalStateException if values are spilled, as a batch has no
+     * room for spilled values.
+     * @see SqlDirectBatch
+     */
+    public void parseDirectBatches(Reader reader, SqlInsertDirectBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        var pool = directPool();
+
+        run(input(reader), () -> new DirectBatchRowCallback(callback, pool, batchSize));
+    }
+
+    public void parseDirectBatches(CharSequence str, SqlInsertDirectBatchCallback callback) throws SqlInsertParseException, SqlParseException {
+        var pool = directPool();
+
+        run(input(str), () -> new DirectBatchRowCallback(callback, pool, batchSize));
+    }
+
+    public void parseDirectBatches(ByteBuffer bytes, SqlInsertDirectBatchCallback callback) throws SqlInsertParseException, SqlParseException {
+        var pool = directPool();
+
+        run(input(bytes), () -> new DirectBatchRowCallback(callback, pool, batchSize));
+    }
+
+    public void parseDirectBatches(Path path, SqlInsertDirectBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        var pool = directPool();
+
+        run(input(path), () -> new DirectBatchRowCallback(callback, pool, batchSize));
+    }
+
+    public void parseDirectBatches(InputStream in, SqlInsertDirectBatchCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        var pool = directPool();
+
+        run(input(in), () -> new DirectBatchRowCallback(callback, pool, batchSize));
+    }
+
+    /**
+     * Returns a publisher of the rows of the selected tables. Each
+     * subscription parses the input on its own thread, only as far as the
+     * subscriber has requested rows, and regardless of the workers and
+     * pipeline settings. The row passed to onNext is reused once it returns.
+     * Cancelling the subscription stops the parsing and closes the input
+     * opened for it.
+     *
+     * @param path the SQL file to parse.
+     * @return the publisher.
+     */
+    public Flow.Publisher<SqlRowView> publishRows(Path path) {
+        return publishRows(input(path));
+    }
+
+    /**
+     * Returns a publisher of the rows read from a Reader, which can only be
+     * read by a single subscription.
+     *
+     * @see #publishRows(Path)
+     */
+    public Flow.Publisher<SqlRowView> publishRows(Reader reader) {
+        return publishRows(input(reader));
+    }
+
+    public Flow.Publisher<SqlRowView> publishRows(CharSequence str) {
+        return publishRows(input(str));
+    }
+
+    public Flow.Publisher<SqlRowView> publishRows(ByteBuffer bytes) {
+        return publishRows(input(bytes.duplicate()));
+    }
+
+    /**
+     * Returns a publisher of the rows read from an InputStream, which can
+     * only be read by a single subscription and is closed when it completes
+     * or is cancelled.
+     *
+     * @see #publishRows(Path)
+     */
+    public Flow.Publisher<SqlRowView> publishRows(InputStream in) {
+        return publishRows(input(in));
+    }
+
+    private <E extends Exception> Flow.Publisher<SqlRowView> publishRows(Input<E> input) {
+        return new SqlPublisher<SqlRowView>(sink -> {
+            var handler = createHandler(sink::accept);
+
+            try {
+                input.call.parse(createParser(handler), handler);
+            }
+            catch (SqlInsertParseException.WrappedSqlInsertParseException ex) {
+                throw ex.getCause();
+            }
+        }, SqlPublisher.DEFAULT_THREAD_FACTORY);
+    }
+
+    @FunctionalInterface
+    private interface ParseCall<E extends Exception> {
+
+        void parse(SqlParser parser, InsertHandler handler) throws SqlParseException, E;
+
+    }
+
+    @FunctionalInterface
+    private interface ReaderSource {
+
+        Reader open() throws IOException;
+
+    }
+
+    /**
+     * An input to parse, and for streamed input, the Reader to read it
+     * through in a pipeline.
+     */
+    private static final class Input<E extends Exception> {
+
+        private final ParseCall<E> call;
+
+        private final ReaderSource source;
+
+        /**
+         * Whether the Reader decodes UTF-8 bytes, which positions are
+         * counted in.
+         */
+        private final boolean utf8;
+
+        Input(ParseCall<E> call, ReaderSource source, boolean utf8) {
+            this.call = call;
+            this.source = source;
+            this.utf8 = utf8;
+        }
+
+    }
+
+    private static Input<IOException> input(Reader reader) {
+        return new Input<>((parser, handler) -> parser.parse(reader, handler), () -> keepOpen(reader), false);
+    }
+
+    private static Input<RuntimeException> input(CharSequence str) {
+        return new Input<>((parser, handler) -> parser.parse(str, handler), null, false);
+    }
+
+    private static Input<RuntimeException> input(ByteBuffer bytes) {
+        return new Input<>((parser, handler) -> parser.parse(bytes, handler), null, true);
+    }
+
+    private static Input<IOException> input(Path path) {
+        return new Input<>((parser, handler) -> parser.parse(path, handler), () -> open(path), true);
+    }
+
+    private static Input<IOException> input(InputStream in) {
+        return new Input<>((parser, handler) -> parser.parse(in, handler), () -> open(in), true);
+    }
+
+    /**
+     * Parses streamed input in a pipeline if it's enabled, or the input with
+     * a callback on the calling thread or a callback per worker otherwise.
+     */
+    private <E extends Exception> void run(Input<E> input, Supplier<SqlInsertRowCallback> callbacks) throws SqlInsertParseException, SqlParseException, E {
+        if (pipelineDepth == 0 || input.source == null) {
+            run(input.call, callbacks);
+            return;
+        }
+
         try {
-            new SqlParser().parse(reader, createConsumer(tableNames, callback));
+            runPipeline(input.source, input.utf8, callbacks);
+        }
+        catch (IOException ex) {
+            // Only streamed input, which throws IOException, has a source
+            @SuppressWarnings("unchecked")
+            E e = (E) ex;
+
+            throw e;
+        }
+    }
+
+    private void runPipeline(ReaderSource source, boolean utf8, Supplier<SqlInsertRowCallback> callbacks) throws SqlInsertParseException, SqlParseException, IOException {
+        try (Reader reader = source.open()) {
+            var pipeline = new InsertPipeline(pipelineDepth, pipelineThreadFactory, utf8);
+            var parallel = new ParallelRowCallback(Math.max(workers, 1), workers > 0 ? workerThreadFactory : pipelineThreadFactory, callbacks, SqlInsertParser::finish);
+            boolean finished = false;
+
+            pipelineStages = List.of(pipeline.read, pipeline.lex, pipeline.decode, parallel.monitor());
+
+            try {
+                var handler = createHandler(parallel);
+
+                pipeline.run(reader, createParser(handler), handler, parallel);
+                parallel.finish();
+                finished = true;
+            }
+            finally {
+                if (!finished) {
+                    parallel.abort();
+                }
+            }
         }
         catch (SqlInsertParseException.WrappedSqlInsertParseException ex) {
             throw ex.getCause();
         }
     }
 
-    public static void parse(CharSequence str, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+    private <E extends Exception> void run(ParseCall<E> call, Supplier<SqlInsertRowCallback> callbacks) throws SqlInsertParseException, SqlParseException, E {
         try {
-            new SqlParser().parse(str, createConsumer(tableNames, callback));
+            if (workers == 0) {
+                var callback = callbacks.get();
+                var handler = createHandler(callback);
+
+                call.parse(createParser(handler), handler);
+                finish(callback);
+                return;
+            }
+
+            var parallel = new ParallelRowCallback(workers, workerThreadFactory, callbacks, SqlInsertParser::finish);
+            boolean finished = false;
+
+            try {
+                var handler = createHandler(parallel);
+
+                call.parse(createParser(handler), handler);
+                parallel.finish();
+                finished = true;
+            }
+            finally {
+                if (!finished) {
+                    parallel.abort();
+                }
+            }
         }
         catch (SqlInsertParseException.WrappedSqlInsertParseException ex) {
             throw ex.getCause();
         }
     }
 
-    private static void extractTupleValues(SqlTokenGroup group, List<SqlValue> values) throws SqlInsertParseException {
+    /**
+     * Passes on the rows a callback holds back at the end of the input.
+     */
+    private static void finish(SqlInsertRowCallback callback) {
+        if (callback instanceof BatchRowCallback batcher) {
+            batcher.flush();
+        }
+        else if (callback instanceof DirectBatchRowCallback batcher) {
+            batcher.flush();
+        }
+    }
+
+    /**
+     * Returns a Reader that doesn't close the given one, which belongs to the
+     * caller.
+     */
+    private static Reader keepOpen(Reader reader) {
+        return new FilterReader(reader) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static Reader open(Path path) throws IOException {
+        InputCodec codec = InputCodecs.detect(path);
+
+        return new InputStreamReader(codec != null ? codec.decode(path) : Files.newInputStream(path), StandardCharsets.UTF_8);
+    }
+
+    private static Reader open(InputStream in) throws IOException {
+        return new InputStreamReader(InputCodecs.decode(in), StandardCharsets.UTF_8);
+    }
+
+    private static SqlParser createParser(InsertHandler handler) {
+        SqlParser parser = new SqlParser();
+
+        parser.insertHandler = handler;
+
+        return parser;
+    }
+
+    public static void parse(Reader reader, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(reader, allColumns(tableNames), callback);
+    }
+
+    public static void parse(CharSequence str, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(str, allColumns(tableNames), callback);
+    }
+
+    public static void parse(ByteBuffer bytes, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException {
+        parse(bytes, allColumns(tableNames), callback);
+    }
+
+    public static void parse(Path path, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(path, allColumns(tableNames), callback);
+    }
+
+    public static void parse(InputStream in, Set<String> tableNames, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(in, allColumns(tableNames), callback);
+    }
+
+    public static void parse(Reader reader, Set<String> tableNames, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(reader, allColumns(tableNames), callback);
+    }
+
+    public static void parse(CharSequence str, Set<String> tableNames, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        parse(str, allColumns(tableNames), callback);
+    }
+
+    public static void parse(ByteBuffer bytes, Set<String> tableNames, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        parse(bytes, allColumns(tableNames), callback);
+    }
+
+    public static void parse(Path path, Set<String> tableNames, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(path, allColumns(tableNames), callback);
+    }
+
+    public static void parse(InputStream in, Set<String> tableNames, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        parse(in, allColumns(tableNames), callback);
+    }
+
+    /**
+     * Parses rows of the tables in the projection. Only the listed columns of
+     * each table are decoded, values of other columns are scanned for their
+     * end and left out of the row.
+     *
+     * @param projection the column names by table name. A null set selects
+     * all columns of the table.
+     */
+    public static void parse(Reader reader, Map<String, Set<String>> projection, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(reader, callback);
+    }
+
+    public static void parse(CharSequence str, Map<String, Set<String>> projection, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException {
+        projected(projection).parse(str, callback);
+    }
+
+    public static void parse(ByteBuffer bytes, Map<String, Set<String>> projection, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException {
+        projected(projection).parse(bytes, callback);
+    }
+
+    public static void parse(Path path, Map<String, Set<String>> projection, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(path, callback);
+    }
+
+    public static void parse(InputStream in, Map<String, Set<String>> projection, SqlInsertParseCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(in, callback);
+    }
+
+    public static void parse(Reader reader, Map<String, Set<String>> projection, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(reader, callback);
+    }
+
+    public static void parse(CharSequence str, Map<String, Set<String>> projection, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        projected(projection).parse(str, callback);
+    }
+
+    public static void parse(ByteBuffer bytes, Map<String, Set<String>> projection, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException {
+        projected(projection).parse(bytes, callback);
+    }
+
+    public static void parse(Path path, Map<String, Set<String>> projection, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(path, callback);
+    }
+
+    public static void parse(InputStream in, Map<String, Set<String>> projection, SqlInsertRowCallback callback) throws SqlInsertParseException, SqlParseException, IOException {
+        projected(projection).parse(in, callback);
+    }
+
+    private static SqlInsertParser projected(Map<String, Set<String>> projection) {
+        SqlInsertParser parser = new SqlInsertParser();
+
+        parser.projection.putAll(projection);
+
+        return parser;
+    }
+
+    private static Map<String, Set<String>> allColumns(Set<String> tableNames) {
+        Map<String, Set<String>> projection = new HashMap<>();
+
+        for (String tableName : tableNames) {
+            projection.put(tableName, null);
+        }
+
+        return projection;
+    }
+
+    /**
+     * Extracts values from tuple tokens separated by commas into a row.
+     */
+    private static void extractValues(List<SqlToken> tokens, int from, int to, SqlRow row) throws SqlInsertParseException {
+        for(int i = from; i < to; i += 2) {
+            if (i > from && !SqlDelimiter.COMMA.equals(tokens.get(i - 1))) {
+                throw new SqlInsertParseException("Failed to parse tuple " + tokens.subList(from, to) + ", bad delimiter at index #" + (i - from));
+            }
+
+            SqlToken token = tokens.get(i);
+            int j = row.add();
+
+            if (!row.isSelected(j)) {
+                row.setSkipped(j);
+            }
+            else if (token instanceof SqlValue value) {
+                row.setValue(j, value.getValue());
+            }
+            else if (!SqlReservedKeyword.NULL.equals(token)) {
+                throw new SqlInsertParseException("Failed to parse tuple " + tokens.subList(from, to) + ", bad value at index #" + (i - from));
+            }
+        }
+    }
+
+    private static void extractTupleValues(SqlTokenGroup group, SqlRow row) throws SqlInsertParseException {
         var tokens = group.getTokens();
 
         var openingDelimiter = tokens.get(0);
@@ -93,18 +1080,7 @@ public class SqlInsertParser {
             throw new SqlInsertParseException("Failed to parse tuple (" + group + "), bad opening or closing delimiter");
         }
 
-        for(int i = 1; i < tokens.size(); i += 2) {
-            if (i > 1 && !SqlDelimiter.COMMA.equals(tokens.get(i - 1))) {
-                throw new SqlInsertParseException("Failed to parse tuple (" + group + "), bad delimiter at index #" + i);
-            }
-            
-            if (tokens.get(i) instanceof SqlValue value) {
-                values.add(value);
-            }
-            else {
-                throw new SqlInsertParseException("Failed to parse tuple (" + group + "), bad value at index #" + i);
-            }
-        }
+        extractValues(tokens, 1, tokens.size() - 1, row);
     }
 
     private static void extractTupleIdentifiers(SqlTokenGroup group, List<String> idents) throws SqlInsertParseException {
@@ -131,7 +1107,7 @@ public class SqlInsertParser {
         }
     }
 
-    private static List<String> parseCreateTableStatement(SqlStatement stmt, String tableName, SqlTokenGroup tableDef, SqlInsertParseCallback callback) throws SqlInsertParseException {
+    private static List<String> parseCreateTableStatement(SqlTokenGroup tableDef) {
         if (SqlDelimiter.LEFT_PARENTHESES != tableDef.getTokens().get(0)) {
             return null;
         }
@@ -149,12 +1125,10 @@ public class SqlInsertParser {
             }
         }
 
-        callback.onCreateTable(tableName.toLowerCase(), fieldNames);
-
         return fieldNames;
     }
 
-    private static void processInsertStatement(SqlStatement stmt, Set<String> tableNames, Map<String, List<String>> tablesFields, SqlInsertParseCallback callback) throws SqlInsertParseException {
+    private static void processInsertStatement(SqlStatement stmt, InsertHandler handler) throws SqlInsertParseException {
         List<SqlToken> tokens = stmt.getTokens();
         
         if (tokens.size() < 5) {
@@ -167,10 +1141,6 @@ public class SqlInsertParser {
         
         String tableName = ((SqlIdentifier) tokens.get(2)).getId();
 
-        if (!tableNames.contains(tableName)) {
-            return; // Table should be ignored
-        }
-
         SqlToken columnNamesGroupOrValues = tokens.get(3);
 
         int index;
@@ -198,42 +1168,25 @@ public class SqlInsertParser {
             throw new SqlInsertParseException("\"INSERT\" statement doesn't include column names or \"VALUES\" keyword", stmt);
         }
 
-        int initialCapacity = 2;
-        
-        if (columnNames == null) {
-            columnNames = tablesFields.get(tableName.toLowerCase());
-        }
+        SqlRow row = handler.beginInsert(tableName, columnNames);
 
-        if (columnNames != null) {
-            initialCapacity = columnNames.size();
+        if (row == null) {
+            return; // Table should be ignored
         }
 
-        var rowValues = new LinkedHashMap<String, Object>(initialCapacity);
-        var rowValuesArr = new ArrayList<SqlValue>(initialCapacity);
-
         for(int i = index; i < tokens.size(); i+= 2) {
             if (i > 5 && !SqlDelimiter.COMMA.equals(tokens.get(i - 1))) {
                 throw new SqlInsertParseException("Delimiter expected, \"" + tokens.get(i - 1) + "\" found", stmt);
             }
 
             if (tokens.get(i) instanceof SqlTokenGroup tg) {
-                rowValues.clear();
-                rowValuesArr.clear();
+                row.clear();
 
-                extractTupleValues(tg, rowValuesArr);
+                extractTupleValues(tg, row);
 
-                if (columnNames == null) {
-                    for(int j = 0; j < rowValuesArr.size(); j++) {
-                        rowValues.put("#" + j, rowValuesArr.get(j).getValue());
-                    }
+                if (row.test()) {
+                    handler.insertRow(row);
                 }
-                else {
-                    for(int j = 0; j < columnNames.size(); j++) {
-                        rowValues.put(columnNames.get(j), rowValuesArr.get(j).getValue());
-                    }
-                }
-
-                callback.onInsert(tableName, rowValues);
             }
             else {
                 throw new SqlInsertParseException("Values expected where \"" + tokens.get(i) + "\" found", stmt);
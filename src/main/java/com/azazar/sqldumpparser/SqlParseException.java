@@ -25,12 +25,47 @@ import java.text.ParseException;
  */
 public class SqlParseException extends ParseException {
 
+    /**
+     * The position of the error in the input.
+     */
+    private final long position;
+
     public SqlParseException(String message, ParseBuffer buffer) {
-        this(message, buffer.subSequence(0, Math.min(40, buffer.length())), buffer.position());
+        this(message, context(buffer), buffer.position());
+    }
+
+    public SqlParseException(String message, CharSequence s, long errorOffset) {
+        super(message + " (" + s.toString() + ')', (int) Math.min(errorOffset, Integer.MAX_VALUE));
+        this.position = errorOffset;
+    }
+
+    private static String context(ParseBuffer buffer) {
+        try {
+            return buffer.substring(0, Math.min(40, buffer.length()));
+        } catch (IndexOutOfBoundsException ex) {
+            // A stream ended within the context, so its length is known now
+            return buffer.substring(0, buffer.length());
+        }
+    }
+
+    /**
+     * Creates a copy of an exception thrown while parsing a part of the input
+     * starting at the given offset.
+     */
+    SqlParseException(SqlParseException ex, long offset) {
+        super(ex.getMessage(), (int) Math.min(ex.position + offset, Integer.MAX_VALUE));
+        this.position = ex.position + offset;
+        setStackTrace(ex.getStackTrace());
     }
 
-    public SqlParseException(String message, CharSequence s, int errorOffset) {
-        super(message + " (" + s.toString() + ')', errorOffset);
+    /**
+     * Returns the position of the error in the input. Unlike
+     * {@link #getErrorOffset()} it isn't limited to Integer.MAX_VALUE.
+     *
+     * @return The position of the error.
+     */
+    public long getPosition() {
+        return position;
     }
 
 }
@@ -17,13 +17,34 @@
 package com.azazar.sqldumpparser;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
-import org.apache.commons.lang3.StringUtils;
+import com.azazar.sqldumpparser.codec.InputCodec;
+import com.azazar.sqldumpparser.codec.InputCodecs;
+import com.azazar.sqldumpparser.util.BufferLimitExceededException;
+import com.azazar.sqldumpparser.util.ByteParseBuffer;
 import com.azazar.sqldumpparser.util.IOExceptionWrapper;
+import com.azazar.sqldumpparser.util.InputStreamParseBuffer;
+import com.azazar.sqldumpparser.util.MappedFileParseBuffer;
 import com.azazar.sqldumpparser.util.ParseBuffer;
+import com.azazar.sqldumpparser.util.ReadAheadReader;
 
 /**
  * A class that represents an SQL parser. The parser is designed to process SQL statements, 
@@ -44,6 +65,60 @@ import com.azazar.sqldumpparser.util.ParseBuffer;
  * @author Azazar <spam@azazar.com>
  */
 public class SqlParser {
+
+    /**
+     * Maximum number of characters copied from the buffer at once while
+     * parsing string literals, so that stream buffers don't have to hold a
+     * whole literal ahead of the current position.
+     */
+    static final int MAX_STRING_RUN = 0x2000;
+
+    /**
+     * Mantissas below this limit are exactly representable as double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Powers of ten exactly representable as double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Number of slots in the identifier cache, must be a power of two.
+     */
+    private static final int IDENTIFIER_CACHE_SIZE = 0x200;
+
+    /**
+     * Maximum length of identifiers kept in the identifier cache.
+     */
+    private static final int MAX_CACHED_IDENTIFIER = 64;
+
+    /**
+     * The maximum number of tokens in the header of an INSERT statement:
+     * INSERT INTO table (columns) VALUES.
+     */
+    private static final int MAX_INSERT_HEADER = 5;
+
+    /**
+     * The largest binary buffer kept for the next binary literal, so that a
+     * single huge BLOB doesn't pin its size for the rest of the parse.
+     */
+    private static final int MAX_RETAINED_BINARY = 0x10000;
+
+    /**
+     * The default size of the byte ranges a file is split into for parallel
+     * parsing.
+     */
+    public static final int DEFAULT_PARALLEL_CHUNK_SIZE = 0x4000000;
+
+    /**
+     * The default limit on characters buffered from a Reader, the largest
+     * array size most VMs can allocate.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
     
     /**
      * ArrayList of SqlTokens used to store the parsed tokens.
@@ -51,9 +126,97 @@ public class SqlParser {
     ArrayList<SqlToken> tokenBuffer = new ArrayList<>(10);
     
     /**
-     * StringBuilder used to store the parsed strings.
+     * The raw text of the string literals of the current statement, shared by
+     * its SqlString tokens, or null if it has none yet.
+     */
+    private StringBuilder literals;
+
+    /**
+     * Cache of recently seen identifiers, so that table and column names
+     * repeated in every statement are shared instead of allocated again.
+     */
+    private final SqlIdentifier[] identifiers = new SqlIdentifier[IDENTIFIER_CACHE_SIZE];
+
+    /**
+     * Tokens of a value of a tuple parsed by the INSERT fast path that isn't
+     * a number or a string.
+     */
+    private final ArrayList<SqlToken> valueBuffer = new ArrayList<>();
+
+    /**
+     * The value of the last number read, depending on its type.
+     */
+    private long longValue;
+
+    private double doubleValue;
+
+    private BigDecimal decimalValue;
+
+    /**
+     * The bytes of the binary literal being read.
+     */
+    private byte[] binaryBuffer = new byte[64];
+
+    private int binaryLength;
+
+    /**
+     * Chars of a spilled string on their way to its Writer.
+     */
+    private char[] spillChars;
+
+    /**
+     * Reads string literals as they are, for the lexer to unescape them on
+     * demand.
+     */
+    private final SqlStringReader.Chars rawReader = new SqlStringReader.Chars(false);
+
+    /**
+     * Reads string literals into the rows of INSERT statements.
+     */
+    private final SqlStringReader.Chars textReader = new SqlStringReader.Chars(true);
+
+    /**
+     * Reads string literals introduced by {@code _binary} into the binary
+     * buffer. The bytes of byte buffers are copied as they are, chars are
+     * encoded as UTF-8.
+     */
+    private final SqlStringReader binaryReader = new SqlStringReader(true) {
+        @Override
+        void append(ParseBuffer buf, int count) {
+            appendBinary(buf, count, buf instanceof ByteParseBuffer);
+        }
+
+        @Override
+        void append(char ch) {
+            appendByte(ch);
+        }
+
+        @Override
+        int length() {
+            return binaryLength;
+        }
+    };
+
+    /**
+     * Receives INSERT statements tuple by tuple instead of as statements,
+     * if set.
+     */
+    SqlInsertHandler insertHandler;
+
+    /**
+     * The maximum number of characters buffered when parsing from a Reader.
+     */
+    private int maxBufferSize = DEFAULT_MAX_BUFFER_SIZE;
+
+    /**
+     * The number of blocks read ahead from a Reader, or 0 to read on demand.
      */
-    StringBuilder stringBuffer = new StringBuilder(10);
+    private int readAheadDepth;
+
+    /**
+     * The size of the byte ranges a file is split into for parallel parsing.
+     */
+    private int parallelChunkSize = DEFAULT_PARALLEL_CHUNK_SIZE;
 
     /**
      * Constructs a new instance of the SqlParser.
@@ -63,6 +226,76 @@ public class SqlParser {
     public SqlParser() {
     }
 
+    /**
+     * Sets the maximum number of characters buffered ahead of the current
+     * position when parsing from a Reader. Data already parsed is released as
+     * the parser advances, so only a single token has to fit in the buffer.
+     * A longer token makes parsing fail with a
+     * {@link BufferLimitExceededException}.
+     *
+     * @param maxBufferSize the maximum number of characters to buffer.
+     * @return this parser.
+     */
+    public SqlParser setMaxBufferSize(int maxBufferSize) {
+        if (maxBufferSize <= 0) {
+            throw new IllegalArgumentException("maxBufferSize=" + maxBufferSize);
+        }
+
+        this.maxBufferSize = maxBufferSize;
+
+        return this;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Sets the number of blocks read ahead on a background thread when
+     * parsing from a Reader, so that reading overlaps with parsing. Two or
+     * three blocks are usually enough to hide the latency of slow storage.
+     *
+     * @param depth the number of blocks to read ahead, or 0 to read on
+     * demand on the parsing thread.
+     * @return this parser.
+     * @see ReadAheadReader
+     */
+    public SqlParser setReadAhead(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth=" + depth);
+        }
+
+        this.readAheadDepth = depth;
+
+        return this;
+    }
+
+    public int getReadAhead() {
+        return readAheadDepth;
+    }
+
+    /**
+     * Sets the size of the byte ranges a file is split into by
+     * {@code parseParallel}. Smaller ranges spread the work more evenly, at
+     * the cost of more statements crossing range boundaries.
+     *
+     * @param chunkSize the number of bytes in a range.
+     * @return this parser.
+     */
+    public SqlParser setParallelChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize=" + chunkSize);
+        }
+
+        this.parallelChunkSize = chunkSize;
+
+        return this;
+    }
+
+    public int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
     /**
      * Parses an SQL string and returns a list of SqlStatement objects.
      *
@@ -107,6 +340,9 @@ public class SqlParser {
 
     /**
      * Parses an SQL string from a Reader and calls the stmtConsumer for each SqlStatement.
+     * The input is read through a ring buffer limited by
+     * {@link #setMaxBufferSize(int)}, ahead of the parser if
+     * {@link #setReadAhead(int)} is set.
      *
      * @param reader the Reader containing the SQL string to parse.
      * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
@@ -114,230 +350,1615 @@ public class SqlParser {
      * @throws IOException if an I/O error occurs while reading from the Reader.
      */
     public void parse(Reader reader, Consumer<SqlStatement> stmtConsumer) throws SqlParseException, IOException {
+        ReadAheadReader readAhead = readAheadDepth > 0 ? new ReadAheadReader(reader, readAheadDepth) : null;
+
         try {
-            parse(ParseBuffer.wrap(reader), stmtConsumer);
+            parse(ParseBuffer.wrap(readAhead != null ? readAhead : reader, maxBufferSize), stmtConsumer);
         } catch (IOExceptionWrapper ex) {
             throw ex.getCause();
+        } finally {
+            if (readAhead != null) {
+                readAhead.stop();
+            }
         }
     }
 
     /**
-     * Parses a CharBuffer containing SQL and calls the stmtConsumer for each SqlStatement.
+     * Parses UTF-8 encoded SQL and returns a list of SqlStatement objects.
+     * The SQL structure is recognized on bytes directly, only string literals
+     * and quoted identifiers are decoded.
      *
-     * @param buf the CharBuffer containing the SQL to parse.
-     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @param bytes the UTF-8 encoded SQL to parse.
+     * @return a list of SqlStatement objects.
      * @throws SqlParseException if there is a syntax error in the input SQL string.
-     */    
-    public void parse(ParseBuffer buf, Consumer<SqlStatement> stmtConsumer) throws SqlParseException {
-        skipWhitespacesAndComments(buf);
+     */
+    public List<SqlStatement> parse(ByteBuffer bytes) throws SqlParseException {
+        ArrayList<SqlStatement> result = new ArrayList<>();
         
-        while(!buf.isEmpty()) {
-            parseStatement(buf, stmtConsumer);
-            
-            skipWhitespacesAndComments(buf);
-        }
+        parse(bytes, result::add);
+        
+        return result;
     }
-    
-    private void skipWhitespacesAndComments(ParseBuffer buf) throws SqlParseException {
-        while(!buf.isEmpty()) {
-            char ch = buf.charAt(0);
-            
-            if (ch == ' ' || ch == '\t') {
-                buf.advance();
-                continue;
-            }
-            
-            if (ch == '\r' || ch == '\n') {
-                buf.advance();
-                continue;
-            }
 
-            // Skip single line comment
-            if(StringUtils.startsWith(buf, "--")) {
-                int end = ParseBufferUtils.indexOf(buf, "\n", 2);
+    /**
+     * Parses UTF-8 encoded SQL and calls the stmtConsumer for each SqlStatement.
+     *
+     * @param bytes the UTF-8 encoded SQL to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     */
+    public void parse(ByteBuffer bytes, Consumer<SqlStatement> stmtConsumer) throws SqlParseException {
+        parse(ParseBuffer.wrap(bytes), stmtConsumer);
+    }
 
-                if (end == -1)
-                    buf.advance(buf.length());
-                else
-                    buf.advance(end + 1);
-                
-                continue;
-            }
+    /**
+     * Parses a UTF-8 encoded SQL file and calls the stmtConsumer for each
+     * SqlStatement. The file is memory mapped in windows, so it can be of
+     * any size. Compressed files, such as .sql.gz dumps, are detected by
+     * their leading bytes and decompressed on background threads.
+     *
+     * @param path the SQL file to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     * @throws IOException if an I/O error occurs while reading the file.
+     * @see InputCodecs
+     */
+    public void parse(Path path, Consumer<SqlStatement> stmtConsumer) throws SqlParseException, IOException {
+        InputCodec codec = InputCodecs.detect(path);
 
-            // Skip multiline comment
-            while(StringUtils.startsWith(buf, "/*")) {
-                int end = ParseBufferUtils.indexOf(buf, "*/", 2);
+        if (codec != null) {
+            // Decoded content is parsed as is, even if it looks compressed too
+            parseDecoded(codec.decode(path), stmtConsumer);
+            return;
+        }
 
-                if (end == -1)
-                    throw new SqlParseException("Endless comment", buf);
+        try (MappedFileParseBuffer buf = ParseBuffer.open(path)) {
+            parse(buf, stmtConsumer);
+        } catch (IOExceptionWrapper ex) {
+            throw ex.getCause();
+        }
+    }
 
-                buf.advance(end + 2);
-                
-                continue;
-            }
-            
-            break;
+    /**
+     * Parses UTF-8 encoded SQL from an InputStream and calls the stmtConsumer
+     * for each SqlStatement. Compressed input is detected by its leading
+     * bytes and decompressed on a background thread. The stream is closed
+     * when parsing ends.
+     *
+     * @param in the stream containing the SQL to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     * @throws IOException if an I/O error occurs while reading the stream.
+     * @see InputCodecs
+     */
+    public void parse(InputStream in, Consumer<SqlStatement> stmtConsumer) throws SqlParseException, IOException {
+        parseDecoded(InputCodecs.decode(in), stmtConsumer);
+    }
+
+    private void parseDecoded(InputStream in, Consumer<SqlStatement> stmtConsumer) throws SqlParseException, IOException {
+        try (InputStreamParseBuffer buf = new InputStreamParseBuffer(in)) {
+            parse(buf, stmtConsumer);
+        } catch (IOExceptionWrapper ex) {
+            throw ex.getCause();
         }
     }
 
-    private void parseStatement(ParseBuffer buf, Consumer<SqlStatement> stmtConsumer) throws SqlParseException {
-        tokenBuffer.clear();
-        parseGroup(buf, tokenBuffer, SqlUtil.SPLITTER);
-        stmtConsumer.accept(new SqlStatement(new ArrayList<>(tokenBuffer)));
+    /**
+     * Returns a publisher of the statements of an SQL string. Each
+     * subscription parses the string on its own thread, only as far as the
+     * subscriber has requested statements.
+     *
+     * @param str the SQL string to parse.
+     * @return the publisher.
+     */
+    public Flow.Publisher<SqlStatement> publish(CharSequence str) {
+        return new SqlPublisher<>(sink -> copy().parse(str, sink), SqlPublisher.DEFAULT_THREAD_FACTORY);
     }
 
-    private ArrayList<SqlToken> parseGroup(ParseBuffer buf, char delimiter) throws SqlParseException {
-        ArrayList<SqlToken> result = new ArrayList<>();
-        
-        if (delimiter == ')')
-            result.add(SqlDelimiter.LEFT_PARENTHESES);
-        
-        buf.advance();
-        skipWhitespacesAndComments(buf);
+    /**
+     * Returns a publisher of the statements read from a Reader. The Reader
+     * can only be read by a single subscription.
+     *
+     * @param reader the Reader containing the SQL string to parse.
+     * @return the publisher.
+     * @see #publish(CharSequence)
+     */
+    public Flow.Publisher<SqlStatement> publish(Reader reader) {
+        return new SqlPublisher<>(sink -> copy().parse(reader, sink), SqlPublisher.DEFAULT_THREAD_FACTORY);
+    }
 
-        parseGroup(buf, result, delimiter);
+    public Flow.Publisher<SqlStatement> publish(ByteBuffer bytes) {
+        return new SqlPublisher<>(sink -> copy().parse(bytes.duplicate(), sink), SqlPublisher.DEFAULT_THREAD_FACTORY);
+    }
 
-        if (delimiter == ')')
-            result.add(SqlDelimiter.RIGHT_PARENTHESES);
-        
-        return result;
+    /**
+     * Returns a publisher of the statements of an SQL file. The file is
+     * closed when a subscription completes or is cancelled.
+     *
+     * @param path the SQL file to parse.
+     * @return the publisher.
+     * @see #publish(CharSequence)
+     */
+    public Flow.Publisher<SqlStatement> publish(Path path) {
+        return new SqlPublisher<>(sink -> copy().parse(path, sink), SqlPublisher.DEFAULT_THREAD_FACTORY);
     }
 
-    private void parseGroup(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, char delimiter) throws SqlParseException {
-        while(!buf.isEmpty()) {
-            // Parse token
-            char startChar = buf.charAt(0);
+    /**
+     * Returns a publisher of the statements read from an InputStream. The
+     * stream can only be read by a single subscription, and is closed when it
+     * completes or is cancelled.
+     *
+     * @param in the stream containing the SQL to parse.
+     * @return the publisher.
+     * @see #publish(CharSequence)
+     */
+    public Flow.Publisher<SqlStatement> publish(InputStream in) {
+        return new SqlPublisher<>(sink -> copy().parse(in, sink), SqlPublisher.DEFAULT_THREAD_FACTORY);
+    }
 
-            if (startChar == delimiter) {
-                buf.advance();
-                return;
-            }
+    /**
+     * Returns a new parser with the same settings, for a parse on another
+     * thread.
+     */
+    private SqlParser copy() {
+        return new SqlParser().setMaxBufferSize(maxBufferSize).setReadAhead(readAheadDepth).setParallelChunkSize(parallelChunkSize);
+    }
 
-            if (SqlUtil.isKeywordFirst(startChar)) {
-                int end = StringUtils.indexOfAnyBut(buf, SqlUtil.KEYWORD_CHARS);
+    /**
+     * Parses an SQL file on all threads of the common ForkJoinPool and calls
+     * the stmtConsumer for each SqlStatement on the calling thread.
+     *
+     * @param path the SQL file to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @param ordered whether statements are to be passed in file order.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     * @throws IOException if an I/O error occurs while reading the file.
+     * @see #parseParallel(Path, Consumer, boolean, ForkJoinPool)
+     */
+    public void parseParallel(Path path, Consumer<SqlStatement> stmtConsumer, boolean ordered) throws SqlParseException, IOException {
+        parseParallel(path, stmtConsumer, ordered, ForkJoinPool.commonPool());
+    }
 
-                if (end == -1)
-                    end = buf.length();
-                
-                String word = buf.subSequence(0, end).toString();
+    /**
+     * Parses an SQL file in parallel. The file is split into ranges, which
+     * are scanned concurrently for the first semicolon ending a statement
+     * under each lexical state the range may start in. The states are then
+     * resolved in file order, and the pieces between the boundaries found are
+     * parsed concurrently by separate parsers. The stmtConsumer is always
+     * called on the calling thread, either in file order, or in the order the
+     * pieces are parsed if ordered is false. Compressed files are parsed
+     * sequentially.
+     *
+     * @param path the SQL file to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @param ordered whether statements are to be passed in file order.
+     * @param pool the pool to scan and parse on.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     * @throws IOException if an I/O error occurs while reading the file.
+     */
+    public void parseParallel(Path path, Consumer<SqlStatement> stmtConsumer, boolean ordered, ForkJoinPool pool) throws SqlParseException, IOException {
+        if (InputCodecs.detect(path) != null) {
+            parse(path, stmtConsumer);
+            return;
+        }
 
-                buf.advance(end);
-                
-                tokenBuffer.add(SqlReservedKeyword.isKeyword(word) ? SqlReservedKeyword.create(word) : new SqlIdentifier(word));
-            }
-            else if (SqlUtil.isNumber(startChar) || startChar == '-') {
-                boolean neg = startChar == '-';
+        int window = Math.max(pool.getParallelism(), 1) * 2;
 
-                if (neg) {
-                    buf.advance();
-                }
+        ArrayDeque<Future<StatementBoundaryScanner>> scans = new ArrayDeque<>();
+        ArrayDeque<Future<List<SqlStatement>>> pieces = new ArrayDeque<>();
 
-                int end = StringUtils.indexOfAnyBut(buf, SqlUtil.NUMERIC_CHARS);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = (size + parallelChunkSize - 1) / parallelChunkSize;
+            long scheduled = 0;
 
-                if (end == -1)
-                    end = buf.length();
-                
-                StringBuilder number;
+            byte state = StatementBoundaryScanner.OUT;
+            long pieceStart = 0;
 
-                if (neg) {
-                    number = new StringBuilder("-");
-                }
-                else {
-                    number = new StringBuilder();
-                }
+            for (long chunk = 0; chunk < chunks; chunk++) {
+                while (scheduled < chunks && scheduled < chunk + window) {
+                    long start = scheduled * parallelChunkSize;
+                    long end = Math.min(start + parallelChunkSize, size);
 
-                number.ensureCapacity(end);
-                
-                number.append(buf.subSequence(0, end));
-                
-                buf.advance(end);
-                
-                if (buf.length() >= 2 && buf.charAt(0) == '.' && SqlUtil.isNumber(buf.charAt(1))) {
-                    buf.advance();
-                    
-                    end = StringUtils.indexOfAnyBut(buf, SqlUtil.NUMERIC_CHARS);
+                    scans.add(pool.submit(() -> StatementBoundaryScanner.scan(channel, start, end)));
+                    scheduled++;
+                }
 
-                    if (end == -1)
-                        end = buf.length();
-                    
-                    number.append(".");
-                    number.append(buf.subSequence(0, end));
+                StatementBoundaryScanner scan = await(scans.removeFirst());
 
-                    buf.advance(end);
+                long boundary = scan.boundary(state);
 
-                    tokenBuffer.add(new SqlReal(Double.parseDouble(number.toString())));
-                }
-                else {
-                    tokenBuffer.add(new SqlInteger(Long.parseLong(number.toString())));
+                if (chunk > 0 && boundary >= 0) {
+                    submitPiece(path, pieceStart, boundary, pool, pieces);
+                    pieceStart = boundary;
                 }
+
+                state = scan.endState(state);
+
+                deliverPieces(pieces, stmtConsumer, ordered, window);
             }
-            else {
-                switch (startChar) {
-                    case '"', '\'' -> parseString(buf, tokenBuffer, startChar);
-                    case '`' -> parseIdentifier(buf, tokenBuffer);
-                    case '(' -> tokenBuffer.add(new SqlTokenGroup(parseGroup(buf, ')')));
-                    case ',' -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.COMMA);
-                    case '=' -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.EQUAL);
-                    case '.' -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.DOT);
-                    default -> throw new SqlParseException("Unexpected \"" + startChar + "\"", buf);
-                }
+
+            if (pieceStart < size) {
+                submitPiece(path, pieceStart, size, pool, pieces);
             }
-            
-            skipWhitespacesAndComments(buf);
+
+            deliverPieces(pieces, stmtConsumer, ordered, 0);
         }
-        
-        if (delimiter != ';') {
-            throw new SqlParseException("Group closing delimiter \"" + delimiter + "\" not found", buf);
+        finally {
+            scans.forEach(f -> f.cancel(false));
+            pieces.forEach(f -> f.cancel(false));
         }
     }
-    
-    private void parseDelimiter(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, SqlDelimiter delimiter) {
-        tokenBuffer.add(delimiter);
-        buf.advance();
-    }
 
-    private void parseString(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, char startChar) throws SqlParseException {
-        stringBuffer.setLength(0);
-        
-        buf.advance();
+    private void submitPiece(Path path, long start, long end, ForkJoinPool pool, ArrayDeque<Future<List<SqlStatement>>> pieces) {
+        SqlParser parser = copy();
 
-        while(!buf.isEmpty()) {
-            char ch = buf.getAdvance();
-            
-            if (ch == startChar) {
-                tokenBuffer.add(new SqlString(stringBuffer.toString()));
-                return;
-            }
+        pieces.add(pool.submit(() -> {
+            List<SqlStatement> result = new ArrayList<>();
 
-            if (ch == '\\') {
-                char escaped = buf.getAdvance();
-                
-                stringBuffer.append(switch (escaped) {
-                    case 'b' -> '\b';
-                    case 't' -> '\t';
-                    case 'r' -> '\r';
-                    case 'n' -> '\n';
-                    default -> escaped;
-                });
-            }
-            else {
-                stringBuffer.append(ch);
+            try (MappedFileParseBuffer buf = new MappedFileParseBuffer(path, start, end, MappedFileParseBuffer.DEFAULT_WINDOW_SIZE)) {
+                parser.parse(buf, result::add);
+            } catch (IOExceptionWrapper ex) {
+                throw ex.getCause();
             }
+
+            return result;
+        }));
+    }
+
+    /**
+     * Passes the statements of parsed pieces to the consumer, waiting for
+     * pieces while more than the given number are pending.
+     */
+    private static void deliverPieces(ArrayDeque<Future<List<SqlStatement>>> pieces, Consumer<SqlStatement> stmtConsumer, boolean ordered, int maxPending) throws SqlParseException, IOException {
+        while (!pieces.isEmpty()) {
+            Future<List<SqlStatement>> piece = null;
+
+            if (!ordered) {
+                for (var it = pieces.iterator(); it.hasNext(); ) {
+                    var f = it.next();
+
+                    if (f.isDone()) {
+                        it.remove();
+                        piece = f;
+                        break;
+                    }
+                }
+            }
+
+            if (piece == null && (pieces.peekFirst().isDone() || pieces.size() > maxPending)) {
+                piece = pieces.removeFirst();
+            }
+
+            if (piece == null) {
+                return;
+            }
+
+            await(piece).forEach(stmtConsumer);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws SqlParseException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            // ForkJoinPool wraps checked exceptions of callables, and wraps
+            // them again when rethrowing them on another thread
+            while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof SqlParseException spe) {
+                throw spe;
+            }
+
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+
+            if (cause instanceof Error e) {
+                throw e;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Parses a CharBuffer containing SQL and calls the stmtConsumer for each SqlStatement.
+     *
+     * @param buf the CharBuffer containing the SQL to parse.
+     * @param stmtConsumer a Consumer instance that will be called for each SqlStatement.
+     * @throws SqlParseException if there is a syntax error in the input SQL string.
+     */    
+    public void parse(ParseBuffer buf, Consumer<SqlStatement> stmtConsumer) throws SqlParseException {
+        skipWhitespacesAndComments(buf);
+        
+        while(!buf.isEmpty()) {
+            parseStatement(buf, stmtConsumer);
+            
+            skipWhitespacesAndComments(buf);
+        }
+    }
+    
+    private void skipWhitespacesAndComments(ParseBuffer buf) throws SqlParseException {
+        while(!buf.isEmpty()) {
+            switch (SqlUtil.charClass(buf.charAt(0))) {
+                case SqlUtil.CC_WHITESPACE -> {
+                    int end = 1;
+
+                    while (buf.has(end) && SqlUtil.charClass(buf.charAt(end)) == SqlUtil.CC_WHITESPACE) {
+                        end++;
+                    }
+
+                    buf.advance(end);
+                }
+                case SqlUtil.CC_MINUS -> {
+                    // Skip single line comment
+                    if (!buf.has(1) || buf.charAt(1) != '-') {
+                        return;
+                    }
+
+                    int end = ParseBufferUtils.indexOf(buf, "\n", 2);
+
+                    if (end == -1)
+                        buf.advance(buf.length());
+                    else
+                        buf.advance(end + 1);
+                }
+                case SqlUtil.CC_SLASH -> {
+                    // Skip multiline comment
+                    if (!buf.has(1) || buf.charAt(1) != '*') {
+                        return;
+                    }
+
+                    int end = ParseBufferUtils.indexOf(buf, "*/", 2);
+
+                    if (end == -1)
+                        throw new SqlParseException("Endless comment", buf);
+
+                    buf.advance(end + 2);
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void parseStatement(ParseBuffer buf, Consumer<SqlStatement> stmtConsumer) throws SqlParseException {
+        tokenBuffer.clear();
+        literals = null;
+
+        if (insertHandler != null && parseInsertHeader(buf)) {
+            return;
+        }
+
+        parseGroup(buf, tokenBuffer, SqlUtil.SPLITTER);
+
+        if (literals != null) {
+            literals.trimToSize();
+        }
+
+        stmtConsumer.accept(new SqlStatement(new ArrayList<>(tokenBuffer)));
+    }
+
+    /**
+     * Lexes the header of an INSERT statement into the tokenBuffer, up to the
+     * VALUES keyword. If the header has the expected shape, the tuples are
+     * passed to the insertHandler one at a time as they are lexed.
+     *
+     * @return true if the statement was handled, false if the remaining
+     * tokens are to be parsed as usual.
+     */
+    private boolean parseInsertHeader(ParseBuffer buf) throws SqlParseException {
+        if (SqlUtil.charClass(buf.charAt(0)) != SqlUtil.CC_LETTER) {
+            return false;
+        }
+
+        while (tokenBuffer.size() < MAX_INSERT_HEADER && !buf.isEmpty()) {
+            char startChar = buf.charAt(0);
+
+            if (startChar == SqlUtil.SPLITTER) {
+                return false;
+            }
+
+            parseToken(buf, tokenBuffer, startChar);
+            skipWhitespacesAndComments(buf);
+
+            SqlToken last = tokenBuffer.get(tokenBuffer.size() - 1);
+
+            if (tokenBuffer.size() == 1 && !SqlReservedKeyword.INSERT.equals(last)) {
+                return false;
+            }
+
+            if (tokenBuffer.size() == 3 && last instanceof SqlIdentifier table
+                    && SqlReservedKeyword.INTO.equals(tokenBuffer.get(1)) && !insertHandler.isTableSelected(table.getId())) {
+                skipStatement(buf);
+                return true;
+            }
+
+            if (SqlReservedKeyword.VALUES.equals(last)) {
+                break;
+            }
+        }
+
+        int size = tokenBuffer.size();
+
+        if (size < 4 || size > 5
+                || !SqlReservedKeyword.INTO.equals(tokenBuffer.get(1))
+                || !(tokenBuffer.get(2) instanceof SqlIdentifier table)
+                || !SqlReservedKeyword.VALUES.equals(tokenBuffer.get(size - 1))) {
+            return false;
+        }
+
+        List<String> columnNames = null;
+
+        if (size == 5) {
+            if (!(tokenBuffer.get(3) instanceof SqlTokenGroup group)) {
+                return false;
+            }
+
+            List<SqlToken> tokens = group.getTokens();
+            columnNames = new ArrayList<>(tokens.size() / 2);
+
+            for (int i = 1; i < tokens.size() - 1; i += 2) {
+                if (!(tokens.get(i) instanceof SqlIdentifier column) || (i > 1 && !SqlDelimiter.COMMA.equals(tokens.get(i - 1)))) {
+                    return false;
+                }
+
+                columnNames.add(column.getId());
+            }
+        }
+
+        parseTuples(buf, insertHandler.beginInsert(table.getId(), columnNames));
+
+        return true;
+    }
+
+    /**
+     * Parses the tuples following the VALUES keyword up to the end of the
+     * statement into a reused row.
+     *
+     * @param row the row to parse tuples into, or null to skip them.
+     */
+    private void parseTuples(ParseBuffer buf, SqlRow row) throws SqlParseException {
+        if (row == null) {
+            skipStatement(buf);
+            return;
+        }
+
+        while (!buf.isEmpty()) {
+            if (buf.charAt(0) != '(') {
+                throw new SqlParseException("Values expected where \"" + buf.charAt(0) + "\" found", buf);
+            }
+
+            buf.advance();
+            skipWhitespacesAndComments(buf);
+
+            if (parseRow(buf, row)) {
+                insertHandler.insertRow(row);
+            }
+
+            skipWhitespacesAndComments(buf);
+
+            if (buf.isEmpty()) {
+                break;
+            }
+
+            char ch = buf.charAt(0);
+
+            buf.advance();
+
+            if (ch == SqlUtil.SPLITTER) {
+                break;
+            }
+
+            if (ch != ',') {
+                throw new SqlParseException("Delimiter expected, \"" + ch + "\" found", buf);
+            }
+
+            skipWhitespacesAndComments(buf);
+        }
+    }
+
+    /**
+     * Parses the values of a tuple up to the closing parenthesis. Numbers and
+     * strings are read into the slots of the row without creating tokens, and
+     * values of columns the row doesn't select are skipped. Each value is
+     * tested as soon as it's read, and once the row is rejected the remaining
+     * values are skipped. Values spilled for a row that isn't passed on are
+     * abandoned.
+     *
+     * @return false if the row was rejected by a predicate.
+     */
+    private boolean parseRow(ParseBuffer buf, SqlRow row) throws SqlParseException {
+        row.clear();
+
+        // Strings lexed as tokens only keep the literals of their own tuple,
+        // rather than those of the whole statement
+        literals = null;
+
+        try {
+            return parseValues(buf, row);
+        }
+        catch (SqlParseException | RuntimeException ex) {
+            row.discardSpills();
+            throw ex;
+        }
+    }
+
+    private boolean parseValues(ParseBuffer buf, SqlRow row) throws SqlParseException {
+
+        if (!buf.isEmpty() && buf.charAt(0) == ')') {
+            buf.advance();
+            return true;
+        }
+
+        boolean accepted = true;
+
+        while (!buf.isEmpty()) {
+            char startChar = buf.charAt(0);
+            int i = row.add();
+
+            if (!accepted || !row.isSelected(i)) {
+                row.setSkipped(i);
+                skipValue(buf, startChar);
+            }
+            else {
+                switch (SqlUtil.charClass(startChar)) {
+                    case SqlUtil.CC_DIGIT, SqlUtil.CC_MINUS -> {
+                        if (isHexNumber(buf)) {
+                            buf.advance(2);
+                            readHex(buf, row, i, false);
+                        }
+                        else switch (readNumber(buf)) {
+                            case SqlRow.LONG -> row.setLong(i, longValue);
+                            case SqlRow.DOUBLE -> row.setDouble(i, doubleValue);
+                            default -> row.setObject(i, decimalValue);
+                        }
+                    }
+                    case SqlUtil.CC_QUOTE -> readString(buf, row, i, startChar);
+                    default -> {
+                        if (readLiteral(buf, row, i, startChar)) {
+                            break;
+                        }
+
+                        valueBuffer.clear();
+                        parseToken(buf, valueBuffer, startChar);
+
+                        SqlToken token = valueBuffer.get(0);
+
+                        if (token instanceof SqlValue value) {
+                            row.setValue(i, value.getValue());
+                        }
+                        else if (!SqlReservedKeyword.NULL.equals(token)) {
+                            row.setToken(i, token);
+                        }
+                    }
+                }
+
+                accepted = row.test(i);
+
+                if (!accepted) {
+                    row.discardSpills();
+                }
+            }
+
+            skipWhitespacesAndComments(buf);
+
+            if (buf.isEmpty()) {
+                break;
+            }
+
+            char ch = buf.charAt(0);
+
+            buf.advance();
+
+            if (ch == ')') {
+                return accepted;
+            }
+
+            if (ch != ',') {
+                throw new SqlParseException("Delimiter expected, \"" + ch + "\" found", buf);
+            }
+
+            skipWhitespacesAndComments(buf);
+        }
+
+        throw new SqlParseException("Group closing delimiter \")\" not found", buf);
+    }
+
+    /**
+     * Skips the rest of a statement up to and including the terminating
+     * semicolon without creating tokens. Only strings, backtick quoted
+     * identifiers and comments are recognized, so that semicolons inside them
+     * don't end the statement.
+     */
+    private void skipStatement(ParseBuffer buf) throws SqlParseException {
+        while (!buf.isEmpty()) {
+            int max = Math.min(buf.length(), MAX_STRING_RUN);
+            int i = 0;
+            char ch = 0;
+
+            for (; i < max && buf.has(i); i++) {
+                ch = buf.charAt(i);
+
+                if (ch == SqlUtil.SPLITTER) {
+                    break;
+                }
+
+                byte cc = SqlUtil.charClass(ch);
+
+                if (cc == SqlUtil.CC_QUOTE || cc == SqlUtil.CC_BACKTICK || cc == SqlUtil.CC_MINUS || cc == SqlUtil.CC_SLASH) {
+                    break;
+                }
+            }
+
+            buf.advance(i);
+
+            if (i == max || buf.isEmpty()) {
+                continue;
+            }
+
+            switch (SqlUtil.charClass(ch)) {
+                case SqlUtil.CC_QUOTE -> skipString(buf, ch);
+                case SqlUtil.CC_BACKTICK -> {
+                    int end = ParseBufferUtils.indexOf(buf, "`", 1);
+
+                    if (end == -1) {
+                        throw new SqlParseException("No closing backtick", buf);
+                    }
+
+                    buf.advance(end + 1);
+                }
+                case SqlUtil.CC_MINUS, SqlUtil.CC_SLASH -> {
+                    long position = buf.position();
+
+                    skipWhitespacesAndComments(buf);
+
+                    // Not a comment
+                    if (buf.position() == position) {
+                        buf.advance();
+                    }
+                }
+                default -> {
+                    buf.advance();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips a value of a column left out by a projection. Numbers and strings
+     * are only scanned for their end, without being converted or unescaped.
+     */
+    private void skipValue(ParseBuffer buf, char startChar) throws SqlParseException {
+        switch (SqlUtil.charClass(startChar)) {
+            case SqlUtil.CC_DIGIT, SqlUtil.CC_MINUS -> {
+                if (isHexNumber(buf)) {
+                    buf.advance(2);
+                    skipHexDigits(buf);
+                    return;
+                }
+
+                int length = buf.length();
+                int start = startChar == '-' ? 1 : 0;
+                int i = buf.skipDigits(start, length);
+
+                if (i == start) {
+                    throw new SqlParseException("Unexpected \"" + startChar + "\"", buf);
+                }
+
+                if (buf.has(i + 1) && buf.charAt(i) == '.' && SqlUtil.isNumber(buf.charAt(i + 1))) {
+                    i = buf.skipDigits(i + 1, length);
+                }
+
+                buf.advance(i);
+            }
+            case SqlUtil.CC_QUOTE -> skipString(buf, startChar);
+            case SqlUtil.CC_LETTER -> {
+                if (isHexString(buf, startChar)) {
+                    buf.advance();
+                    skipString(buf, '\'');
+                }
+                else {
+                    buf.advance(buf.skipWordChars(1, buf.length()));
+                }
+            }
+            case SqlUtil.CC_UNDERSCORE -> {
+                int literal = introducedLiteral(buf);
+
+                if (literal == -1) {
+                    buf.advance(buf.skipWordChars(1, buf.length()));
+                }
+                else {
+                    buf.advance(literal);
+                    skipValue(buf, buf.charAt(0));
+                }
+            }
+            default -> {
+                valueBuffer.clear();
+                parseToken(buf, valueBuffer, startChar);
+            }
+        }
+    }
+
+    private static void skipHexDigits(ParseBuffer buf) {
+        while (!buf.isEmpty()) {
+            int max = Math.min(buf.length(), MAX_STRING_RUN);
+            int i = 0;
+
+            while (i < max && buf.has(i) && SqlUtil.hexValue(buf.charAt(i)) >= 0) {
+                i++;
+            }
+
+            buf.advance(i);
+
+            if (i < max) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a quoted string literal, honouring the same escapes as
+     * {@link SqlStringReader}.
+     */
+    private void skipString(ParseBuffer buf, char startChar) throws SqlParseException {
+        buf.advance();
+
+        while (!buf.isEmpty()) {
+            int max = Math.min(buf.length(), MAX_STRING_RUN);
+            int end = buf.indexOf(startChar, '\\', 0, max);
+
+            if (end == -1) {
+                buf.advance(runEnd(buf, max));
+                continue;
+            }
+
+            buf.advance(end);
+
+            if (buf.getAdvance() == startChar) {
+                // A doubled quote stands for the quote itself
+                if (!buf.isEmpty() && buf.charAt(0) == startChar) {
+                    buf.advance();
+                    continue;
+                }
+
+                return;
+            }
+
+            if (buf.isEmpty()) {
+                break;
+            }
+
+            buf.advance();
+        }
+
+        throw new SqlParseException("No closing delimiter for string: " + startChar, buf);
+    }
+
+    private ArrayList<SqlToken> parseGroup(ParseBuffer buf, char delimiter) throws SqlParseException {
+        ArrayList<SqlToken> result = new ArrayList<>();
+        
+        if (delimiter == ')')
+            result.add(SqlDelimiter.LEFT_PARENTHESES);
+        
+        buf.advance();
+        skipWhitespacesAndComments(buf);
+
+        parseGroup(buf, result, delimiter);
+
+        if (delimiter == ')')
+            result.add(SqlDelimiter.RIGHT_PARENTHESES);
+        
+        return result;
+    }
+
+    private void parseGroup(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, char delimiter) throws SqlParseException {
+        while(!buf.isEmpty()) {
+            // Parse token
+            char startChar = buf.charAt(0);
+
+            if (startChar == delimiter) {
+                buf.advance();
+                return;
+            }
+
+            parseToken(buf, tokenBuffer, startChar);
+            
+            skipWhitespacesAndComments(buf);
+        }
+        
+        if (delimiter != ';') {
+            throw new SqlParseException("Group closing delimiter \"" + delimiter + "\" not found", buf);
+        }
+    }
+
+    private void parseToken(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, char startChar) throws SqlParseException {
+        switch (SqlUtil.charClass(startChar)) {
+            case SqlUtil.CC_LETTER -> {
+                if (isHexString(buf, startChar)) {
+                    tokenBuffer.add(new SqlBinary(readHexString(buf)));
+                }
+                else {
+                    parseWord(buf, tokenBuffer);
+                }
+            }
+            case SqlUtil.CC_UNDERSCORE -> parseIntroduced(buf, tokenBuffer);
+            case SqlUtil.CC_DIGIT, SqlUtil.CC_MINUS -> parseNumber(buf, tokenBuffer);
+            case SqlUtil.CC_QUOTE -> parseString(buf, tokenBuffer, startChar);
+            case SqlUtil.CC_BACKTICK -> parseIdentifier(buf, tokenBuffer);
+            case SqlUtil.CC_LEFT_PARENTHESES -> tokenBuffer.add(new SqlTokenGroup(parseGroup(buf, ')')));
+            case SqlUtil.CC_COMMA -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.COMMA);
+            case SqlUtil.CC_EQUAL -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.EQUAL);
+            case SqlUtil.CC_DOT -> parseDelimiter(buf, tokenBuffer, SqlDelimiter.DOT);
+            default -> throw new SqlParseException("Unexpected \"" + startChar + "\"", buf);
+        }
+    }
+    
+    private void parseWord(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer) {
+        int end = buf.skipWordChars(1, buf.length());
+
+        SqlToken word = SqlReservedKeyword.lookup(buf, 0, end);
+
+        if (word == null) {
+            word = identifier(buf, 0, end);
+        }
+
+        buf.advance(end);
+
+        tokenBuffer.add(word);
+    }
+
+    private void parseNumber(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer) throws SqlParseException {
+        if (isHexNumber(buf)) {
+            tokenBuffer.add(new SqlBinary(readHexNumber(buf)));
+            return;
+        }
+
+        switch (readNumber(buf)) {
+            case SqlRow.LONG -> tokenBuffer.add(new SqlInteger(longValue));
+            case SqlRow.DOUBLE -> tokenBuffer.add(new SqlReal(doubleValue));
+            default -> tokenBuffer.add(new SqlDecimal(decimalValue));
+        }
+    }
+
+    /**
+     * Reads an integer or decimal number, accumulating digits directly from
+     * the buffer. Integers that don't fit into a long are read as BigDecimal.
+     * Decimals with a mantissa below 2^53 are converted exactly without going
+     * through a String.
+     *
+     * @return SqlRow.LONG, SqlRow.DOUBLE or SqlRow.OBJECT, with the value in
+     * longValue, doubleValue or decimalValue respectively.
+     */
+    private byte readNumber(ParseBuffer buf) throws SqlParseException {
+        byte type;
+
+        boolean neg = buf.charAt(0) == '-';
+        int i = neg ? 1 : 0;
+
+        if (!buf.has(i) || !SqlUtil.isNumber(buf.charAt(i))) {
+            throw new SqlParseException("Unexpected \"" + buf.charAt(0) + "\"", buf);
+        }
+
+        // Accumulate negatively, so that Long.MIN_VALUE is representable
+        long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        boolean overflow = false;
+        int fractionDigits = 0;
+        boolean fraction = false;
+
+        while (buf.has(i)) {
+            char ch = buf.charAt(i);
+
+            if (!SqlUtil.isNumber(ch)) {
+                if (ch == '.' && !fraction && buf.has(i + 1) && SqlUtil.isNumber(buf.charAt(i + 1))) {
+                    fraction = true;
+                    i++;
+                    continue;
+                }
+
+                break;
+            }
+
+            int digit = ch - '0';
+
+            if (result < multmin || result * 10 < limit + digit) {
+                overflow = true;
+            }
+            else {
+                result = result * 10 - digit;
+            }
+
+            if (fraction) {
+                fractionDigits++;
+            }
+
+            i++;
+        }
+
+        if (fraction) {
+            if (!overflow && result > -MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+                // A zero mantissa loses the sign, which -0.0 keeps
+                doubleValue = neg && result == 0 ? -0.0 : (neg ? result : -result) / POWERS_OF_TEN[fractionDigits];
+            }
+            else {
+                doubleValue = Double.parseDouble(buf.substring(0, i));
+            }
+
+            type = SqlRow.DOUBLE;
+        }
+        else if (overflow) {
+            decimalValue = new BigDecimal(buf.substring(0, i));
+            type = SqlRow.OBJECT;
+        }
+        else {
+            longValue = neg ? result : -result;
+            type = SqlRow.LONG;
+        }
+
+        buf.advance(i);
+
+        return type;
+    }
+
+    private void parseDelimiter(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, SqlDelimiter delimiter) {
+        tokenBuffer.add(delimiter);
+        buf.advance();
+    }
+
+    /**
+     * Lexes a string literal into a SqlString that keeps its raw text in the
+     * literal buffer of the statement and unescapes it on demand.
+     */
+    private void parseString(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer, char startChar) throws SqlParseException {
+        if (literals == null) {
+            literals = new StringBuilder();
+        }
+
+        int offset = literals.length();
+
+        buf.advance();
+        rawReader.read(buf, literals, startChar, Integer.MAX_VALUE);
+
+        tokenBuffer.add(new SqlString(literals, offset, literals.length() - offset, startChar, rawReader.isEscaped()));
+    }
+
+    /**
+     * Returns the end of a run of up to max chars in which nothing was
+     * found, which is before max if the input ends first.
+     */
+    static int runEnd(ParseBuffer buf, int max) {
+        return buf.has(max - 1) ? max : buf.length();
+    }
+
+    /**
+     * Reads a quoted string literal into a row. Once it turns out to be longer
+     * than the spill threshold of the row, it's written to the spill sink in
+     * runs instead.
+     */
+    private void readString(ParseBuffer buf, SqlRow row, int i, char startChar) throws SqlParseException {
+        StringBuilder sb = row.string(i);
+
+        buf.advance();
+
+        if (textReader.read(buf, sb, startChar, row.spillThreshold)) {
+            return;
+        }
+
+        row.setObject(i, spill(row, i, sb, value -> textReader.read(buf, sb, startChar, MAX_STRING_RUN)));
+    }
+
+    /**
+     * Reads the next run of a value being spilled.
+     */
+    @FunctionalInterface
+    private interface SpillRun {
+
+        /**
+         * Reads the next run of the value into its string buffer or the
+         * binary buffer, which are emptied between runs.
+         *
+         * @param value the value being written, whose destination is open.
+         * @return true if it was the last run.
+         */
+        boolean read(SqlSpilledValue value) throws SqlParseException;
+
+        /**
+         * Finishes a value once it's written and closed.
+         */
+        default void finish(SqlSpilledValue value) throws IOException {
+        }
+
+    }
+
+    /**
+     * Writes a value that turned out to be longer than the spill threshold of
+     * its row to the spill sink, starting with the part of it read so far,
+     * followed by the runs read after it. If the value can't be read to its
+     * end, its destination is abandoned.
+     *
+     * @param sb the StringBuilder a string is read into, or null for a binary
+     * value, which is read into the binary buffer.
+     */
+    private SqlSpilledValue spill(SqlRow row, int i, StringBuilder sb, SpillRun run) throws SqlParseException {
+        boolean binary = sb == null;
+        SqlSpilledValue value = openSpill(row, i, binary);
+        long length = 0;
+        boolean written = false;
+
+        try {
+            Writer writer = binary ? null : value.writer();
+            OutputStream out = binary ? value.stream() : null;
+            boolean last;
+
+            do {
+                last = run.read(value);
+
+                if (binary) {
+                    out.write(binaryBuffer, 0, binaryLength);
+                    length += binaryLength;
+                    binaryLength = 0;
+                }
+                else {
+                    write(writer, sb);
+                    length += sb.length();
+                    sb.setLength(0);
+                }
+            } while (!last);
+
+            if (binary) {
+                binaryValue();
+            }
+
+            value.close(binary, length);
+            run.finish(value);
+            written = true;
         }
- 
-        throw new SqlParseException("No closing delimiter for string: " + startChar, buf);
+        catch (IOException ex) {
+            throw new IOExceptionWrapper(ex);
+        }
+        finally {
+            if (!written) {
+                value.abandon();
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Writes the chars of a StringBuilder through a reused array, without
+     * copying them into a String.
+     */
+    private void write(Writer writer, StringBuilder sb) throws IOException {
+        if (spillChars == null) {
+            spillChars = new char[MAX_STRING_RUN];
+        }
+
+        for (int offset = 0; offset < sb.length(); offset += spillChars.length) {
+            int n = Math.min(spillChars.length, sb.length() - offset);
+
+            sb.getChars(offset, offset + n, spillChars, 0);
+            writer.write(spillChars, 0, n);
+        }
+    }
+
+    private static SqlSpilledValue openSpill(SqlRow row, int i, boolean binary) {
+        try {
+            return row.spillSink.open(row, i, binary);
+        }
+        catch (IOException ex) {
+            throw new IOExceptionWrapper(ex);
+        }
+    }
+
+    /**
+     * Reads an {@code X'...'} literal, or a literal with a charset introducer,
+     * into a row, spilling it if it's longer than the spill threshold of the
+     * row. Like {@link #parseIntroduced}, only the {@code _binary} introducer
+     * makes a difference.
+     *
+     * @return false if the buffer doesn't start with such a literal.
+     */
+    private boolean readLiteral(ParseBuffer buf, SqlRow row, int i, char startChar) throws SqlParseException {
+        if (isHexString(buf, startChar)) {
+            buf.advance(2);
+            readHex(buf, row, i, true);
+            return true;
+        }
+
+        if (startChar != '_') {
+            return false;
+        }
+
+        int literal = introducedLiteral(buf);
+
+        if (literal == -1) {
+            return false;
+        }
+
+        boolean binary = isBinaryIntroducer(buf);
+
+        buf.advance(literal);
+
+        char ch = buf.charAt(0);
+
+        if (SqlUtil.charClass(ch) == SqlUtil.CC_QUOTE) {
+            if (binary) {
+                readBinaryString(buf, row, i, ch);
+            }
+            else {
+                readString(buf, row, i, ch);
+            }
+        }
+        else if (isHexNumber(buf)) {
+            buf.advance(2);
+            readHex(buf, row, i, false);
+        }
+        else if (isHexString(buf, ch)) {
+            buf.advance(2);
+            readHex(buf, row, i, true);
+        }
+        else {
+            throw new SqlParseException("Hex digit expected", buf);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the digits of a hex literal after its prefix into a row, spilling
+     * them in runs if there are more than the spill threshold.
+     *
+     * @param quoted whether the literal is an {@code X'...'} one.
+     */
+    private void readHex(ParseBuffer buf, SqlRow row, int i, boolean quoted) throws SqlParseException {
+        binaryLength = 0;
+
+        int nibble = readHexDigits(buf, row.spillThreshold);
+
+        if (binaryLength < row.spillThreshold || buf.isEmpty() || SqlUtil.hexValue(buf.charAt(0)) == -1) {
+            if (quoted) {
+                closeHexString(buf, nibble);
+                row.setObject(i, binaryValue());
+            }
+            else {
+                row.setObject(i, hexNumber(nibble));
+            }
+
+            return;
+        }
+
+        row.setObject(i, spill(row, i, null, new HexRun(buf, quoted)));
+    }
+
+    /**
+     * Reads the runs of a spilled hex literal. An odd number of digits pads
+     * the first byte, which is only known at the end, so a {@code 0x} literal
+     * spilled to a file is padded once it's written. A stream can't be padded
+     * once written, so such a literal spilled to a stream fails, which
+     * doesn't happen with dumps, whose hex literals encode whole bytes.
+     */
+    private final class HexRun implements SpillRun {
+
+        private final ParseBuffer buf;
+
+        private final boolean quoted;
+
+        private int nibble = -1;
+
+        HexRun(ParseBuffer buf, boolean quoted) {
+            this.buf = buf;
+            this.quoted = quoted;
+        }
+
+        @Override
+        public boolean read(SqlSpilledValue value) throws SqlParseException {
+            nibble = readHexDigits(buf, MAX_STRING_RUN);
+
+            if (!buf.isEmpty() && SqlUtil.hexValue(buf.charAt(0)) != -1) {
+                return false;
+            }
+
+            if (quoted) {
+                closeHexString(buf, nibble);
+            }
+            else if (nibble != -1 && value.getPath() == null) {
+                throw new SqlParseException("Odd number of hex digits in a value spilled to a stream", buf);
+            }
+
+            return true;
+        }
+
+        @Override
+        public void finish(SqlSpilledValue value) throws IOException {
+            if (nibble != -1) {
+                value.padHexDigit(nibble);
+            }
+        }
+
+    }
+
+    /**
+     * Reads a quoted string literal with the {@code _binary} introducer into
+     * a row, spilling it in runs if it's longer than the spill threshold.
+     */
+    private void readBinaryString(ParseBuffer buf, SqlRow row, int i, char startChar) throws SqlParseException {
+        binaryLength = 0;
+        buf.advance();
+
+        if (binaryReader.read(buf, startChar, row.spillThreshold)) {
+            row.setObject(i, binaryValue());
+            return;
+        }
+
+        row.setObject(i, spill(row, i, null, value -> binaryReader.read(buf, startChar, MAX_STRING_RUN)));
+    }
+
+    /**
+     * Lexes a word starting with an underscore. A charset introducer such as
+     * {@code _utf8mb4} or {@code _binary} followed by a literal is dropped,
+     * and the literal is read as a binary string if the charset is binary.
+     * Other charsets are ignored, since strings are decoded as UTF-8 anyway.
+     * Any other such word is an identifier.
+     */
+    private void parseIntroduced(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer) throws SqlParseException {
+        int literal = introducedLiteral(buf);
+
+        if (literal == -1) {
+            parseWord(buf, tokenBuffer);
+            return;
+        }
+
+        boolean binary = isBinaryIntroducer(buf);
+
+        buf.advance(literal);
+
+        char startChar = buf.charAt(0);
+
+        if (SqlUtil.charClass(startChar) != SqlUtil.CC_QUOTE) {
+            parseToken(buf, tokenBuffer, startChar);
+        }
+        else if (binary) {
+            binaryLength = 0;
+            buf.advance();
+            binaryReader.read(buf, startChar, Integer.MAX_VALUE);
+            tokenBuffer.add(new SqlBinary(binaryValue()));
+        }
+        else {
+            parseString(buf, tokenBuffer, startChar);
+        }
+    }
+
+    /**
+     * Returns the offset of the literal following a charset introducer at the
+     * start of the buffer, or -1 if the word there isn't followed by one.
+     */
+    private static int introducedLiteral(ParseBuffer buf) {
+        int i = buf.skipWordChars(1, buf.length());
+
+        while (buf.has(i) && SqlUtil.isWhitespace(buf.charAt(i))) {
+            i++;
+        }
+
+        if (!buf.has(i)) {
+            return -1;
+        }
+
+        char ch = buf.charAt(i);
+
+        if (SqlUtil.charClass(ch) == SqlUtil.CC_QUOTE) {
+            return i;
+        }
+
+        if (buf.has(i + 1) && ((ch == '0' && (buf.charAt(i + 1) | 0x20) == 'x') || ((ch | 0x20) == 'x' && buf.charAt(i + 1) == '\''))) {
+            return i;
+        }
+
+        return -1;
+    }
+
+    private static boolean isBinaryIntroducer(ParseBuffer buf) {
+        String introducer = "_binary";
+
+        if (buf.skipWordChars(1, buf.length()) != introducer.length()) {
+            return false;
+        }
+
+        for (int i = 1; i < introducer.length(); i++) {
+            if ((buf.charAt(i) | 0x20) != introducer.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether the buffer starts with a {@code 0x} hex literal.
+     */
+    private static boolean isHexNumber(ParseBuffer buf) {
+        return buf.has(2) && buf.charAt(0) == '0' && (buf.charAt(1) | 0x20) == 'x' && SqlUtil.hexValue(buf.charAt(2)) >= 0;
+    }
+
+    /**
+     * Returns whether the buffer starts with an {@code X'...'} hex literal.
+     */
+    private static boolean isHexString(ParseBuffer buf, char startChar) {
+        return (startChar | 0x20) == 'x' && buf.has(1) && buf.charAt(1) == '\'';
+    }
+
+    /**
+     * Reads a {@code 0x} hex literal. An odd number of digits is padded with
+     * a leading zero, as MySQL does.
+     */
+    private byte[] readHexNumber(ParseBuffer buf) {
+        buf.advance(2);
+        binaryLength = 0;
+
+        return hexNumber(readHexDigits(buf, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Returns the value of a {@code 0x} literal from the digits in the binary
+     * buffer.
+     *
+     * @param nibble the last digit if the number of digits is odd, -1
+     * otherwise.
+     */
+    private byte[] hexNumber(int nibble) {
+        padHexDigits(nibble);
+
+        return binaryValue();
+    }
+
+    /**
+     * Pads the digits of a {@code 0x} literal in the binary buffer with a
+     * leading zero if their number is odd, shifting them right by one in
+     * place.
+     *
+     * @param nibble the last digit if the number of digits is odd, -1
+     * otherwise.
+     */
+    private void padHexDigits(int nibble) {
+        if (nibble == -1) {
+            return;
+        }
+
+        ensureBinary(1);
+
+        byte[] b = binaryBuffer;
+        int n = binaryLength;
+
+        b[n] = (byte) (n > 0 ? (b[n - 1] << 4) | nibble : nibble);
+
+        for (int i = n - 1; i > 0; i--) {
+            b[i] = (byte) ((b[i - 1] << 4) | ((b[i] & 0xFF) >>> 4));
+        }
+
+        if (n > 0) {
+            b[0] = (byte) ((b[0] & 0xFF) >>> 4);
+        }
+
+        binaryLength = n + 1;
+    }
+
+    /**
+     * Reads an {@code X'...'} hex literal, which must have an even number of
+     * digits.
+     */
+    private byte[] readHexString(ParseBuffer buf) throws SqlParseException {
+        buf.advance(2);
+        binaryLength = 0;
+        closeHexString(buf, readHexDigits(buf, Integer.MAX_VALUE));
+
+        return binaryValue();
+    }
+
+    private static void closeHexString(ParseBuffer buf, int nibble) throws SqlParseException {
+        if (buf.isEmpty() || buf.charAt(0) != '\'') {
+            throw new SqlParseException("Hex digit expected", buf);
+        }
+
+        if (nibble != -1) {
+            throw new SqlParseException("Odd number of hex digits", buf);
+        }
+
+        buf.advance();
+    }
+
+    /**
+     * Decodes hex digits into the binary buffer, pairs at a time, through a
+     * lookup table. Digits are consumed in runs, so that stream buffers don't
+     * have to hold the whole literal. Stops early, after a whole byte, once
+     * the binary buffer holds at least limit bytes.
+     *
+     * @return the value of the last digit if the number of digits is odd, -1
+     * otherwise.
+     */
+    private int readHexDigits(ParseBuffer buf, int limit) {
+        int high = -1;
+
+        while (!buf.isEmpty()) {
+            if (binaryLength >= limit && high == -1) {
+                break;
+            }
+
+            int max = Math.min(buf.length(), MAX_STRING_RUN);
+
+            ensureBinary(max / 2 + 1);
+
+            byte[] out = binaryBuffer;
+            int n = binaryLength;
+            int i = 0;
+
+            for (; i < max && buf.has(i); i++) {
+                int digit = SqlUtil.hexValue(buf.charAt(i));
+
+                if (digit == -1) {
+                    break;
+                }
+
+                if (high == -1) {
+                    high = digit;
+                }
+                else {
+                    out[n++] = (byte) ((high << 4) | digit);
+                    high = -1;
+                }
+            }
+
+            binaryLength = n;
+            buf.advance(i);
+
+            if (i < max) {
+                break;
+            }
+        }
+
+        return high;
+    }
+
+    /**
+     * Appends the first chars of the buffer to the binary buffer, as bytes if
+     * they are bytes and UTF-8 encoded otherwise.
+     */
+    private void appendBinary(ParseBuffer buf, int count, boolean raw) {
+        ensureBinary(raw ? count : count * 3);
+
+        byte[] out = binaryBuffer;
+        int n = binaryLength;
+
+        for (int i = 0; i < count; i++) {
+            char ch = buf.charAt(i);
+
+            if (raw || ch < 0x80) {
+                out[n++] = (byte) ch;
+            }
+            else if (ch < 0x800) {
+                out[n++] = (byte) (0xC0 | (ch >> 6));
+                out[n++] = (byte) (0x80 | (ch & 0x3F));
+            }
+            else if (Character.isHighSurrogate(ch) && i + 1 < count && Character.isLowSurrogate(buf.charAt(i + 1))) {
+                int cp = Character.toCodePoint(ch, buf.charAt(++i));
+
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(ch)) {
+                // Unpaired surrogates are replaced, as by String.getBytes()
+                out[n++] = '?';
+            }
+            else {
+                out[n++] = (byte) (0xE0 | (ch >> 12));
+                out[n++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+
+        binaryLength = n;
+    }
+
+    private void appendByte(int b) {
+        ensureBinary(1);
+        binaryBuffer[binaryLength++] = (byte) b;
+    }
+
+    private void ensureBinary(int extra) {
+        if (binaryLength + extra > binaryBuffer.length) {
+            binaryBuffer = Arrays.copyOf(binaryBuffer, Math.max(binaryBuffer.length * 2, binaryLength + extra));
+        }
+    }
+
+    /**
+     * Returns a copy of the binary buffer, and lets it go if it grew large.
+     */
+    private byte[] binaryValue() {
+        byte[] result = Arrays.copyOf(binaryBuffer, binaryLength);
+
+        if (binaryBuffer.length > MAX_RETAINED_BINARY) {
+            binaryBuffer = new byte[64];
+        }
+
+        binaryLength = 0;
+
+        return result;
     }
 
     private void parseIdentifier(ParseBuffer buf, ArrayList<SqlToken> tokenBuffer) throws SqlParseException {
-        int end = StringUtils.indexOf(buf, '`', 1);
+        int end = ParseBufferUtils.indexOf(buf, "`", 1);
         
         if (end == -1) {
             throw new SqlParseException("No closing backtick", buf);
         }
         
-        tokenBuffer.add(new SqlIdentifier(buf.subSequence(1, end).toString()));
+        tokenBuffer.add(identifier(buf, 1, end));
         
         buf.advance(end + 1);
     }
-    
+
+    /**
+     * Returns an identifier for the given range of the buffer, reusing a
+     * cached instance when the same identifier was seen recently. Only ASCII
+     * identifiers are cached, since for byte buffers the characters of other
+     * identifiers differ from their decoded form.
+     */
+    private SqlIdentifier identifier(ParseBuffer buf, int start, int end) {
+        if (end - start > MAX_CACHED_IDENTIFIER) {
+            return new SqlIdentifier(buf.substring(start, end));
+        }
+
+        int h = 0;
+
+        for (int i = start; i < end; i++) {
+            char ch = buf.charAt(i);
+
+            if (ch >= 0x80) {
+                return new SqlIdentifier(buf.substring(start, end));
+            }
+
+            h = 31 * h + ch;
+        }
+
+        int slot = (h ^ (h >>> 16)) & (IDENTIFIER_CACHE_SIZE - 1);
+        SqlIdentifier cached = identifiers[slot];
+
+        if (cached != null && regionEquals(cached.getId(), buf, start, end)) {
+            return cached;
+        }
+
+        return identifiers[slot] = new SqlIdentifier(buf.substring(start, end));
+    }
+
+    private static boolean regionEquals(String s, ParseBuffer buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i - start) != buf.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Statistics of a stage of a SqlInsertParser pipeline. The values are
+ * updated while parsing, so they can be sampled from another thread to find
+ * the stage that limits the throughput: it's the one that is busy most of the
+ * time, with a full queue in front of it and an empty one behind.
+ *
+ * @author Azazar <spam@azazar.com>
+ * @see SqlInsertParser#setPipelineDepth(int)
+ */
+public final class SqlPipelineStage {
+
+    private final String name;
+
+    private final int queueCapacity;
+
+    private final IntSupplier queueSize;
+
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    private final AtomicLong count = new AtomicLong();
+
+    SqlPipelineStage(String name, int queueCapacity, IntSupplier queueSize) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns the name of the stage: "read", "lex", "decode" or "deliver".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of items waiting in the queue the stage takes its
+     * input from.
+     */
+    public int getQueueSize() {
+        return queueSize.getAsInt();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the time the stage spent working, not counting the time it
+     * waited for input or for room in the next queue. For a stage running on
+     * several threads, the times of the threads are added up.
+     */
+    public long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    /**
+     * Returns the number of items the stage processed: blocks of chars read
+     * and lexed, chunks of statements decoded and rows delivered.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    void addBusy(long nanos) {
+        busyNanos.addAndGet(nanos);
+    }
+
+    void addCount(long n) {
+        count.addAndGet(n);
+    }
+
+    @Override
+    public String toString() {
+        return name + "{queue=" + getQueueSize() + '/' + queueCapacity + ", busy=" + getBusyNanos() / 1000000 + "ms, count=" + getCount() + '}';
+    }
+
+}
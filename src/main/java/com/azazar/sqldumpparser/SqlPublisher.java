@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the items a parse passes to a consumer to a Flow.Subscriber.
+ * Each subscription parses the input on its own thread, started on the first
+ * request. The thread calls onNext directly and waits whenever the demand is
+ * exhausted, so the input is lexed at most one item ahead of the subscriber,
+ * and items passed to onNext may be reused once it returns. Cancelling the
+ * subscription unwinds the parse, closing the input it opened.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class SqlPublisher<T> implements Flow.Publisher<T> {
+
+    static final ThreadFactory DEFAULT_THREAD_FACTORY = r -> {
+        Thread t = new Thread(r, "sql-publisher");
+        t.setDaemon(true);
+        return t;
+    };
+
+    /**
+     * A parse passing items to a consumer.
+     */
+    @FunctionalInterface
+    interface Source<T> {
+
+        void parse(Consumer<T> sink) throws Exception;
+
+    }
+
+    /**
+     * Thrown through the parser to stop it once the subscription is
+     * cancelled.
+     */
+    private static final class Cancelled extends RuntimeException {
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    private final Source<T> source;
+
+    private final ThreadFactory threadFactory;
+
+    SqlPublisher(Source<T> source, ThreadFactory threadFactory) {
+        this.source = source;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private final class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private long demand;
+
+        private boolean started;
+
+        private boolean cancelled;
+
+        /**
+         * The error to signal after an invalid request.
+         */
+        private Throwable invalid;
+
+        /**
+         * The exception thrown by onNext.
+         */
+        private Throwable failure;
+
+        Subscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            Throwable error = null;
+            boolean start = false;
+
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                if (n <= 0) {
+                    invalid = new IllegalArgumentException("n=" + n);
+                    cancelled = true;
+                    notifyAll();
+
+                    // Once started, the parsing thread signals the error
+                    if (!started) {
+                        error = invalid;
+                    }
+                }
+                else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    start = !started;
+                    started = true;
+                    notifyAll();
+                }
+            }
+
+            if (error != null) {
+                subscriber.onError(error);
+            }
+            else if (start) {
+                threadFactory.newThread(this).start();
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        private void emit(T item) {
+            synchronized (this) {
+                try {
+                    while (demand == 0 && !cancelled) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    cancelled = true;
+                }
+
+                if (cancelled) {
+                    throw new Cancelled();
+                }
+
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+
+            try {
+                subscriber.onNext(item);
+            }
+            catch (Throwable ex) {
+                failure = ex;
+                cancel();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+
+            try {
+                source.parse(this::emit);
+            }
+            catch (Throwable ex) {
+                if (ex == failure) {
+                    // A failing subscriber is treated as cancelled, and the
+                    // failure goes to the uncaught exception handler
+                    if (ex instanceof Error e) {
+                        throw e;
+                    }
+
+                    throw ex instanceof RuntimeException re ? re : new RuntimeException(ex);
+                }
+
+                error = ex;
+            }
+
+            synchronized (this) {
+                if (cancelled) {
+                    // Only an invalid request is signaled after cancellation
+                    if (invalid == null) {
+                        return;
+                    }
+
+                    error = invalid;
+                }
+
+                cancelled = true;
+            }
+
+            if (error != null) {
+                subscriber.onError(error);
+            }
+            else {
+                subscriber.onComplete();
+            }
+        }
+
+    }
+
+}
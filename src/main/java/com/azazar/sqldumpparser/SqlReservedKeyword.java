@@ -17,7 +17,6 @@
 package com.azazar.sqldumpparser;
 
 import java.util.LinkedHashMap;
-import java.util.Locale;
 import java.util.Objects;
 
 /**
@@ -229,12 +228,87 @@ public class SqlReservedKeyword implements SqlToken {
     public static final SqlReservedKeyword VALUES = new SqlReservedKeyword("VALUES");
     
     
+    /**
+     * Open addressing hash table of all keywords for lookups that don't
+     * allocate. Built after all keyword constants are registered.
+     */
+    private static final SqlReservedKeyword[] table = buildTable();
+
+    private static SqlReservedKeyword[] buildTable() {
+        var result = new SqlReservedKeyword[Integer.highestOneBit(instances.size() * 4)];
+
+        for (var kw : instances.values()) {
+            int slot = hash(kw.keyword, 0, kw.keyword.length()) & (result.length - 1);
+
+            while (result[slot] != null) {
+                slot = (slot + 1) & (result.length - 1);
+            }
+
+            result[slot] = kw;
+        }
+
+        return result;
+    }
+
+    private static char toUpper(char ch) {
+        return ch >= 'a' && ch <= 'z' ? (char) (ch - ('a' - 'A')) : ch;
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+
+        for (int i = start; i < end; i++) {
+            h = 31 * h + toUpper(s.charAt(i));
+        }
+
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(CharSequence s, int start, int end) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (toUpper(s.charAt(i)) != keyword.charAt(i - start)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds a keyword matching the given range of a character sequence,
+     * ignoring case, without allocating any objects.
+     *
+     * @param s The character sequence.
+     * @param start The start index, inclusive.
+     * @param end The end index, exclusive.
+     * @return The matching keyword, or null if the range isn't a keyword.
+     */
+    public static SqlReservedKeyword lookup(CharSequence s, int start, int end) {
+        int slot = hash(s, start, end) & (table.length - 1);
+
+        SqlReservedKeyword kw;
+
+        while ((kw = table[slot]) != null) {
+            if (kw.matches(s, start, end)) {
+                return kw;
+            }
+
+            slot = (slot + 1) & (table.length - 1);
+        }
+
+        return null;
+    }
+
     public static boolean isKeyword(String s) {
-        return instances.containsKey(s.toUpperCase(Locale.ENGLISH));
+        return lookup(s, 0, s.length()) != null;
     }
     
     public static SqlReservedKeyword create(String s) {
-        var sqlKw = instances.get(s.toUpperCase(Locale.ENGLISH));
+        var sqlKw = lookup(s, 0, s.length());
         
         if (sqlKw == null) {
             throw new IllegalArgumentException(s);
@@ -0,0 +1,604 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A reusable row filled by the INSERT fast path of SqlParser. Each value is
+ * kept in a typed slot: numbers in primitive arrays and strings in reused
+ * StringBuilders.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class SqlRow implements SqlRowView {
+
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte STRING = 3;
+
+    /**
+     * A value held as an object, e.g. a BigDecimal.
+     */
+    static final byte OBJECT = 4;
+
+    /**
+     * A token that isn't a value, e.g. an unquoted identifier.
+     */
+    static final byte TOKEN = 5;
+
+    /**
+     * A value of a column left out by the projection, read as NULL.
+     */
+    static final byte SKIPPED = 6;
+
+    String tableName;
+
+    List<String> columnNames;
+
+    private int count;
+
+    private byte[] types = new byte[16];
+
+    private long[] longs = new long[16];
+
+    private double[] doubles = new double[16];
+
+    private StringBuilder[] strings = new StringBuilder[16];
+
+    private Object[] objects = new Object[16];
+
+    private final ArrayList<String> indexNames = new ArrayList<>();
+
+    /**
+     * The columns to decode by index, or null to decode all of them. Columns
+     * past the end of the array aren't decoded.
+     */
+    private boolean[] selected;
+
+    /**
+     * The indexes of columns decoded only to be tested, which aren't passed
+     * on, or null if there are none.
+     */
+    private int[] filterOnly;
+
+    /**
+     * Predicates by column index, or null if the row has none.
+     */
+    private SqlValuePredicate[] predicates;
+
+    /**
+     * String caches by column index, or null if the row has none.
+     */
+    private SqlStringCache[] caches;
+
+    /**
+     * The length above which strings and binary values are passed to the
+     * spill sink instead of being kept in the row.
+     */
+    int spillThreshold = Integer.MAX_VALUE;
+
+    SqlSpillSink spillSink;
+
+    void clear() {
+        Arrays.fill(objects, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Makes this row a copy of the values of another row, reusing the slots
+     * of this row.
+     */
+    void copyFrom(SqlRow other) {
+        clear();
+
+        tableName = other.tableName;
+        columnNames = other.columnNames;
+        caches = other.caches;
+
+        for (int i = 0; i < other.count; i++) {
+            add();
+
+            switch (other.types[i]) {
+                case LONG -> setLong(i, other.longs[i]);
+                case DOUBLE -> setDouble(i, other.doubles[i]);
+                case STRING -> string(i).append(other.strings[i]);
+                case OBJECT, TOKEN -> {
+                    types[i] = other.types[i];
+                    objects[i] = other.objects[i];
+                }
+                default -> types[i] = other.types[i];
+            }
+        }
+    }
+
+    /**
+     * Adds a slot for the next value.
+     *
+     * @return the index of the slot.
+     */
+    int add() {
+        if (count == types.length) {
+            int n = count * 2;
+
+            types = Arrays.copyOf(types, n);
+            longs = Arrays.copyOf(longs, n);
+            doubles = Arrays.copyOf(doubles, n);
+            strings = Arrays.copyOf(strings, n);
+            objects = Arrays.copyOf(objects, n);
+        }
+
+        types[count] = NULL;
+
+        return count++;
+    }
+
+    /**
+     * Returns the number of columns that can be referred to by name: the
+     * known columns, and columns past them named by their "#" names.
+     */
+    private int namedColumns(Set<String> names) {
+        int n = columnNames != null ? columnNames.size() : 0;
+
+        for (String name : names) {
+            n = Math.max(n, columnIndex(name) + 1);
+        }
+
+        return n;
+    }
+
+    /**
+     * Returns the index a "#" name refers to, or -1 for other names.
+     */
+    private static int columnIndex(String name) {
+        if (name.startsWith("#")) {
+            try {
+                return Integer.parseInt(name, 1, name.length(), 10);
+            }
+            catch (NumberFormatException ex) {
+                // Not an index
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the first of the names that is neither a current column name
+     * nor a "#" name, or null if they all refer to columns.
+     */
+    private String unresolved(Set<String> names) {
+        for (String name : names) {
+            if (columnIndex(name) == -1 && (columnNames == null || !columnNames.contains(name))) {
+                return name;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Selects the columns to decode from the current column names.
+     *
+     * @param columns the names of the columns, or null to select all columns.
+     * @throws SqlInsertParseException if the column names are unknown, since
+     * the INSERT has no column list and no CREATE TABLE of the table was
+     * seen, and a column is selected by its name.
+     */
+    void select(Set<String> columns) throws SqlInsertParseException {
+        if (columns == null) {
+            selected = null;
+            return;
+        }
+
+        String name = columnNames == null ? unresolved(columns) : null;
+
+        if (name != null) {
+            throw new SqlInsertParseException("Column " + name + " of table " + tableName + " is selected by name, but its INSERT has no column list and no CREATE TABLE of it was seen");
+        }
+
+        int n = namedColumns(columns);
+
+        if (selected == null || selected.length != n) {
+            selected = new boolean[n];
+        }
+
+        for (int i = 0; i < n; i++) {
+            selected[i] = columns.contains(columnName(i));
+        }
+    }
+
+    boolean isSelected(int i) {
+        return selected == null || i < selected.length && selected[i];
+    }
+
+    /**
+     * Sets the predicates the values of the row are tested with.
+     *
+     * @param columnPredicates the predicates by column name, or null.
+     * @throws SqlInsertParseException if a tested column isn't one of the
+     * current columns, as rows would pass without being tested.
+     */
+    void filter(Map<String, SqlValuePredicate> columnPredicates) throws SqlInsertParseException {
+        filterOnly = null;
+
+        if (columnPredicates == null || columnPredicates.isEmpty()) {
+            predicates = null;
+            return;
+        }
+
+        String name = unresolved(columnPredicates.keySet());
+
+        if (name != null) {
+            predicates = null;
+            throw new SqlInsertParseException("Column " + name + " of table " + tableName + " is tested, but it isn't among the columns of its INSERT");
+        }
+
+        predicates = new SqlValuePredicate[namedColumns(columnPredicates.keySet())];
+
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = columnPredicates.get(columnName(i));
+        }
+
+        if (selected == null) {
+            return;
+        }
+
+        // Tested columns are decoded even if they aren't selected
+        int[] hidden = new int[predicates.length];
+        int n = 0;
+
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i] != null && !isSelected(i)) {
+                hidden[n++] = i;
+            }
+        }
+
+        if (n > 0) {
+            selected = Arrays.copyOf(selected, Math.max(selected.length, predicates.length));
+
+            for (int k = 0; k < n; k++) {
+                selected[hidden[k]] = true;
+            }
+
+            filterOnly = Arrays.copyOf(hidden, n);
+        }
+    }
+
+    /**
+     * Skips the values of the columns that were only decoded to be tested,
+     * once the row is accepted.
+     */
+    void skipFilterOnly() {
+        if (filterOnly == null) {
+            return;
+        }
+
+        for (int i : filterOnly) {
+            if (i < count) {
+                if (types[i] == OBJECT && objects[i] instanceof SqlSpilledValue value) {
+                    value.abandon();
+                }
+
+                types[i] = SKIPPED;
+            }
+        }
+    }
+
+    /**
+     * Sets the caches string values are deduplicated with.
+     *
+     * @param columnCaches the caches by column name, or null.
+     */
+    void dedup(Map<String, SqlStringCache> columnCaches) {
+        if (columnCaches == null || columnCaches.isEmpty()) {
+            caches = null;
+            return;
+        }
+
+        caches = new SqlStringCache[namedColumns(columnCaches.keySet())];
+
+        for (int i = 0; i < caches.length; i++) {
+            caches[i] = columnCaches.get(columnName(i));
+        }
+    }
+
+    /**
+     * Sets the sink values longer than the threshold are written to.
+     *
+     * @param threshold the maximum length of a value kept in the row.
+     * @param sink the sink, or null to keep all values in the row.
+     */
+    void spill(int threshold, SqlSpillSink sink) {
+        spillThreshold = sink != null ? threshold : Integer.MAX_VALUE;
+        spillSink = sink;
+    }
+
+    /**
+     * Returns the caches by column index, or null if the row has none. The
+     * array isn't modified once set.
+     */
+    SqlStringCache[] caches() {
+        return caches;
+    }
+
+    /**
+     * Returns the cache of a column, or null if it has none.
+     */
+    SqlStringCache cache(int i) {
+        return caches != null && i < caches.length ? caches[i] : null;
+    }
+
+    /**
+     * Tests a value with the predicate of its column.
+     *
+     * @return false if the row is rejected.
+     */
+    boolean test(int i) {
+        return predicates == null || i >= predicates.length || predicates[i] == null || predicates[i].test(this, i);
+    }
+
+    /**
+     * Abandons the spilled values of a row that won't be passed on.
+     */
+    void discardSpills() {
+        for (int i = 0; i < count; i++) {
+            if (types[i] == OBJECT && objects[i] instanceof SqlSpilledValue value) {
+                value.abandon();
+            }
+        }
+    }
+
+    /**
+     * Tests all values of the row.
+     *
+     * @return false if the row is rejected.
+     */
+    boolean test() {
+        for (int i = 0; i < count; i++) {
+            if (!test(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    byte type(int i) {
+        return types[i];
+    }
+
+    void setNull(int i) {
+        types[i] = NULL;
+    }
+
+    void setSkipped(int i) {
+        types[i] = SKIPPED;
+    }
+
+    void setLong(int i, long value) {
+        types[i] = LONG;
+        longs[i] = value;
+    }
+
+    void setDouble(int i, double value) {
+        types[i] = DOUBLE;
+        doubles[i] = value;
+    }
+
+    /**
+     * Makes a slot hold a string and returns its empty builder to append the
+     * string to.
+     */
+    StringBuilder string(int i) {
+        types[i] = STRING;
+
+        StringBuilder sb = strings[i];
+
+        if (sb == null) {
+            sb = strings[i] = new StringBuilder();
+        }
+        else {
+            sb.setLength(0);
+        }
+
+        return sb;
+    }
+
+    void setObject(int i, Object value) {
+        types[i] = OBJECT;
+        objects[i] = value;
+    }
+
+    void setToken(int i, SqlToken token) {
+        types[i] = TOKEN;
+        objects[i] = token;
+    }
+
+    /**
+     * Sets a slot from a value as returned by {@link SqlValue#getValue()}.
+     */
+    void setValue(int i, Object value) {
+        if (value == null) {
+            setNull(i);
+        }
+        else if (value instanceof Long l) {
+            setLong(i, l);
+        }
+        else if (value instanceof Double d) {
+            setDouble(i, d);
+        }
+        else if (value instanceof String s) {
+            string(i).append(s);
+        }
+        else {
+            setObject(i, value);
+        }
+    }
+
+    SqlToken getToken(int i) {
+        return types[i] == TOKEN ? (SqlToken) objects[i] : null;
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public int columnCount() {
+        return count;
+    }
+
+    @Override
+    public String columnName(int i) {
+        if (columnNames != null && i < columnNames.size()) {
+            return columnNames.get(i);
+        }
+
+        while (indexNames.size() <= i) {
+            indexNames.add("#" + indexNames.size());
+        }
+
+        return indexNames.get(i);
+    }
+
+    @Override
+    public boolean isNull(int i) {
+        return types[i] == NULL || types[i] == SKIPPED;
+    }
+
+    /**
+     * Checks whether getLong returns a value exactly rather than truncated.
+     * Strings are exact if they parse at all.
+     */
+    boolean isExactLong(int i) {
+        return switch (types[i]) {
+            case NULL, SKIPPED -> false;
+            case LONG, STRING -> true;
+            case DOUBLE -> isExactLong(doubles[i]);
+            default -> isExactLong(objects[i]);
+        };
+    }
+
+    static boolean isExactLong(Object value) {
+        if (value instanceof BigDecimal d) {
+            try {
+                d.longValueExact();
+                return true;
+            }
+            catch (ArithmeticException ex) {
+                return false;
+            }
+        }
+
+        if (value instanceof BigInteger b) {
+            return b.bitLength() < 64;
+        }
+
+        if (value instanceof Double || value instanceof Float) {
+            return isExactLong(((Number) value).doubleValue());
+        }
+
+        return value != null;
+    }
+
+    private static boolean isExactLong(double value) {
+        return value == Math.rint(value) && value >= -0x1p63 && value < 0x1p63;
+    }
+
+    @Override
+    public long getLong(int i) {
+        return switch (types[i]) {
+            case NULL, SKIPPED -> 0;
+            case LONG -> longs[i];
+            case DOUBLE -> (long) doubles[i];
+            case STRING -> Long.parseLong(strings[i], 0, strings[i].length(), 10);
+            default -> objects[i] instanceof Number n ? n.longValue() : Long.parseLong(objects[i].toString());
+        };
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return switch (types[i]) {
+            case NULL, SKIPPED -> 0;
+            case LONG -> longs[i];
+            case DOUBLE -> doubles[i];
+            case STRING -> Double.parseDouble(strings[i].toString());
+            default -> objects[i] instanceof Number n ? n.doubleValue() : Double.parseDouble(objects[i].toString());
+        };
+    }
+
+    @Override
+    public CharSequence getCharSequence(int i) {
+        switch (types[i]) {
+            case NULL:
+            case SKIPPED:
+                return null;
+            case STRING:
+                return strings[i];
+            case OBJECT:
+            case TOKEN:
+                return SqlUtil.text(objects[i]);
+        }
+
+        // Numbers are formatted into the unused string slot
+        StringBuilder sb = strings[i];
+
+        if (sb == null) {
+            sb = strings[i] = new StringBuilder();
+        }
+
+        sb.setLength(0);
+
+        return types[i] == LONG ? sb.append(longs[i]) : sb.append(doubles[i]);
+    }
+
+    @Override
+    public Object getValue(int i) {
+        return switch (types[i]) {
+            case NULL, SKIPPED -> null;
+            case LONG -> longs[i];
+            case DOUBLE -> doubles[i];
+            case STRING -> cache(i) != null ? caches[i].get(strings[i]) : strings[i].toString();
+            default -> objects[i];
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(tableName).append('(');
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            sb.append(columnName(i)).append('=').append(getValue(i));
+        }
+
+        return sb.append(')').toString();
+    }
+
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Rows of a table stored by column in primitive arrays. For each column,
+ * integers are available as longs and doubles, decimals as doubles, strings as
+ * spans of a char array delimited by offsets, and NULL as bits of a bitmap.
+ * Values of other kinds, e.g. integers too large for a long, are available
+ * through {@link #getValue(int, int)} only.
+ * <p>
+ * A batch is reused after the callback it was passed to returns, so neither
+ * the batch nor its arrays may be kept.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public final class SqlRowBatch {
+
+    private static final class Column {
+
+        final byte[] types;
+
+        final long[] longs;
+
+        final double[] doubles;
+
+        final long[] nulls;
+
+        final int[] offsets;
+
+        char[] chars = new char[256];
+
+        Object[] objects;
+
+        Column(int capacity) {
+            types = new byte[capacity];
+            longs = new long[capacity];
+            doubles = new double[capacity];
+            nulls = new long[(capacity + 63) >>> 6];
+            offsets = new int[capacity + 1];
+        }
+
+        void clear() {
+            Arrays.fill(nulls, 0);
+
+            if (objects != null) {
+                Arrays.fill(objects, null);
+            }
+        }
+
+        void setNull(int r) {
+            types[r] = SqlRow.NULL;
+            longs[r] = 0;
+            doubles[r] = 0;
+            nulls[r >>> 6] |= 1L << r;
+            offsets[r + 1] = offsets[r];
+        }
+
+        void set(int r, SqlRow row, int i) {
+            byte type = row.type(i);
+            int end = offsets[r];
+
+            switch (type) {
+                case SqlRow.NULL, SqlRow.SKIPPED -> {
+                    setNull(r);
+                    return;
+                }
+                case SqlRow.LONG -> {
+                    longs[r] = row.getLong(i);
+                    doubles[r] = longs[r];
+                }
+                case SqlRow.DOUBLE -> {
+                    doubles[r] = row.getDouble(i);
+                    longs[r] = (long) doubles[r];
+                }
+                case SqlRow.STRING -> {
+                    StringBuilder sb = (StringBuilder) row.getCharSequence(i);
+                    int length = sb.length();
+
+                    if (end + length > chars.length) {
+                        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, end + length));
+                    }
+
+                    sb.getChars(0, length, chars, end);
+                    end += length;
+                    longs[r] = 0;
+                    doubles[r] = 0;
+                }
+                default -> {
+                    if (objects == null) {
+                        objects = new Object[types.length];
+                    }
+
+                    objects[r] = row.getValue(i);
+                    longs[r] = 0;
+                    doubles[r] = 0;
+                }
+            }
+
+            types[r] = type;
+            offsets[r + 1] = end;
+        }
+
+    }
+
+    private final int capacity;
+
+    private String tableName;
+
+    private List<String> columnNames;
+
+    private String[] names = new String[0];
+
+    private Column[] columns = new Column[0];
+
+    private int columnCount;
+
+    private int size;
+
+    /**
+     * String caches by column index, or null if the rows have none.
+     */
+    private SqlStringCache[] caches;
+
+    SqlRowBatch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Checks whether a row can be added: the batch is empty or holds rows of
+     * the same table and column list.
+     */
+    boolean accepts(SqlRow row) {
+        if (size == 0) {
+            return true;
+        }
+
+        if (!tableName.equals(row.tableName)) {
+            return false;
+        }
+
+        if (columnNames != row.columnNames) {
+            if (!Objects.equals(columnNames, row.columnNames)) {
+                return false;
+            }
+
+            columnNames = row.columnNames;
+        }
+
+        return true;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    void add(SqlRow row) {
+        if (size == 0) {
+            tableName = row.tableName;
+            columnNames = row.columnNames;
+            caches = row.caches();
+        }
+
+        int count = row.columnCount();
+
+        while (columnCount < count) {
+            addColumn(row.columnName(columnCount));
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            if (i < count) {
+                columns[i].set(size, row, i);
+            }
+            else {
+                columns[i].setNull(size);
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * Adds a column, NULL in the rows added so far.
+     */
+    private void addColumn(String name) {
+        if (columnCount == columns.length) {
+            columns = Arrays.copyOf(columns, Math.max(columnCount * 2, 8));
+            names = Arrays.copyOf(names, columns.length);
+        }
+
+        Column column = columns[columnCount];
+
+        if (column == null) {
+            column = columns[columnCount] = new Column(capacity);
+        }
+
+        for (int r = 0; r < size; r++) {
+            column.setNull(r);
+        }
+
+        names[columnCount++] = name;
+    }
+
+    void clear() {
+        for (int i = 0; i < columnCount; i++) {
+            columns[i].clear();
+        }
+
+        columnCount = 0;
+        size = 0;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of columns, the largest number of values of the rows.
+     * Rows with fewer values are NULL in the remaining columns.
+     *
+     * @return the number of columns.
+     */
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Returns the name of a column, as {@link SqlRowView#columnName(int)}
+     * does.
+     *
+     * @param col the index of the column.
+     * @return the name of the column.
+     */
+    public String columnName(int col) {
+        return names[col];
+    }
+
+    public boolean isNull(int row, int col) {
+        return (columns[col].nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns a value as a long, with the conversions of
+     * {@link SqlRowView#getLong(int)}.
+     */
+    public long getLong(int row, int col) {
+        Column column = columns[col];
+
+        return switch (column.types[row]) {
+            case SqlRow.NULL, SqlRow.LONG, SqlRow.DOUBLE -> column.longs[row];
+            case SqlRow.STRING -> Long.parseLong(CharBuffer.wrap(column.chars, column.offsets[row], column.offsets[row + 1] - column.offsets[row]), 0, column.offsets[row + 1] - column.offsets[row], 10);
+            default -> column.objects[row] instanceof Number n ? n.longValue() : Long.parseLong(column.objects[row].toString());
+        };
+    }
+
+    /**
+     * Returns a value as a double, with the conversions of
+     * {@link SqlRowView#getDouble(int)}.
+     */
+    public double getDouble(int row, int col) {
+        Column column = columns[col];
+
+        return switch (column.types[row]) {
+            case SqlRow.NULL, SqlRow.LONG, SqlRow.DOUBLE -> column.doubles[row];
+            case SqlRow.STRING -> Double.parseDouble(getString(row, col));
+            default -> column.objects[row] instanceof Number n ? n.doubleValue() : Double.parseDouble(column.objects[row].toString());
+        };
+    }
+
+    /**
+     * Returns the text of a value as a view of the chars of the column.
+     *
+     * @return the text of the value, or null for NULL.
+     */
+    public CharSequence getCharSequence(int row, int col) {
+        Column column = columns[col];
+
+        return switch (column.types[row]) {
+            case SqlRow.NULL -> null;
+            case SqlRow.STRING -> CharBuffer.wrap(column.chars, column.offsets[row], column.offsets[row + 1] - column.offsets[row]);
+            default -> SqlUtil.text(getValue(row, col));
+        };
+    }
+
+    public String getString(int row, int col) {
+        if (columns[col].types[row] == SqlRow.STRING) {
+            return string(row, col);
+        }
+
+        CharSequence cs = getCharSequence(row, col);
+
+        return cs == null ? null : cs.toString();
+    }
+
+    /**
+     * Returns a value as an object, as {@link SqlRowView#getValue(int)} does.
+     */
+    public Object getValue(int row, int col) {
+        Column column = columns[col];
+
+        return switch (column.types[row]) {
+            case SqlRow.NULL -> null;
+            case SqlRow.LONG -> column.longs[row];
+            case SqlRow.DOUBLE -> column.doubles[row];
+            case SqlRow.STRING -> string(row, col);
+            default -> column.objects[row];
+        };
+    }
+
+    private String string(int row, int col) {
+        Column column = columns[col];
+        int offset = column.offsets[row];
+        int length = column.offsets[row + 1] - offset;
+
+        if (caches != null && col < caches.length && caches[col] != null) {
+            return caches[col].get(column.chars, offset, length);
+        }
+
+        return new String(column.chars, offset, length);
+    }
+
+    /**
+     * Returns the values of a column as longs: integers as they are, decimals
+     * truncated and 0 for other values. Only the first {@link #size()}
+     * elements are valid.
+     *
+     * @param col the index of the column.
+     * @return the array of values.
+     */
+    public long[] getLongs(int col) {
+        return columns[col].longs;
+    }
+
+    /**
+     * Returns the numeric values of a column as doubles, and 0 for other
+     * values. Only the first {@link #size()} elements are valid.
+     *
+     * @param col the index of the column.
+     * @return the array of values.
+     */
+    public double[] getDoubles(int col) {
+        return columns[col].doubles;
+    }
+
+    /**
+     * Returns the NULL bitmap of a column. Bit {@code row % 64} of element
+     * {@code row / 64} is set if the value of the row is NULL.
+     *
+     * @param col the index of the column.
+     * @return the bitmap.
+     */
+    public long[] getNulls(int col) {
+        return columns[col].nulls;
+    }
+
+    /**
+     * Returns the chars of the string values of a column. The string of a row
+     * spans from {@code offsets[row]} to {@code offsets[row + 1]}, and the
+     * span is empty for other values.
+     *
+     * @param col the index of the column.
+     * @return the chars of the column.
+     * @see #getOffsets(int)
+     */
+    public char[] getChars(int col) {
+        return columns[col].chars;
+    }
+
+    /**
+     * Returns the offsets of the string values of a column in the array
+     * returned by {@link #getChars(int)}. Only the first {@code size() + 1}
+     * elements are valid.
+     *
+     * @param col the index of the column.
+     * @return the offsets.
+     */
+    public int[] getOffsets(int col) {
+        return columns[col].offsets;
+    }
+
+    @Override
+    public String toString() {
+        return tableName + "[" + size + " rows x " + columnCount + " columns]";
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+/**
+ * A row of an INSERT statement. The view is reused for every row and is only
+ * valid for the duration of the callback it is passed to, so values that are
+ * kept must be copied.
+ *
+ * Numbers are exposed as primitives and strings as CharSequences, so reading
+ * a row doesn't allocate.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public interface SqlRowView {
+
+    /**
+     * Returns the name of the table the row is inserted into.
+     *
+     * @return the name of the table.
+     */
+    String getTableName();
+
+    /**
+     * Returns the number of values in the row.
+     *
+     * @return the number of values.
+     */
+    int columnCount();
+
+    /**
+     * Returns the name of a column, from the column list of the statement or
+     * the CREATE TABLE statement of the table, or "#" followed by the index
+     * if the name isn't known.
+     *
+     * @param i the index of the column.
+     * @return the name of the column.
+     */
+    String columnName(int i);
+
+    /**
+     * Checks whether a value is NULL. Values of columns left out by a
+     * projection read as NULL.
+     *
+     * @param i the index of the column.
+     * @return true if the value is NULL.
+     */
+    boolean isNull(int i);
+
+    /**
+     * Returns a value as a long. Decimals are truncated, strings are parsed
+     * and NULL is returned as 0.
+     *
+     * @param i the index of the column.
+     * @return the value.
+     * @throws NumberFormatException if a string value isn't an integer.
+     */
+    long getLong(int i);
+
+    /**
+     * Returns a value as a double. Strings are parsed and NULL is returned as
+     * 0.
+     *
+     * @param i the index of the column.
+     * @return the value.
+     * @throws NumberFormatException if a string value isn't a number.
+     */
+    double getDouble(int i);
+
+    /**
+     * Returns the text of a value. The returned sequence is only valid until
+     * the callback returns.
+     *
+     * @param i the index of the column.
+     * @return the text of the value, or null for NULL.
+     */
+    CharSequence getCharSequence(int i);
+
+    /**
+     * Returns a value as an object: a Long, Double, BigDecimal or String, a
+     * byte[] for binary and hex literals, a {@link SqlToken} for other
+     * unquoted tokens such as keywords, or null for NULL. Strings and binary
+     * values longer than the spill threshold are returned as a
+     * {@link SqlSpilledValue}, which then belongs to the caller: it stays
+     * valid after the callback returns, and the caller has to
+     * {@link SqlSpilledValue#delete() delete} its file once it's done with it.
+     * Unlike the other accessors, this allocates.
+     *
+     * @param i the index of the column.
+     * @return the value.
+     */
+    Object getValue(int i);
+
+}
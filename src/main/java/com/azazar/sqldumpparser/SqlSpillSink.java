@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Receives string and binary values of rows that are too large to be kept in
+ * memory. Such values are written to a destination opened by the sink while
+ * they are parsed, and the row holds a {@link SqlSpilledValue} in their place.
+ *
+ * @author Azazar <spam@azazar.com>
+ * @see SqlInsertParser#spill(int, SqlSpillSink)
+ */
+@FunctionalInterface
+public interface SqlSpillSink {
+
+    /**
+     * Opens the destination of a large value. The parser writes the value to
+     * it and closes it before the row is passed on. If the value can't be
+     * read to its end, or its row is rejected by a predicate, the destination
+     * is closed and its file, if any, is deleted.
+     *
+     * @param row the row, with the values of the preceding columns.
+     * @param column the index of the column.
+     * @param binary true for binary literals, false for strings.
+     * @return the destination.
+     * @throws IOException if the destination can't be opened.
+     */
+    SqlSpilledValue open(SqlRowView row, int column, boolean binary) throws IOException;
+
+    /**
+     * Returns a sink that writes each value to a new temporary file. The
+     * files are left for the consumer of the rows to delete.
+     *
+     * @see SqlSpilledValue#delete()
+     */
+    static SqlSpillSink tempFiles() {
+        return (row, column, binary) -> new SqlSpilledValue(Files.createTempFile("sql-value-", binary ? ".bin" : ".txt"));
+    }
+
+    /**
+     * Returns a sink that writes each value to a new temporary file in the
+     * given directory.
+     *
+     * @param dir the directory.
+     * @see #tempFiles()
+     */
+    static SqlSpillSink tempFiles(Path dir) {
+        return (row, column, binary) -> new SqlSpilledValue(Files.createTempFile(dir, "sql-value-", binary ? ".bin" : ".txt"));
+    }
+
+}
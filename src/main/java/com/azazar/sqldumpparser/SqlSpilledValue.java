@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A value of a row that was written to a file or stream instead of being
+ * kept in memory, because it was longer than the spill threshold. Strings
+ * are written as text, as UTF-8 unless a Writer is given, and binary values
+ * as bytes.
+ *
+ * @author Azazar <spam@azazar.com>
+ * @see SqlSpillSink
+ */
+public class SqlSpilledValue implements SqlValue {
+
+    private final Path path;
+
+    private final OutputStream stream;
+
+    private Writer writer;
+
+    private boolean binary;
+
+    private long length;
+
+    /**
+     * Creates a value written to a file, which is created or truncated.
+     *
+     * @param path the file.
+     * @throws IOException if the file can't be opened.
+     */
+    public SqlSpilledValue(Path path) throws IOException {
+        this.path = path;
+        this.stream = Files.newOutputStream(path);
+    }
+
+    /**
+     * Creates a value written to a stream.
+     *
+     * @param stream the stream, closed once the value is written.
+     */
+    public SqlSpilledValue(OutputStream stream) {
+        this.path = null;
+        this.stream = stream;
+    }
+
+    /**
+     * Creates a value written to a Writer. Only strings can be written to it.
+     *
+     * @param writer the writer, closed once the value is written.
+     */
+    public SqlSpilledValue(Writer writer) {
+        this.path = null;
+        this.stream = null;
+        this.writer = writer;
+    }
+
+    Writer writer() {
+        if (writer == null) {
+            writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        }
+
+        return writer;
+    }
+
+    OutputStream stream() throws IOException {
+        if (stream == null) {
+            throw new IOException("Binary value can't be written to a Writer");
+        }
+
+        return stream;
+    }
+
+    /**
+     * Closes the destination once the whole value is written.
+     *
+     * @param binary whether the value is binary.
+     * @param length the number of chars or bytes written.
+     */
+    void close(boolean binary, long length) throws IOException {
+        this.binary = binary;
+        this.length = length;
+
+        if (writer != null) {
+            writer.close();
+        }
+        else {
+            stream.close();
+        }
+    }
+
+    /**
+     * Pads a binary value written to a file with a leading zero digit, for a
+     * {@code 0x} literal that turned out to have an odd number of digits. The
+     * bytes are shifted right by 4 bits, and the last digit is appended.
+     *
+     * @param nibble the last digit.
+     */
+    void padHexDigit(int nibble) throws IOException {
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(0x10000);
+            long position = 0;
+            int carry = 0;
+            int n;
+
+            while ((n = channel.read(buf.clear(), position)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    int b = buf.get(i) & 0xFF;
+
+                    buf.put(i, (byte) ((carry << 4) | (b >>> 4)));
+                    carry = b & 0x0F;
+                }
+
+                buf.flip();
+
+                while (buf.hasRemaining()) {
+                    position += channel.write(buf, position);
+                }
+            }
+
+            buf.clear().put((byte) ((carry << 4) | nibble)).flip();
+            channel.write(buf, position);
+        }
+
+        length++;
+    }
+
+    /**
+     * Closes the destination of a value that won't be passed on, because
+     * writing it failed or its row was rejected, and deletes its file.
+     * Failures are ignored, since there's nothing left to do with the value.
+     */
+    void abandon() {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            else if (stream != null) {
+                stream.close();
+            }
+        }
+        catch (IOException ex) {
+            // Deleted anyway
+        }
+
+        try {
+            delete();
+        }
+        catch (IOException ex) {
+            // Left behind
+        }
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the length of the value, in chars for strings and in bytes for
+     * binary values.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the file the value was written to.
+     *
+     * @return the file, or null if the value was written to a stream.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Opens the file of a string value for reading.
+     *
+     * @throws IllegalStateException if the value wasn't written to a file.
+     */
+    public Reader openReader() throws IOException {
+        return Files.newBufferedReader(file(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens the file of the value for reading its bytes.
+     *
+     * @throws IllegalStateException if the value wasn't written to a file.
+     */
+    public InputStream openInputStream() throws IOException {
+        return Files.newInputStream(file());
+    }
+
+    /**
+     * Deletes the file of the value, if it was written to one.
+     */
+    public void delete() throws IOException {
+        if (path != null) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private Path file() {
+        if (path == null) {
+            throw new IllegalStateException("Value wasn't written to a file");
+        }
+
+        return path;
+    }
+
+    @Override
+    public SqlSpilledValue getValue() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlSpilledValue{" + (binary ? "binary" : "text") + ", length=" + length + (path != null ? ", path=" + path : "") + '}';
+    }
+
+}
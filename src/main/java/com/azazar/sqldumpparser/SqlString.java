@@ -16,24 +16,70 @@
  */
 package com.azazar.sqldumpparser;
 
+import java.nio.CharBuffer;
 import java.util.Objects;
+import com.azazar.sqldumpparser.util.CharSequenceParseBuffer;
 
 /**
+ * A string literal. Literals lexed by SqlParser keep their raw text, still
+ * escaped, and are only unescaped once their value is requested, since most
+ * values of a dump are never read. The raw text of the literals of a
+ * statement is stored in a single buffer, which a literal kept after its
+ * statement keeps reachable along with the text of all the other literals.
+ * To retain only the value, keep the String returned by getString() instead.
  *
  * @author Azazar <spam@azazar.com>
  */
 public class SqlString implements SqlValue {
 
+    /**
+     * The unescaped value, or null until it's requested.
+     */
     private String string;
 
+    /**
+     * The buffer holding the raw text.
+     */
+    private final CharSequence source;
+
+    private final int offset;
+
+    private final int length;
+
+    private final char quote;
+
+    private final boolean escaped;
+
     public SqlString(String string) {
         this.string = string;
+        this.source = string;
+        this.offset = 0;
+        this.length = string.length();
+        this.quote = '\'';
+        this.escaped = false;
+    }
+
+    /**
+     * Creates a literal from its raw text.
+     *
+     * @param source the buffer holding the raw text.
+     * @param offset the offset of the raw text in the buffer.
+     * @param length the length of the raw text.
+     * @param quote the quote the literal is enclosed in.
+     * @param escaped whether the raw text contains escapes or doubled quotes.
+     */
+    SqlString(CharSequence source, int offset, int length, char quote, boolean escaped) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.quote = quote;
+        this.escaped = escaped;
     }
 
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 53 * hash + Objects.hashCode(this.string);
+        hash = 53 * hash + Objects.hashCode(getString());
         return hash;
     }
 
@@ -49,21 +95,68 @@ public class SqlString implements SqlValue {
             return false;
         }
         final SqlString other = (SqlString) obj;
-        return Objects.equals(this.string, other.string);
+        return Objects.equals(getString(), other.getString());
+    }
+
+    /**
+     * Returns whether the raw text contains backslash escapes or doubled
+     * quotes, so that it differs from the value.
+     */
+    public boolean hasEscapes() {
+        return escaped;
+    }
+
+    /**
+     * Returns the text between the quotes as it appears in the input, without
+     * unescaping it.
+     */
+    public CharSequence getRaw() {
+        return CharBuffer.wrap(source, offset, offset + length);
+    }
+
+    /**
+     * Returns the value without creating a String if the literal has no
+     * escapes.
+     */
+    public CharSequence getCharSequence() {
+        return escaped || string != null ? getString() : getRaw();
     }
 
     public String getString() {
+        if (string == null) {
+            string = escaped ? unescape() : source.subSequence(offset, offset + length).toString();
+        }
+
         return string;
     }
 
     @Override
     public String getValue() {
-        return string;
+        return getString();
+    }
+
+    /**
+     * Unescapes the raw text with the same reader SqlParser reads values
+     * with, followed by the closing quote it was lexed without.
+     */
+    private String unescape() {
+        StringBuilder raw = new StringBuilder(length + 1).append(source, offset, offset + length).append(quote);
+        StringBuilder sb = new StringBuilder(length);
+
+        try {
+            new SqlStringReader.Chars(true).read(new CharSequenceParseBuffer(raw), sb, quote, Integer.MAX_VALUE);
+        }
+        catch (SqlParseException ex) {
+            // The raw text of a lexed literal is well-formed
+            throw new IllegalStateException(ex);
+        }
+
+        return sb.toString();
     }
 
     @Override
     public String toString() {
-        return "'" + string.replace("\"", "\\\"") + "'";
+        return "'" + getString().replace("\"", "\\\"") + "'";
     }
 
 }
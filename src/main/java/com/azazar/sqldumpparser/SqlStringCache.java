@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+/**
+ * A bounded cache of String instances for the values of low-cardinality
+ * columns, such as statuses, country codes and currencies. Values are looked
+ * up by their chars, so a hit returns the cached String without allocating,
+ * and rows kept in memory share a single instance of each value.
+ * <p>
+ * The cache is set associative: a value can only be stored in one of four
+ * slots picked by its hash. When all of them are taken, the least frequently
+ * used value of the four is evicted. Once the use counts of a set add up to a
+ * limit they are halved, so that values that are no longer seen age out,
+ * while a stream of values seen once can't push out frequent ones. Values
+ * longer than the maximum length bypass the cache.
+ * <p>
+ * A cache isn't thread-safe. Rows of a table are decoded and delivered on one
+ * thread at a time, so a cache can be shared by the columns of a table, but
+ * not by different tables if workers are used.
+ *
+ * @author Azazar <spam@azazar.com>
+ * @see SqlInsertParser#dedup(String, String...)
+ */
+public final class SqlStringCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    private static final int WAYS = 4;
+
+    private static final int MAX_COUNT = 0xFFFF;
+
+    /**
+     * The total use count of a set at which its counts are halved.
+     */
+    private static final int AGING_THRESHOLD = 16 * WAYS;
+
+    private final String[] entries;
+
+    private final int[] hashes;
+
+    private final int[] counts;
+
+    private final int setMask;
+
+    private final int maxLength;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public SqlStringCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum number of values, rounded up to a power of
+     * two.
+     * @param maxLength the maximum length of a cached value.
+     */
+    public SqlStringCache(int capacity, int maxLength) {
+        if (capacity <= 0 || maxLength < 0) {
+            throw new IllegalArgumentException("capacity=" + capacity + ", maxLength=" + maxLength);
+        }
+
+        int sets = Integer.highestOneBit(((capacity + WAYS - 1) / WAYS) * 2 - 1);
+
+        entries = new String[sets * WAYS];
+        hashes = new int[sets * WAYS];
+        counts = new int[sets * WAYS];
+        setMask = sets - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the String with the given chars, from the cache if possible.
+     */
+    public String get(CharSequence chars) {
+        int length = chars.length();
+
+        if (length > maxLength) {
+            return chars.toString();
+        }
+
+        int hash = 0;
+
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+
+        int set = set(hash);
+
+        for (int slot = set; slot < set + WAYS; slot++) {
+            String entry = entries[slot];
+
+            if (entry != null && hashes[slot] == hash && entry.contentEquals(chars)) {
+                return hit(slot);
+            }
+        }
+
+        return put(set, hash, chars.toString());
+    }
+
+    /**
+     * Returns the String with the given chars, from the cache if possible.
+     */
+    public String get(char[] chars, int offset, int length) {
+        if (length > maxLength) {
+            return new String(chars, offset, length);
+        }
+
+        int hash = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int set = set(hash);
+
+        for (int slot = set; slot < set + WAYS; slot++) {
+            String entry = entries[slot];
+
+            if (entry != null && hashes[slot] == hash && regionEquals(entry, chars, offset, length)) {
+                return hit(slot);
+            }
+        }
+
+        return put(set, hash, new String(chars, offset, length));
+    }
+
+    private static boolean regionEquals(String s, char[] chars, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int set(int hash) {
+        return ((hash ^ hash >>> 16) & setMask) * WAYS;
+    }
+
+    private String hit(int slot) {
+        hits++;
+
+        if (counts[slot] < MAX_COUNT) {
+            counts[slot]++;
+        }
+
+        return entries[slot];
+    }
+
+    private String put(int set, int hash, String value) {
+        misses++;
+
+        int victim = set;
+        int total = 0;
+
+        for (int slot = set; slot < set + WAYS; slot++) {
+            if (entries[slot] == null) {
+                victim = slot;
+                break;
+            }
+
+            if (counts[slot] < counts[victim]) {
+                victim = slot;
+            }
+
+            total += counts[slot];
+        }
+
+        if (entries[victim] != null) {
+            evictions++;
+
+            if (total >= AGING_THRESHOLD) {
+                for (int slot = set; slot < set + WAYS; slot++) {
+                    counts[slot] >>= 1;
+                }
+            }
+        }
+
+        entries[victim] = value;
+        hashes[victim] = hash;
+        counts[victim] = 1;
+
+        return value;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the share of lookups that returned a cached String, not
+     * counting values that bypassed the cache.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns the number of cached values.
+     */
+    public int size() {
+        int size = 0;
+
+        for (String entry : entries) {
+            if (entry != null) {
+                size++;
+            }
+        }
+
+        return size;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlStringCache{size=" + size() + '/' + getCapacity() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import com.azazar.sqldumpparser.util.ByteParseBuffer;
+import com.azazar.sqldumpparser.util.ParseBuffer;
+
+/**
+ * Reads the text of quoted string literals with MySQL semantics. Runs of
+ * characters between quotes and backslash escapes are located and appended
+ * in bulk, and escapes and doubled quotes are either decoded or kept as they
+ * are. Subclasses decide where the text goes.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+abstract class SqlStringReader {
+
+    /**
+     * Whether escapes and doubled quotes are decoded.
+     */
+    private final boolean decode;
+
+    SqlStringReader(boolean decode) {
+        this.decode = decode;
+    }
+
+    /**
+     * Appends the first count chars of the buffer as they are.
+     */
+    abstract void append(ParseBuffer buf, int count);
+
+    /**
+     * Appends a char an escape or a doubled quote stands for, or one of the
+     * chars kept of them.
+     */
+    abstract void append(char ch);
+
+    /**
+     * Returns the number of chars or bytes appended so far.
+     */
+    abstract int length();
+
+    /**
+     * Reads the rest of a quoted string literal after the opening quote.
+     * Stops early once at least limit chars or bytes are appended.
+     *
+     * @return true if the closing quote was reached, false if the limit was.
+     */
+    final boolean read(ParseBuffer buf, char quote, int limit) throws SqlParseException {
+        boolean raw = buf instanceof ByteParseBuffer;
+
+        while (!buf.isEmpty()) {
+            if (length() >= limit) {
+                return false;
+            }
+
+            int max = Math.min(buf.length(), SqlParser.MAX_STRING_RUN);
+            int end = buf.indexOf(quote, '\\', 0, max);
+
+            if (end == -1) {
+                end = SqlParser.runEnd(buf, max);
+
+                // Don't split characters between runs
+                while (end > 1 && buf.has(end) && (raw ? (buf.charAt(end) & 0xC0) == 0x80 : Character.isHighSurrogate(buf.charAt(end - 1)))) {
+                    end--;
+                }
+
+                append(buf, end);
+                buf.advance(end);
+                continue;
+            }
+
+            if (end > 0) {
+                append(buf, end);
+                buf.advance(end);
+            }
+
+            if (buf.getAdvance() == quote) {
+                // A doubled quote stands for the quote itself
+                if (!buf.isEmpty() && buf.charAt(0) == quote) {
+                    append(quote);
+
+                    if (!decode) {
+                        append(quote);
+                    }
+
+                    buf.advance();
+                    continue;
+                }
+
+                return true;
+            }
+
+            if (buf.isEmpty()) {
+                break;
+            }
+
+            char escaped = buf.charAt(0);
+            int ch = decode ? unescape(escaped) : -1;
+
+            if (ch == -1) {
+                append('\\');
+            }
+            else if (ch != escaped) {
+                append((char) ch);
+                buf.advance();
+                continue;
+            }
+
+            int n = characterLength(buf, raw);
+
+            append(buf, n);
+            buf.advance(n);
+        }
+
+        throw new SqlParseException("No closing delimiter for string: " + quote, buf);
+    }
+
+    /**
+     * Returns the char a backslash escape stands for, which is the escaped
+     * char itself unless it's one of the special ones, or -1 for {@code \%}
+     * and {@code \_}, which are kept escaped, as they are only meaningful in
+     * LIKE patterns.
+     */
+    private static int unescape(char ch) {
+        return switch (ch) {
+            case '0' -> '\0';
+            case 'b' -> '\b';
+            case 't' -> '\t';
+            case 'r' -> '\r';
+            case 'n' -> '\n';
+            case 'Z' -> '\032';
+            case '%', '_' -> -1;
+            default -> ch;
+        };
+    }
+
+    /**
+     * Returns the number of chars of the character at the start of the
+     * buffer, which byte buffers expose as the bytes of its UTF-8 sequence,
+     * so that it's appended as a whole.
+     */
+    private static int characterLength(ParseBuffer buf, boolean raw) {
+        if (!raw) {
+            return Character.isHighSurrogate(buf.charAt(0)) && buf.has(1) && Character.isLowSurrogate(buf.charAt(1)) ? 2 : 1;
+        }
+
+        int end = 1;
+
+        if (buf.charAt(0) >= 0x80) {
+            while (buf.has(end) && (buf.charAt(end) & 0xC0) == 0x80) {
+                end++;
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Reads literals into a StringBuilder, which byte buffers decode their
+     * UTF-8 into.
+     */
+    static final class Chars extends SqlStringReader {
+
+        private StringBuilder target;
+
+        private boolean escaped;
+
+        Chars(boolean decode) {
+            super(decode);
+        }
+
+        /**
+         * Reads the rest of a quoted string literal after the opening quote
+         * into a StringBuilder.
+         *
+         * @return true if the closing quote was reached, false if the limit
+         * was.
+         * @see #read(ParseBuffer, char, int)
+         */
+        boolean read(ParseBuffer buf, StringBuilder target, char quote, int limit) throws SqlParseException {
+            this.target = target;
+            escaped = false;
+
+            try {
+                return read(buf, quote, limit);
+            }
+            finally {
+                this.target = null;
+            }
+        }
+
+        /**
+         * Returns whether the last literal read contains escapes or doubled
+         * quotes.
+         */
+        boolean isEscaped() {
+            return escaped;
+        }
+
+        @Override
+        void append(ParseBuffer buf, int count) {
+            buf.appendTo(target, 0, count);
+        }
+
+        @Override
+        void append(char ch) {
+            target.append(ch);
+            escaped = true;
+        }
+
+        @Override
+        int length() {
+            return target.length();
+        }
+
+    }
+
+}
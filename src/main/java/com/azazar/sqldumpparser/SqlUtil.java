@@ -16,6 +16,8 @@
  */
 package com.azazar.sqldumpparser;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -32,6 +34,84 @@ public class SqlUtil {
     static final char[] WHITESPACE_CHARS = " \t\r\n".toCharArray();
     static final char[] KEYWORD_CHARS = (LATIN_CHARS + LATIN_CHARS_LC + NUMERIC_CHARS_S + "_").toCharArray();
     static final char[] NUMERIC_CHARS = NUMERIC_CHARS_S.toCharArray();
+
+    // Character classes driving the lexer
+    static final byte CC_OTHER = 0;
+    static final byte CC_WHITESPACE = 1;
+    static final byte CC_LETTER = 2;
+    static final byte CC_DIGIT = 3;
+    static final byte CC_MINUS = 4;
+    static final byte CC_SLASH = 5;
+    static final byte CC_QUOTE = 6;
+    static final byte CC_BACKTICK = 7;
+    static final byte CC_LEFT_PARENTHESES = 8;
+    static final byte CC_COMMA = 9;
+    static final byte CC_EQUAL = 10;
+    static final byte CC_DOT = 11;
+    static final byte CC_UNDERSCORE = 12;
+
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    static {
+        for (char ch : WHITESPACE_CHARS) {
+            CHAR_CLASSES[ch] = CC_WHITESPACE;
+        }
+
+        for (char ch : (LATIN_CHARS + LATIN_CHARS_LC).toCharArray()) {
+            CHAR_CLASSES[ch] = CC_LETTER;
+        }
+
+        for (char ch : NUMERIC_CHARS) {
+            CHAR_CLASSES[ch] = CC_DIGIT;
+        }
+
+        CHAR_CLASSES['-'] = CC_MINUS;
+        CHAR_CLASSES['/'] = CC_SLASH;
+        CHAR_CLASSES['\''] = CC_QUOTE;
+        CHAR_CLASSES['"'] = CC_QUOTE;
+        CHAR_CLASSES['`'] = CC_BACKTICK;
+        CHAR_CLASSES['('] = CC_LEFT_PARENTHESES;
+        CHAR_CLASSES[','] = CC_COMMA;
+        CHAR_CLASSES['='] = CC_EQUAL;
+        CHAR_CLASSES['.'] = CC_DOT;
+        CHAR_CLASSES['_'] = CC_UNDERSCORE;
+    }
+
+    /**
+     * The values of hex digits by char, -1 for other chars.
+     */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    /**
+     * Returns the value of a hex digit, or -1 if the char isn't one.
+     */
+    static int hexValue(char ch) {
+        return ch < HEX_VALUES.length ? HEX_VALUES[ch] : -1;
+    }
+
+    /**
+     * Returns the text of a value, decoding binary values as UTF-8.
+     */
+    static String text(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    static byte charClass(char ch) {
+        return ch < CHAR_CLASSES.length ? CHAR_CLASSES[ch] : CC_OTHER;
+    }
     
     public static boolean isWhitespace(char ch) {
         return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n';
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+/**
+ * A condition on a single value of a row, evaluated as soon as the value is
+ * lexed. Like in SQL, the conditions created by the factory methods don't
+ * match NULL.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+@FunctionalInterface
+public interface SqlValuePredicate {
+
+    /**
+     * Tests a value of a row. Only the values up to and including the tested
+     * one are available.
+     *
+     * @param row the row being lexed.
+     * @param i the index of the value.
+     * @return true if the row is to be kept.
+     */
+    boolean test(SqlRowView row, int i);
+
+    default SqlValuePredicate and(SqlValuePredicate other) {
+        return (row, i) -> test(row, i) && other.test(row, i);
+    }
+
+    default SqlValuePredicate negate() {
+        return (row, i) -> !test(row, i);
+    }
+
+    static SqlValuePredicate isNull() {
+        return SqlRowView::isNull;
+    }
+
+    /**
+     * Matches integers equal to the given one. Decimals only match if they
+     * have no fractional part, and strings if they are integers.
+     */
+    static SqlValuePredicate equalTo(long value) {
+        return in(value);
+    }
+
+    static SqlValuePredicate equalTo(CharSequence value) {
+        return in(value);
+    }
+
+    /**
+     * Matches integers equal to one of the given ones.
+     *
+     * @see #equalTo(long)
+     */
+    static SqlValuePredicate in(long... values) {
+        long[] copy = values.clone();
+
+        return (row, i) -> {
+            if (!isExactLong(row, i)) {
+                return false;
+            }
+
+            try {
+                long value = row.getLong(i);
+
+                for (long v : copy) {
+                    if (v == value) {
+                        return true;
+                    }
+                }
+            }
+            catch (NumberFormatException ex) {
+                // Not an integer
+            }
+
+            return false;
+        };
+    }
+
+    static SqlValuePredicate in(CharSequence... values) {
+        CharSequence[] copy = values.clone();
+
+        return (row, i) -> {
+            CharSequence value = row.getCharSequence(i);
+
+            if (value == null) {
+                return false;
+            }
+
+            for (CharSequence v : copy) {
+                if (CharSequence.compare(v, value) == 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        };
+    }
+
+    /**
+     * Matches numbers greater than or equal to the given one.
+     */
+    static SqlValuePredicate atLeast(double value) {
+        return between(value, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Matches numbers less than or equal to the given one.
+     */
+    static SqlValuePredicate atMost(double value) {
+        return between(Double.NEGATIVE_INFINITY, value);
+    }
+
+    /**
+     * Matches numbers within the given range, inclusive.
+     */
+    static SqlValuePredicate between(double min, double max) {
+        return (row, i) -> {
+            if (row.isNull(i)) {
+                return false;
+            }
+
+            try {
+                double value = row.getDouble(i);
+
+                return value >= min && value <= max;
+            }
+            catch (NumberFormatException ex) {
+                // Not a number
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Matches text greater than or equal to the given one in char order,
+     * e.g. dates in ISO 8601 format.
+     */
+    static SqlValuePredicate atLeast(CharSequence value) {
+        return (row, i) -> !row.isNull(i) && CharSequence.compare(row.getCharSequence(i), value) >= 0;
+    }
+
+    /**
+     * Matches text less than or equal to the given one in char order.
+     */
+    static SqlValuePredicate atMost(CharSequence value) {
+        return (row, i) -> !row.isNull(i) && CharSequence.compare(row.getCharSequence(i), value) <= 0;
+    }
+
+    private static boolean isExactLong(SqlRowView row, int i) {
+        return row instanceof SqlRow r ? r.isExactLong(i) : SqlRow.isExactLong(row.getValue(i));
+    }
+
+}
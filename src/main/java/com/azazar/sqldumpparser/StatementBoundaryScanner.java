@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Finds the first statement boundary in a byte range of a file for every
+ * lexical state the range may start in. Whether a semicolon ends a statement
+ * depends on whether it's inside a string, identifier or comment, which isn't
+ * known for a range in the middle of a file until the preceding ranges are
+ * scanned. Scanning the range from all states at once lets ranges be scanned
+ * concurrently, with the actual states resolved in order afterwards.
+ * <p>
+ * The runs from different states are merged as soon as they reach the same
+ * state, which for real dumps happens at the first escape or comment, so the
+ * cost is close to a single scan.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class StatementBoundaryScanner {
+
+    static final byte OUT = 0;
+    static final byte OUT_DASH = 1;
+    static final byte OUT_SLASH = 2;
+    static final byte SINGLE_QUOTE = 3;
+    static final byte SINGLE_QUOTE_ESCAPE = 4;
+    static final byte DOUBLE_QUOTE = 5;
+    static final byte DOUBLE_QUOTE_ESCAPE = 6;
+    static final byte BACKTICK = 7;
+    static final byte LINE_COMMENT = 8;
+    static final byte BLOCK_COMMENT = 9;
+    static final byte BLOCK_COMMENT_STAR = 10;
+
+    static final int STATES = 11;
+
+    private static final int BLOCK_SIZE = 0x10000;
+
+    /**
+     * The next state by state and byte.
+     */
+    private static final byte[][] NEXT = new byte[STATES][256];
+
+    static {
+        for (byte state : new byte[] { OUT, OUT_DASH, OUT_SLASH }) {
+            Arrays.fill(NEXT[state], OUT);
+            NEXT[state]['\''] = SINGLE_QUOTE;
+            NEXT[state]['"'] = DOUBLE_QUOTE;
+            NEXT[state]['`'] = BACKTICK;
+            NEXT[state]['-'] = OUT_DASH;
+            NEXT[state]['/'] = OUT_SLASH;
+        }
+
+        NEXT[OUT_DASH]['-'] = LINE_COMMENT;
+        NEXT[OUT_SLASH]['*'] = BLOCK_COMMENT;
+
+        Arrays.fill(NEXT[SINGLE_QUOTE], SINGLE_QUOTE);
+        NEXT[SINGLE_QUOTE]['\''] = OUT;
+        NEXT[SINGLE_QUOTE]['\\'] = SINGLE_QUOTE_ESCAPE;
+        Arrays.fill(NEXT[SINGLE_QUOTE_ESCAPE], SINGLE_QUOTE);
+
+        Arrays.fill(NEXT[DOUBLE_QUOTE], DOUBLE_QUOTE);
+        NEXT[DOUBLE_QUOTE]['"'] = OUT;
+        NEXT[DOUBLE_QUOTE]['\\'] = DOUBLE_QUOTE_ESCAPE;
+        Arrays.fill(NEXT[DOUBLE_QUOTE_ESCAPE], DOUBLE_QUOTE);
+
+        Arrays.fill(NEXT[BACKTICK], BACKTICK);
+        NEXT[BACKTICK]['`'] = OUT;
+
+        Arrays.fill(NEXT[LINE_COMMENT], LINE_COMMENT);
+        NEXT[LINE_COMMENT]['\n'] = OUT;
+
+        Arrays.fill(NEXT[BLOCK_COMMENT], BLOCK_COMMENT);
+        NEXT[BLOCK_COMMENT]['*'] = BLOCK_COMMENT_STAR;
+        Arrays.fill(NEXT[BLOCK_COMMENT_STAR], BLOCK_COMMENT);
+        NEXT[BLOCK_COMMENT_STAR]['*'] = BLOCK_COMMENT_STAR;
+        NEXT[BLOCK_COMMENT_STAR]['/'] = OUT;
+    }
+
+    /**
+     * The state at the end of the range by the state at its start.
+     */
+    private final byte[] endStates = new byte[STATES];
+
+    /**
+     * The offset after the first terminating semicolon in the range by the
+     * state at its start, or -1 if there is none.
+     */
+    private final long[] boundaries = new long[STATES];
+
+    private StatementBoundaryScanner() {
+        Arrays.fill(boundaries, -1);
+    }
+
+    /**
+     * Returns the state after a char. All chars outside of ASCII are ordinary
+     * in every state.
+     */
+    static byte next(byte state, char c) {
+        return NEXT[state][c < 0x80 ? c : 0x80];
+    }
+
+    /**
+     * Returns whether a char in the given state ends a statement.
+     */
+    static boolean terminates(byte state, char c) {
+        return c == ';' && state <= OUT_SLASH;
+    }
+
+    byte endState(byte startState) {
+        return endStates[startState];
+    }
+
+    long boundary(byte startState) {
+        return boundaries[startState];
+    }
+
+    /**
+     * Scans a range of a file from all states.
+     *
+     * @param channel the file.
+     * @param start the offset of the range.
+     * @param end the offset after the range.
+     */
+    static StatementBoundaryScanner scan(FileChannel channel, long start, long end) throws IOException {
+        StatementBoundaryScanner result = new StatementBoundaryScanner();
+
+        // The current state of each run, and the run each start state is in
+        byte[] states = new byte[STATES];
+        int[] runs = new int[STATES];
+        int count = STATES;
+
+        for (int i = 0; i < STATES; i++) {
+            states[i] = (byte) i;
+            runs[i] = i;
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(BLOCK_SIZE);
+        byte[] block = bb.array();
+        long pos = start;
+
+        while (pos < end) {
+            bb.clear().limit((int) Math.min(BLOCK_SIZE, end - pos));
+
+            while (bb.hasRemaining() && channel.read(bb, pos + bb.position()) != -1) {
+            }
+
+            int n = bb.position();
+
+            if (n == 0) {
+                break;
+            }
+
+            for (int r = 0; r < count; r++) {
+                byte state = states[r];
+                int i = 0;
+
+                if (result.needsBoundary(runs, r)) {
+                    for (; i < n; i++) {
+                        byte b = block[i];
+
+                        if (b == ';' && state <= OUT_SLASH) {
+                            result.setBoundary(runs, r, pos + i + 1);
+                            break;
+                        }
+
+                        state = NEXT[state][b & 0xFF];
+                    }
+                }
+
+                for (; i < n; i++) {
+                    state = NEXT[state][block[i] & 0xFF];
+                }
+
+                states[r] = state;
+            }
+
+            count = merge(states, runs, count);
+            pos += n;
+        }
+
+        for (int i = 0; i < STATES; i++) {
+            result.endStates[i] = states[runs[i]];
+        }
+
+        return result;
+    }
+
+    private boolean needsBoundary(int[] runs, int run) {
+        for (int i = 0; i < STATES; i++) {
+            if (runs[i] == run && boundaries[i] < 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void setBoundary(int[] runs, int run, long boundary) {
+        for (int i = 0; i < STATES; i++) {
+            if (runs[i] == run && boundaries[i] < 0) {
+                boundaries[i] = boundary;
+            }
+        }
+    }
+
+    /**
+     * Merges runs that reached the same state, since they continue the same
+     * way.
+     *
+     * @return the new number of runs.
+     */
+    private static int merge(byte[] states, int[] runs, int count) {
+        for (int r = count - 1; r > 0; r--) {
+            for (int q = 0; q < r; q++) {
+                if (states[q] == states[r]) {
+                    count--;
+
+                    for (int i = 0; i < STATES; i++) {
+                        if (runs[i] == r) {
+                            runs[i] = q;
+                        }
+                        else if (runs[i] == count) {
+                            runs[i] = r;
+                        }
+                    }
+
+                    states[r] = states[count];
+                    break;
+                }
+            }
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An InputStream whose data is produced on a background thread and passed to
+ * the reader in chunks through a bounded queue. Closing the stream stops the
+ * producer at its next chunk and waits for it, without interrupting it, since
+ * interrupting a read from a channel closes the channel.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+abstract class BackgroundInputStream extends InputStream {
+
+    static final ThreadFactory DAEMON_THREADS = r -> {
+        Thread t = new Thread(r, "sql-decompress");
+        t.setDaemon(true);
+        return t;
+    };
+
+    /**
+     * Marks the end of the data in the queue.
+     */
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Chunks of data, END or an IOException.
+     */
+    private final BlockingQueue<Object> queue;
+
+    private Thread thread;
+
+    private volatile boolean closed;
+
+    private byte[] current = END;
+
+    private int pos;
+
+    private boolean eof;
+
+    private IOException error;
+
+    /**
+     * @param depth The number of chunks produced ahead of the reader.
+     */
+    BackgroundInputStream(int depth) {
+        this.queue = new ArrayBlockingQueue<>(depth);
+    }
+
+    /**
+     * Starts the producing thread.
+     */
+    void start(ThreadFactory threadFactory) {
+        thread = threadFactory.newThread(this::run);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            try {
+                produce();
+
+                if (!closed) {
+                    queue.put(END);
+                }
+            } catch (IOException | RuntimeException ex) {
+                if (!closed) {
+                    queue.put(ex instanceof IOException ? ex : new IOException(ex));
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        }
+    }
+
+    /**
+     * Produces the data by calling {@link #emit(byte[])} on the background
+     * thread.
+     */
+    protected abstract void produce() throws IOException, InterruptedException;
+
+    /**
+     * Passes a chunk of data to the reader. The array must not be modified
+     * afterwards.
+     */
+    protected void emit(byte[] chunk) throws InterruptedException {
+        if (closed) {
+            throw new InterruptedException();
+        }
+
+        if (chunk.length > 0) {
+            queue.put(chunk);
+        }
+    }
+
+    /**
+     * Passes a copy of a chunk of data to the reader.
+     */
+    protected void emit(byte[] b, int off, int len) throws InterruptedException {
+        emit(Arrays.copyOfRange(b, off, off + len));
+    }
+
+    protected boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Releases the resources data is produced from. Called once when the
+     * stream is closed, after the producer has stopped.
+     */
+    protected void closeSource() throws IOException {
+    }
+
+    private boolean next() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        if (eof) {
+            return false;
+        }
+
+        Object item;
+
+        try {
+            item = queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        if (item instanceof IOException ex) {
+            error = ex;
+            throw ex;
+        }
+
+        if (item == END) {
+            eof = true;
+            return false;
+        }
+
+        current = (byte[]) item;
+        pos = 0;
+
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == current.length && !next()) {
+            return -1;
+        }
+
+        return current[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (pos == current.length && !next()) {
+            return -1;
+        }
+
+        int n = Math.min(len, current.length - pos);
+
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        // Makes room for a chunk the producer may be waiting to put, after
+        // which it sees that the stream is closed
+        queue.clear();
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        closeSource();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The gzip format. Data is decompressed on a background thread. Files made
+ * of several gzip members, as written by bgzip or by concatenating gzip
+ * files, have their members decompressed in parallel.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class GzipCodec implements InputCodec {
+
+    /**
+     * The size of decompressed chunks passed to the reader.
+     */
+    static final int CHUNK_SIZE = 0x10000;
+
+    /**
+     * The number of chunks decompressed ahead of the reader.
+     */
+    static final int QUEUE_DEPTH = 8;
+
+    private final int parallelism;
+
+    /**
+     * Creates a codec decompressing files with one thread per processor.
+     */
+    public GzipCodec() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param parallelism The number of threads decompressing members of a
+     * file ahead of the current one, or 0 to decompress files sequentially.
+     */
+    public GzipCodec(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("parallelism=" + parallelism);
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    @Override
+    public boolean matches(byte[] header, int length) {
+        return length >= 3 && header[0] == (byte) 0x1F && header[1] == (byte) 0x8B && header[2] == 8;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+        BackgroundInputStream result = new BackgroundInputStream(QUEUE_DEPTH) {
+            @Override
+            protected void produce() throws IOException, InterruptedException {
+                try (GZIPInputStream gz = new GZIPInputStream(in, CHUNK_SIZE)) {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    int n;
+
+                    while ((n = gz.readNBytes(chunk, 0, CHUNK_SIZE)) > 0) {
+                        emit(chunk, 0, n);
+                    }
+                }
+            }
+
+            @Override
+            protected void closeSource() throws IOException {
+                in.close();
+            }
+        };
+
+        result.start(BackgroundInputStream.DAEMON_THREADS);
+
+        return result;
+    }
+
+    @Override
+    public InputStream decode(Path path) throws IOException {
+        if (parallelism == 0) {
+            return InputCodec.super.decode(path);
+        }
+
+        ParallelGzipInputStream result = new ParallelGzipInputStream(path, parallelism);
+
+        result.start(BackgroundInputStream.DAEMON_THREADS);
+
+        return result;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A compressed input format. Implementations are found with
+ * {@link java.util.ServiceLoader}, in addition to the built-in
+ * {@link GzipCodec}, and are used by {@link InputCodecs} to decode input
+ * detected by its leading bytes.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public interface InputCodec {
+
+    /**
+     * Returns the name of the format.
+     *
+     * @return The name of the format, such as "gzip".
+     */
+    String getName();
+
+    /**
+     * Checks whether the input starts with the signature of the format.
+     *
+     * @param header The leading bytes of the input.
+     * @param length The number of bytes in the header, at most
+     * {@link InputCodecs#HEADER_SIZE}, fewer for short inputs.
+     * @return true if the input is in this format.
+     */
+    boolean matches(byte[] header, int length);
+
+    /**
+     * Returns a stream of decoded data. Closing it closes the given stream.
+     *
+     * @param in The encoded data.
+     * @return The decoded data.
+     * @throws IOException If the data can't be decoded.
+     */
+    InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * Returns a stream of data decoded from a file. Implementations may
+     * override this to read the file in parallel.
+     *
+     * @param path The encoded file.
+     * @return The decoded data.
+     * @throws IOException If the file can't be read.
+     */
+    default InputStream decode(Path path) throws IOException {
+        return decode(Files.newInputStream(path));
+    }
+
+}
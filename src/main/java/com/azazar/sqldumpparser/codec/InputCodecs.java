@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Detects compressed input by its leading bytes and decodes it with the
+ * matching {@link InputCodec}.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public final class InputCodecs {
+
+    /**
+     * The number of leading bytes passed to {@link InputCodec#matches}.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    private static final List<InputCodec> CODECS;
+
+    static {
+        List<InputCodec> codecs = new ArrayList<>();
+
+        codecs.add(new GzipCodec());
+
+        for (InputCodec codec : ServiceLoader.load(InputCodec.class)) {
+            codecs.add(codec);
+        }
+
+        CODECS = Collections.unmodifiableList(codecs);
+    }
+
+    private InputCodecs() {
+    }
+
+    /**
+     * Returns the built-in codecs followed by the ones found with
+     * ServiceLoader.
+     *
+     * @return The available codecs.
+     */
+    public static List<InputCodec> getCodecs() {
+        return CODECS;
+    }
+
+    /**
+     * Finds the codec of an input by its leading bytes.
+     *
+     * @param header The leading bytes of the input.
+     * @param length The number of bytes in the header.
+     * @return The matching codec, or null for uncompressed input.
+     */
+    public static InputCodec detect(byte[] header, int length) {
+        for (InputCodec codec : CODECS) {
+            if (codec.matches(header, length)) {
+                return codec;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds the codec of a file by its leading bytes.
+     *
+     * @param path The file to check.
+     * @return The matching codec, or null for an uncompressed file.
+     * @throws IOException If the file can't be read.
+     */
+    public static InputCodec detect(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] header = new byte[HEADER_SIZE];
+
+            return detect(header, in.readNBytes(header, 0, HEADER_SIZE));
+        }
+    }
+
+    /**
+     * Decodes a stream if it is compressed in a known format.
+     *
+     * @param in The input.
+     * @return The decoded input, or the input itself if it isn't compressed.
+     * @throws IOException If the input can't be read.
+     */
+    public static InputStream decode(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+
+        byte[] header = new byte[HEADER_SIZE];
+
+        in.mark(HEADER_SIZE);
+
+        int length = in.readNBytes(header, 0, HEADER_SIZE);
+
+        in.reset();
+
+        InputCodec codec = detect(header, length);
+
+        return codec == null ? in : codec.decode(in);
+    }
+
+}
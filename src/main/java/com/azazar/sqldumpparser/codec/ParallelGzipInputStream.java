@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file made of several members, decompressing the members
+ * following the current one in parallel.
+ *
+ * Member boundaries are only known after the previous member is decompressed,
+ * so the file is scanned for byte sequences that look like member headers.
+ * Worker threads speculatively decompress from these candidates into memory,
+ * while the producer thread streams the current member itself. When the
+ * current member ends at a candidate whose speculative result is complete and
+ * passes the CRC check, that result is used. Candidates inside the current
+ * member turn out to be false and their results are dropped. Members
+ * decompressing to more than {@link #maxSpeculativeOutput} bytes are
+ * streamed by the producer thread instead.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class ParallelGzipInputStream extends BackgroundInputStream {
+
+    /**
+     * The default maximum number of bytes a speculatively decompressed member
+     * can have.
+     */
+    static final int MAX_SPECULATIVE_OUTPUT = 0x800000;
+
+    /**
+     * How far ahead of the current member to look for candidates.
+     */
+    private static final long SCAN_AHEAD = 0x4000000;
+
+    private static final int SCAN_BLOCK = 0x100000;
+
+    /**
+     * Returned by {@link #inflate} when there is no member header.
+     */
+    private static final long NO_MEMBER = -1;
+
+    /**
+     * Returned by {@link #inflate} when the sink refused more output.
+     */
+    private static final long TOO_LARGE = -2;
+
+    private interface Sink {
+
+        boolean accept(byte[] b, int len) throws InterruptedException;
+
+    }
+
+    /**
+     * A speculatively decompressed member.
+     */
+    private static final class Member {
+
+        final long end;
+
+        final List<byte[]> chunks;
+
+        Member(long end, List<byte[]> chunks) {
+            this.end = end;
+            this.chunks = chunks;
+        }
+
+    }
+
+    /**
+     * Reads a file sequentially from an offset with positional reads, so that
+     * several readers can share the channel.
+     */
+    private static final class Input {
+
+        private final FileChannel channel;
+
+        private final byte[] buf = new byte[GzipCodec.CHUNK_SIZE];
+
+        /**
+         * The file offset after the buffered data.
+         */
+        private long next;
+
+        private int pos;
+
+        private int limit;
+
+        Input(FileChannel channel, long offset) {
+            this.channel = channel;
+            this.next = offset;
+        }
+
+        boolean fill() throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+
+            while (bb.hasRemaining()) {
+                int n = channel.read(bb, next + bb.position());
+
+                if (n == -1) {
+                    break;
+                }
+            }
+
+            pos = 0;
+            limit = bb.position();
+            next += limit;
+
+            return limit > 0;
+        }
+
+        int read() throws IOException {
+            if (pos == limit && !fill()) {
+                throw new EOFException("Unexpected end of gzip data");
+            }
+
+            return buf[pos++] & 0xFF;
+        }
+
+        int readShort() throws IOException {
+            return read() | (read() << 8);
+        }
+
+        int readInt() throws IOException {
+            return readShort() | (readShort() << 16);
+        }
+
+        long offset() {
+            return next - limit + pos;
+        }
+
+    }
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int parallelism;
+
+    /**
+     * The maximum number of bytes a speculatively decompressed member can
+     * have.
+     */
+    private final int maxSpeculativeOutput;
+
+    private final ExecutorService executor;
+
+    /**
+     * Speculative results by member start offset.
+     */
+    private final TreeMap<Long, Future<Member>> speculative = new TreeMap<>();
+
+    /**
+     * Candidate member offsets found by the scan and not submitted yet.
+     */
+    private final ArrayDeque<Long> candidates = new ArrayDeque<>();
+
+    /**
+     * The offset up to which the file has been scanned for candidates.
+     */
+    private long scanned;
+
+    /**
+     * The start of the member being decompressed by the producer. Workers
+     * stop on candidates before it, since interrupting them would close the
+     * shared channel. Set to Long.MAX_VALUE to stop all workers.
+     */
+    private volatile long current;
+
+    ParallelGzipInputStream(Path path, int parallelism) throws IOException {
+        this(path, parallelism, MAX_SPECULATIVE_OUTPUT);
+    }
+
+    /**
+     * @param maxSpeculativeOutput the maximum number of bytes a speculatively
+     * decompressed member can have.
+     */
+    ParallelGzipInputStream(Path path, int parallelism, int maxSpeculativeOutput) throws IOException {
+        super(GzipCodec.QUEUE_DEPTH);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.parallelism = parallelism;
+        this.maxSpeculativeOutput = maxSpeculativeOutput;
+        this.executor = Executors.newFixedThreadPool(parallelism, DAEMON_THREADS);
+    }
+
+    @Override
+    protected void produce() throws IOException, InterruptedException {
+        try {
+            long pos = 0;
+
+            while (pos < size) {
+                Member member = null;
+                Future<Member> future = speculative.remove(pos);
+
+                if (future != null) {
+                    try {
+                        member = future.get();
+                    } catch (ExecutionException ex) {
+                        // Streamed below
+                    }
+                }
+
+                long end;
+
+                if (member != null) {
+                    for (byte[] chunk : member.chunks) {
+                        emit(chunk);
+                    }
+
+                    end = member.end;
+                }
+                else {
+                    schedule(pos);
+
+                    end = inflate(channel, pos, (b, len) -> {
+                        emit(b, 0, len);
+                        return true;
+                    });
+
+                    if (end == NO_MEMBER) {
+                        if (pos == 0) {
+                            throw new ZipException("Not in GZIP format");
+                        }
+
+                        // Trailing data is ignored, like GZIPInputStream does
+                        break;
+                    }
+                }
+
+                pos = end;
+                current = pos;
+
+                // Candidates inside the member were false
+                Iterator<Map.Entry<Long, Future<Member>>> it = speculative.headMap(pos).entrySet().iterator();
+
+                while (it.hasNext()) {
+                    it.next().getValue().cancel(false);
+                    it.remove();
+                }
+
+                schedule(pos);
+            }
+        } finally {
+            current = Long.MAX_VALUE;
+            executor.shutdown();
+
+            try {
+                // Reads in progress complete before the channel is closed
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Finds candidates after the given offset and submits them to workers.
+     */
+    private void schedule(long pos) throws IOException {
+        scanned = Math.max(scanned, pos + 1);
+
+        while (!candidates.isEmpty() && candidates.peekFirst() <= pos) {
+            candidates.pollFirst();
+        }
+
+        while (candidates.size() + speculative.size() < parallelism * 2 && scanned < size && scanned < pos + SCAN_AHEAD) {
+            scan();
+        }
+
+        while (speculative.size() < parallelism && !candidates.isEmpty()) {
+            long candidate = candidates.pollFirst();
+
+            speculative.put(candidate, executor.submit(() -> decompress(candidate)));
+        }
+    }
+
+    /**
+     * Scans the next block of the file for bytes that can start a member:
+     * the gzip magic, the deflate method and flags with no reserved bits.
+     */
+    private void scan() throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate((int) Math.min(SCAN_BLOCK, size - scanned));
+
+        while (bb.hasRemaining() && channel.read(bb, scanned + bb.position()) != -1) {
+        }
+
+        byte[] b = bb.array();
+        int n = bb.position();
+
+        for (int i = 0; i + 3 < n; i++) {
+            if (b[i] == (byte) 0x1F && b[i + 1] == (byte) 0x8B && b[i + 2] == 8 && (b[i + 3] & 0xE0) == 0) {
+                candidates.add(scanned + i);
+            }
+        }
+
+        // The last bytes are scanned again with the next block
+        scanned += n < SCAN_BLOCK ? n : n - 3;
+    }
+
+    /**
+     * Decompresses a member into memory on a worker thread.
+     *
+     * @return The member, or null if the candidate isn't a valid member or is
+     * too large.
+     */
+    private Member decompress(long start) {
+        List<byte[]> chunks = new ArrayList<>();
+        int[] total = new int[1];
+
+        try {
+            long end = inflate(channel, start, (b, len) -> {
+                if (start < current || isClosed()) {
+                    throw new InterruptedException();
+                }
+
+                total[0] += len;
+
+                if (total[0] > maxSpeculativeOutput) {
+                    return false;
+                }
+
+                chunks.add(Arrays.copyOf(b, len));
+
+                return true;
+            });
+
+            return end < 0 ? null : new Member(end, chunks);
+        } catch (IOException | InterruptedException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Decompresses the member starting at the given offset.
+     *
+     * @param channel The file.
+     * @param start The offset of the member header.
+     * @param sink The receiver of the decompressed data.
+     * @return The offset after the member, {@link #NO_MEMBER} if there is no
+     * member header at the offset, or {@link #TOO_LARGE} if the sink refused
+     * more data.
+     * @throws ZipException If the member is corrupt.
+     */
+    static long inflate(FileChannel channel, long start, Sink sink) throws IOException, InterruptedException {
+        Input in = new Input(channel, start);
+
+        try {
+            if (in.read() != 0x1F || in.read() != 0x8B || in.read() != 8) {
+                return NO_MEMBER;
+            }
+        } catch (EOFException ex) {
+            return NO_MEMBER;
+        }
+
+        int flags = in.read();
+
+        if ((flags & 0xE0) != 0) {
+            throw new ZipException("Unsupported gzip flags at " + start);
+        }
+
+        // MTIME, XFL and OS
+        for (int i = 0; i < 6; i++) {
+            in.read();
+        }
+
+        if ((flags & 4) != 0) {
+            for (int i = in.readShort(); i > 0; i--) {
+                in.read();
+            }
+        }
+
+        if ((flags & 8) != 0) {
+            while (in.read() != 0) {
+            }
+        }
+
+        if ((flags & 16) != 0) {
+            while (in.read() != 0) {
+            }
+        }
+
+        if ((flags & 2) != 0) {
+            in.readShort();
+        }
+
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        byte[] out = new byte[GzipCodec.CHUNK_SIZE];
+        long total = 0;
+
+        try {
+            // Header bytes already buffered are the start of the deflate data
+            inflater.setInput(in.buf, in.pos, in.limit - in.pos);
+
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!in.fill()) {
+                        throw new EOFException("Unexpected end of gzip member at " + start);
+                    }
+
+                    inflater.setInput(in.buf, 0, in.limit);
+                }
+
+                int n = inflater.inflate(out);
+
+                if (n > 0) {
+                    crc.update(out, 0, n);
+                    total += n;
+
+                    if (!sink.accept(out, n)) {
+                        return TOO_LARGE;
+                    }
+                }
+                else if (inflater.needsDictionary()) {
+                    throw new ZipException("Corrupt gzip member at " + start);
+                }
+            }
+
+            in.pos = in.limit - inflater.getRemaining();
+        } catch (DataFormatException ex) {
+            throw new ZipException("Corrupt gzip member at " + start + ": " + ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        if (in.readInt() != (int) crc.getValue() || in.readInt() != (int) total) {
+            throw new ZipException("Corrupt gzip member trailer at " + start);
+        }
+
+        return in.offset();
+    }
+
+}
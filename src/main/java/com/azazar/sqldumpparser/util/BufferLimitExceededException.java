@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+/**
+ * Thrown when a buffer would have to grow past its configured limit to hold
+ * the data needed from the current position.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class BufferLimitExceededException extends RuntimeException {
+
+    private final long position;
+
+    public BufferLimitExceededException(long required, int limit, long position) {
+        super("Buffering " + required + " characters at position " + position + " exceeds the limit of " + limit);
+        this.position = position;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+}
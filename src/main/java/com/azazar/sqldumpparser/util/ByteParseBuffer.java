@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ParseBuffer working directly on UTF-8 encoded bytes.
+ *
+ * Every byte is exposed as a single char, so the ASCII part of SQL syntax
+ * (quotes, parentheses, commas, comments) is recognized without decoding.
+ * Non-ASCII bytes only appear inside string literals and quoted identifiers,
+ * and are decoded by {@link #substring(int, int)} and
+ * {@link #appendTo(StringBuilder, int, int)} when a value is materialized.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class ByteParseBuffer implements ParseBuffer {
+
+    protected ByteBuffer bytes;
+
+    protected int ofs;
+
+    /**
+     * The position of the first byte of {@link #bytes} in the whole input.
+     */
+    protected long base;
+
+    private final ByteScanner scanner;
+
+    public ByteParseBuffer(ByteBuffer bytes) {
+        this(bytes, ByteScanner.DEFAULT);
+    }
+
+    ByteParseBuffer(ByteBuffer bytes, ByteScanner scanner) {
+        this.bytes = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.scanner = scanner;
+    }
+
+    /**
+     * Called when an index past the end of {@link #bytes} is accessed.
+     * Subclasses reading their input in windows override this to make the
+     * requested number of bytes available from the current position, adjusting
+     * {@link #bytes}, {@link #ofs} and {@link #base}.
+     *
+     * @param count The number of bytes required from the current position.
+     */
+    protected void fill(int count) {
+    }
+
+    @Override
+    public void advance() {
+        ofs++;
+    }
+
+    @Override
+    public void advance(int offset) {
+        ofs += offset;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit() - ofs;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index + ofs >= bytes.limit()) {
+            fill(index + 1);
+        }
+
+        return (char) (bytes.get(index + ofs) & 0xFF);
+    }
+
+    /**
+     * Makes more bytes available when a scan reaches the end of
+     * {@link #bytes} before the end of its range.
+     *
+     * @param index The index the scan stopped at.
+     * @param to The end of the scanned range.
+     * @return true if the scan should continue from the same index.
+     */
+    private boolean more(int index, int to) {
+        if (index >= to || index + ofs < bytes.limit()) {
+            return false;
+        }
+
+        fill(index + 1);
+
+        return index + ofs < bytes.limit();
+    }
+
+    @Override
+    public int indexOf(char a, char b, int from, int to) {
+        if (a >= 0x80 || b >= 0x80) {
+            return ParseBuffer.super.indexOf(a, b, from, to);
+        }
+
+        int i = from;
+
+        do {
+            int end = (int) Math.min((long) to + ofs, bytes.limit());
+            int found = scanner.indexOf(bytes, (byte) a, (byte) b, i + ofs, end);
+
+            if (found != -1) {
+                return found - ofs;
+            }
+
+            i = Math.max(i, end - ofs);
+        } while (more(i, to));
+
+        return -1;
+    }
+
+    @Override
+    public int skipWordChars(int from, int to) {
+        int i = from;
+
+        do {
+            i = scanner.skipWordBytes(bytes, i + ofs, (int) Math.min((long) to + ofs, bytes.limit())) - ofs;
+        } while (more(i, to));
+
+        return i;
+    }
+
+    @Override
+    public int skipDigits(int from, int to) {
+        int i = from;
+
+        do {
+            i = scanner.skipDigitBytes(bytes, i + ofs, (int) Math.min((long) to + ofs, bytes.limit())) - ofs;
+        } while (more(i, to));
+
+        return i;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String substring(int start, int end) {
+        if (end + ofs > bytes.limit()) {
+            fill(end);
+        }
+
+        return decode(bytes, start + ofs, end + ofs);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb, int start, int end) {
+        if (end + ofs > bytes.limit()) {
+            fill(end);
+        }
+
+        appendDecoded(sb, bytes, start + ofs, end + ofs);
+    }
+
+    @Override
+    public long position() {
+        return base + ofs;
+    }
+
+    @Override
+    public String toString() {
+        return decode(bytes, ofs, bytes.limit());
+    }
+
+    /**
+     * Decodes UTF-8 bytes from the given range into a String.
+     *
+     * @param bytes The buffer to decode from.
+     * @param from The absolute index of the first byte.
+     * @param to The absolute index after the last byte.
+     * @return The decoded string.
+     */
+    static String decode(ByteBuffer bytes, int from, int to) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+
+        byte[] tmp = new byte[to - from];
+        bytes.get(from, tmp);
+
+        return new String(tmp, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes UTF-8 bytes from the given range and appends the result to a
+     * StringBuilder without creating intermediate objects. Malformed
+     * sequences are replaced with U+FFFD.
+     *
+     * @param sb The StringBuilder to append to.
+     * @param bytes The buffer to decode from.
+     * @param from The absolute index of the first byte.
+     * @param to The absolute index after the last byte.
+     */
+    static void appendDecoded(StringBuilder sb, ByteBuffer bytes, int from, int to) {
+        int i = from;
+
+        while (i < to) {
+            int b = bytes.get(i);
+
+            if (b >= 0) {
+                sb.append((char) b);
+                i++;
+                continue;
+            }
+
+            int len, cp;
+
+            if ((b & 0xE0) == 0xC0) {
+                len = 2;
+                cp = b & 0x1F;
+            }
+            else if ((b & 0xF0) == 0xE0) {
+                len = 3;
+                cp = b & 0x0F;
+            }
+            else if ((b & 0xF8) == 0xF0) {
+                len = 4;
+                cp = b & 0x07;
+            }
+            else {
+                sb.append('\uFFFD');
+                i++;
+                continue;
+            }
+
+            int j = 1;
+
+            for (; j < len && i + j < to; j++) {
+                int c = bytes.get(i + j);
+
+                if ((c & 0xC0) != 0x80) {
+                    break;
+                }
+
+                cp = (cp << 6) | (c & 0x3F);
+            }
+
+            if (j < len) {
+                sb.append('\uFFFD');
+                i += j;
+                continue;
+            }
+
+            sb.appendCodePoint(Character.isValidCodePoint(cp) ? cp : 0xFFFD);
+            i += len;
+        }
+    }
+
+}
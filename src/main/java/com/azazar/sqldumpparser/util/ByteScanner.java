@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Byte searches used by the lexer, processing eight bytes at once with
+ * SIMD-within-a-register arithmetic on long words. Ranges shorter than a
+ * word, and all ranges of the {@link #SCALAR} scanner, are scanned one byte
+ * at a time.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+final class ByteScanner {
+
+    static final ByteScanner SWAR = new ByteScanner(true);
+
+    static final ByteScanner SCALAR = new ByteScanner(false);
+
+    /**
+     * The scanner of byte buffers, scalar if the system property
+     * {@code sqldumpparser.disableSwar} is set.
+     */
+    static final ByteScanner DEFAULT = Boolean.getBoolean("sqldumpparser.disableSwar") ? SCALAR : SWAR;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long CASE = 0x2020202020202020L;
+
+    /**
+     * Whether word-at-a-time scanning is used.
+     */
+    private final boolean swar;
+
+    private ByteScanner(boolean swar) {
+        this.swar = swar;
+    }
+
+    /**
+     * Returns a mask with the high bit set in every byte of the word that is
+     * zero. Unlike the common approximation it has no false positives.
+     */
+    private static long zeroBytes(long x) {
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+
+    /**
+     * Returns a mask with the high bit set in every byte equal to b.
+     */
+    private static long equalBytes(long x, byte b) {
+        return zeroBytes(x ^ (ONES * (b & 0xFF)));
+    }
+
+    /**
+     * Returns a mask with the high bit set in every byte greater than m and
+     * less than n, for 0 &lt;= m &lt; n &lt;= 128.
+     */
+    private static long bytesBetween(long x, int m, int n) {
+        long t = x & LOWS;
+
+        return (ONES * (127 + n) - t) & ~x & (t + ONES * (127 - m)) & HIGHS;
+    }
+
+    private static long wordBytes(long x) {
+        return bytesBetween(x | CASE, 'a' - 1, 'z' + 1) | bytesBetween(x, '0' - 1, '9' + 1) | equalBytes(x, (byte) '_');
+    }
+
+    private static int firstByte(long mask, ByteBuffer bytes) {
+        return bytes.order() == ByteOrder.LITTLE_ENDIAN ? Long.numberOfTrailingZeros(mask) >>> 3 : Long.numberOfLeadingZeros(mask) >>> 3;
+    }
+
+    private static boolean isWord(byte c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Finds the first occurrence of either of two bytes.
+     *
+     * @param bytes The buffer to search.
+     * @param a The first byte to search for.
+     * @param b The second byte to search for.
+     * @param from The absolute index to start searching from, inclusive.
+     * @param to The absolute index to stop searching at, exclusive.
+     * @return The absolute index of the first occurrence, or -1.
+     */
+    int indexOf(ByteBuffer bytes, byte a, byte b, int from, int to) {
+        int i = from;
+
+        if (swar) {
+            for (; i + 8 <= to; i += 8) {
+                long x = bytes.getLong(i);
+                long mask = equalBytes(x, a) | equalBytes(x, b);
+
+                if (mask != 0) {
+                    return i + firstByte(mask, bytes);
+                }
+            }
+        }
+
+        for (; i < to; i++) {
+            byte c = bytes.get(i);
+
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the first byte that isn't a letter, digit or underscore.
+     *
+     * @param bytes The buffer to search.
+     * @param from The absolute index to start searching from, inclusive.
+     * @param to The absolute index to stop searching at, exclusive.
+     * @return The absolute index of the first such byte, or {@code to}.
+     */
+    int skipWordBytes(ByteBuffer bytes, int from, int to) {
+        int i = from;
+
+        if (swar) {
+            for (; i + 8 <= to; i += 8) {
+                long mask = ~wordBytes(bytes.getLong(i)) & HIGHS;
+
+                if (mask != 0) {
+                    return i + firstByte(mask, bytes);
+                }
+            }
+        }
+
+        while (i < to && isWord(bytes.get(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Finds the first byte that isn't a decimal digit.
+     *
+     * @param bytes The buffer to search.
+     * @param from The absolute index to start searching from, inclusive.
+     * @param to The absolute index to stop searching at, exclusive.
+     * @return The absolute index of the first such byte, or {@code to}.
+     */
+    int skipDigitBytes(ByteBuffer bytes, int from, int to) {
+        int i = from;
+
+        if (swar) {
+            for (; i + 8 <= to; i += 8) {
+                long mask = ~bytesBetween(bytes.getLong(i), '0' - 1, '9' + 1) & HIGHS;
+
+                if (mask != 0) {
+                    return i + firstByte(mask, bytes);
+                }
+            }
+        }
+
+        while (i < to) {
+            byte c = bytes.get(i);
+
+            if (c < '0' || c > '9') {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+}
@@ -56,7 +56,12 @@ public class CharSequenceParseBuffer implements ParseBuffer {
     }
 
     @Override
-    public int position() {
+    public void appendTo(StringBuilder sb, int start, int end) {
+        sb.append(s, start + ofs, end + ofs);
+    }
+
+    @Override
+    public long position() {
         return ofs;
     }
 
@@ -158,7 +158,7 @@ public class CharStreamBuffer implements CharSequence {
             throw new IOExceptionWrapper(e);
         }
     
-        return bufferedLength >= position - bufferOffset;
+        return bufferedLength >= position;
     }
     
 
@@ -181,15 +181,16 @@ public class CharStreamBuffer implements CharSequence {
      *
      * @param index The index of the character to return.
      * @return The character at the specified index.
-     * @throws IndexOutOfBoundsException If the index is out of bounds.
+     * @throws IndexOutOfBoundsException If the index is out of bounds or past
+     * the end of the stream.
      */
     @Override
     public char charAt(int index) {
         if (index < bufferOffset) {
             throw new IndexOutOfBoundsException("Index out of bounds");
         }
-        if (index >= bufferedLength) {
-            ensureBufferedTo(index + 1);
+        if (index >= bufferedLength && !ensureBufferedTo(index + 1)) {
+            throw new IndexOutOfBoundsException("index=" + index + " is past the end of the stream");
         }
         return buffer[index - bufferOffset];
     }
@@ -218,6 +219,60 @@ public class CharStreamBuffer implements CharSequence {
         return new BufferSubSequence(start - bufferOffset, end - start);
     }
 
+    /**
+     * Finds the first occurrence of either of two characters by scanning the
+     * buffer array directly.
+     *
+     * @param a The first character to search for.
+     * @param b The second character to search for.
+     * @param from The position to start searching from, inclusive.
+     * @param to The position to stop searching at, exclusive.
+     * @return The position of the first occurrence, or -1 if none was found
+     * before {@code to} or the end of the stream.
+     */
+    public int indexOf(char a, char b, int from, int to) {
+        if (from < bufferOffset) {
+            throw new IndexOutOfBoundsException("Start position is in discarded data");
+        }
+
+        ensureBufferedTo(to);
+
+        char[] buf = buffer;
+        int end = Math.min(to, bufferedLength) - bufferOffset;
+
+        for (int i = from - bufferOffset; i < end; i++) {
+            char ch = buf[i];
+
+            if (ch == a || ch == b) {
+                return i + bufferOffset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Appends buffered characters to a StringBuilder in one bulk copy.
+     *
+     * @param sb The StringBuilder to append to.
+     * @param start The starting position, inclusive.
+     * @param end The ending position, exclusive.
+     * @throws IndexOutOfBoundsException If start or end positions are invalid.
+     */
+    public void appendTo(StringBuilder sb, int start, int end) {
+        if (start < bufferOffset) {
+            throw new IndexOutOfBoundsException("Start position is in discarded data");
+        }
+
+        if (start > end) {
+            throw new IndexOutOfBoundsException("Invalid start and end positions");
+        }
+
+        ensureBufferedTo(end);
+
+        sb.append(buffer, start - bufferOffset, end - start);
+    }
+
     @Override
     public String toString() {
         ensureBufferedTo(length());
@@ -29,6 +29,23 @@ public final class CharStreamParseBuffer extends CharSequenceParseBuffer {
         this.buf = buf;
     }
 
+    @Override
+    public boolean has(int index) {
+        return buf.ensureBufferedTo(index + ofs + 1);
+    }
+
+    @Override
+    public int indexOf(char a, char b, int from, int to) {
+        int i = buf.indexOf(a, b, from + ofs, to + ofs);
+
+        return i == -1 ? -1 : i - ofs;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb, int start, int end) {
+        buf.appendTo(sb, start + ofs, end + ofs);
+    }
+
     @Override
     public void advance(int offset) {
         super.advance(offset);
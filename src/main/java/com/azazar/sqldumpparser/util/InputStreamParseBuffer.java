@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A ByteParseBuffer reading UTF-8 encoded SQL from an InputStream. Only the
+ * bytes not consumed yet are kept when the buffer is refilled, so the buffer
+ * only grows when a single token doesn't fit into it.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class InputStreamParseBuffer extends ByteParseBuffer implements Closeable {
+
+    /**
+     * The default size of the buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 0x100000;
+
+    /**
+     * The length reported while the end of the stream isn't reached yet.
+     */
+    private static final int UNKNOWN_LENGTH = Integer.MAX_VALUE / 2;
+
+    private final InputStream in;
+
+    private byte[] buffer;
+
+    /**
+     * A flag indicating whether the entire input has been read.
+     */
+    private boolean fullyRead;
+
+    public InputStreamParseBuffer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public InputStreamParseBuffer(InputStream in, int bufferSize) {
+        super(ByteBuffer.allocate(0));
+
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize=" + bufferSize);
+        }
+
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Moves the unconsumed bytes to the start of the buffer and reads until
+     * the requested number of bytes is available or the stream ends.
+     *
+     * @param count The number of bytes required from the current position.
+     */
+    @Override
+    protected void fill(int count) {
+        if (fullyRead) {
+            return;
+        }
+
+        int remaining = Math.max(bytes.limit() - ofs, 0);
+
+        if (count > buffer.length) {
+            byte[] newBuffer = new byte[(int) Math.min(Math.max((long) buffer.length * 2, count), Integer.MAX_VALUE - 8)];
+
+            if (remaining > 0) {
+                System.arraycopy(buffer, ofs, newBuffer, 0, remaining);
+            }
+
+            buffer = newBuffer;
+        }
+        else if (remaining > 0) {
+            System.arraycopy(buffer, ofs, buffer, 0, remaining);
+        }
+
+        int skip = ofs - bytes.limit();
+
+        base += ofs;
+        ofs = 0;
+
+        try {
+            // Bytes advanced over past the end of the buffer
+            while (skip > 0 && !fullyRead) {
+                long n = in.skip(skip);
+
+                if (n <= 0) {
+                    fullyRead = in.read() == -1;
+                    n = fullyRead ? 0 : 1;
+                }
+
+                skip -= n;
+            }
+
+            int filled = remaining;
+
+            while (filled < count && !fullyRead) {
+                int n = in.read(buffer, filled, buffer.length - filled);
+
+                if (n == -1) {
+                    fullyRead = true;
+                }
+                else {
+                    filled += n;
+                }
+            }
+
+            bytes = ByteBuffer.wrap(buffer, 0, filled).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new IOExceptionWrapper(e);
+        }
+    }
+
+    @Override
+    public int length() {
+        if (ofs >= bytes.limit() && !fullyRead) {
+            fill(1);
+        }
+
+        return fullyRead ? bytes.limit() - ofs : UNKNOWN_LENGTH;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return length() <= 0;
+    }
+
+    @Override
+    public boolean has(int index) {
+        if (index + ofs >= bytes.limit()) {
+            fill(index + 1);
+        }
+
+        return index + ofs < bytes.limit();
+    }
+
+    /**
+     * Returns the byte at the specified index as a char.
+     *
+     * @param index The index of the byte to return.
+     * @return The byte at the specified index.
+     * @throws IndexOutOfBoundsException If the index is past the end of the
+     * stream.
+     */
+    @Override
+    public char charAt(int index) {
+        if (!has(index)) {
+            throw new IndexOutOfBoundsException("index=" + index + " is past the end of the stream");
+        }
+
+        return (char) (bytes.get(index + ofs) & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, Math.max(bytes.limit() - ofs, 0));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A ByteParseBuffer reading a UTF-8 encoded file through memory mapped
+ * windows. The window slides forward as the buffer advances, so files of any
+ * size can be parsed while positions are tracked as long values.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class MappedFileParseBuffer extends ByteParseBuffer implements Closeable {
+
+    /**
+     * The default size of a mapped window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 0x4000000;
+
+    /**
+     * The channel the file is mapped from.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The end of the mapped range, the size of the file by default.
+     */
+    private final long size;
+
+    /**
+     * The number of bytes mapped at once, unless a single token requires more.
+     */
+    private final int windowSize;
+
+    /**
+     * Opens the given file with the default window size.
+     *
+     * @param path The file to read.
+     * @throws IOException If the file can't be opened or mapped.
+     */
+    public MappedFileParseBuffer(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Opens the given file.
+     *
+     * @param path The file to read.
+     * @param windowSize The number of bytes to map at once.
+     * @throws IOException If the file can't be opened or mapped.
+     */
+    public MappedFileParseBuffer(Path path, int windowSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), windowSize);
+    }
+
+    /**
+     * Opens a range of the given file. Positions are reported as offsets in
+     * the file.
+     *
+     * @param path The file to read.
+     * @param start The offset of the first byte to read.
+     * @param end The offset after the last byte to read.
+     * @param windowSize The number of bytes to map at once.
+     * @throws IOException If the file can't be opened or mapped.
+     */
+    public MappedFileParseBuffer(Path path, long start, long end, int windowSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), start, end, windowSize);
+    }
+
+    private MappedFileParseBuffer(FileChannel channel, int windowSize) throws IOException {
+        this(channel, 0, channel.size(), windowSize);
+    }
+
+    private MappedFileParseBuffer(FileChannel channel, long start, long end, int windowSize) throws IOException {
+        super(ByteBuffer.allocate(0));
+
+        if (windowSize <= 0 || start < 0 || start > end) {
+            channel.close();
+            throw new IllegalArgumentException("windowSize=" + windowSize + ", start=" + start + ", end=" + end);
+        }
+
+        this.channel = channel;
+        this.size = end;
+        this.windowSize = windowSize;
+        this.base = start;
+    }
+
+    /**
+     * Returns the number of bytes remaining in the range, limited to
+     * Integer.MAX_VALUE.
+     *
+     * @return The number of remaining bytes.
+     */
+    @Override
+    public int length() {
+        return (int) Math.min(size - position(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Maps a new window starting at the current position.
+     *
+     * @param count The number of bytes required from the current position.
+     */
+    @Override
+    protected void fill(int count) {
+        long position = position();
+        long length = Math.min(Math.max(windowSize, (long) count), size - position);
+
+        try {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            throw new IOExceptionWrapper(e);
+        }
+
+        base = position;
+        ofs = 0;
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, Math.min(length(), windowSize));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -17,6 +17,9 @@
 package com.azazar.sqldumpparser.util;
 
 import java.io.Reader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  *
@@ -32,7 +35,7 @@ public interface ParseBuffer extends CharSequence {
         return c;
     }
     
-    int position();
+    long position();
 
     default void advance() {
         advance(1);
@@ -40,6 +43,122 @@ public interface ParseBuffer extends CharSequence {
 
     void advance(int offset);
 
+    /**
+     * Returns whether there is a character at the given index, reading ahead
+     * if necessary. The length of a stream is only an upper bound until its
+     * end is reached, and charAt() throws an IndexOutOfBoundsException past
+     * the end, so indexes that aren't known to be before the end are checked
+     * with this first. Once it returns false, {@link #length()} is exact.
+     *
+     * @param index The index to check.
+     * @return true if there is a character at the index.
+     */
+    default boolean has(int index) {
+        return index < length();
+    }
+
+    @Override
+    default boolean isEmpty() {
+        return !has(0);
+    }
+
+    /**
+     * Finds the first occurrence of either of two characters.
+     *
+     * @param a The first character to search for.
+     * @param b The second character to search for.
+     * @param from The index to start searching from, inclusive.
+     * @param to The index to stop searching at, exclusive. Must not exceed
+     * {@link #length()}.
+     * @return The index of the first occurrence, or -1 if none was found
+     * before {@code to} or the end of the input.
+     */
+    default int indexOf(char a, char b, int from, int to) {
+        for (int i = from; i < to && has(i); i++) {
+            char ch = charAt(i);
+
+            if (ch == a || ch == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Skips letters, digits and underscores.
+     *
+     * @param from The index to start from, inclusive.
+     * @param to The index to stop at, exclusive. Must not exceed
+     * {@link #length()}.
+     * @return The index of the first other character, or {@code to} or the
+     * end of the input if it comes first.
+     */
+    default int skipWordChars(int from, int to) {
+        int i = from;
+
+        while (i < to && has(i)) {
+            char ch = charAt(i);
+
+            if (!((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9') || ch == '_')) {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Skips decimal digits.
+     *
+     * @param from The index to start from, inclusive.
+     * @param to The index to stop at, exclusive. Must not exceed
+     * {@link #length()}.
+     * @return The index of the first other character, or {@code to} or the
+     * end of the input if it comes first.
+     */
+    default int skipDigits(int from, int to) {
+        int i = from;
+
+        while (i < to && has(i)) {
+            char ch = charAt(i);
+
+            if (ch < '0' || ch > '9') {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the text between the given indexes, decoding the underlying
+     * data if necessary.
+     *
+     * @param start The start index, inclusive.
+     * @param end The end index, exclusive.
+     * @return The text between the given indexes.
+     */
+    default String substring(int start, int end) {
+        return subSequence(start, end).toString();
+    }
+
+    /**
+     * Appends the text between the given indexes to a StringBuilder, decoding
+     * the underlying data if necessary.
+     *
+     * @param sb The StringBuilder to append to.
+     * @param start The start index, inclusive.
+     * @param end The end index, exclusive.
+     */
+    default void appendTo(StringBuilder sb, int start, int end) {
+        sb.append(this, start, end);
+    }
+
     static ParseBuffer wrap(CharSequence s) {
         return new CharSequenceParseBuffer(s);
     }
@@ -51,5 +170,21 @@ public interface ParseBuffer extends CharSequence {
     static ParseBuffer wrap(Reader r) {
         return new CharStreamParseBuffer(new CharStreamBuffer(r));
     }
+
+    static ParseBuffer wrap(Reader r, int maxBufferSize) {
+        return new RingBufferParseBuffer(r, maxBufferSize);
+    }
+
+    static ParseBuffer wrap(ByteBuffer b) {
+        return new ByteParseBuffer(b);
+    }
+
+    static ParseBuffer wrap(byte[] b) {
+        return new ByteParseBuffer(ByteBuffer.wrap(b));
+    }
+
+    static MappedFileParseBuffer open(Path p) throws IOException {
+        return new MappedFileParseBuffer(p);
+    }
     
 }
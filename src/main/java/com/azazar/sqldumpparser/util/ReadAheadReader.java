@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Reader that reads blocks from another Reader on a background thread, so
+ * that reading overlaps with processing of the data already read. Up to
+ * {@code depth} blocks are read ahead of the consumer, and the blocks are
+ * reused once consumed.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class ReadAheadReader extends Reader {
+
+    /**
+     * The default number of characters in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 0x10000;
+
+    private static final class Block {
+
+        final char[] data;
+
+        int length;
+
+        IOException error;
+
+        Block(int size) {
+            data = new char[size];
+        }
+
+    }
+
+    /**
+     * Put into the free queue to stop the background thread.
+     */
+    private static final Block POISON = new Block(0);
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = r -> {
+        Thread t = new Thread(r, "sql-read-ahead");
+        t.setDaemon(true);
+        return t;
+    };
+
+    private final Reader reader;
+
+    /**
+     * Blocks filled by the background thread, in order.
+     */
+    private final BlockingQueue<Block> filled;
+
+    /**
+     * Consumed blocks available for reuse.
+     */
+    private final BlockingQueue<Block> free;
+
+    private final Thread thread;
+
+    private volatile boolean stopped;
+
+    /**
+     * The block being consumed.
+     */
+    private Block current;
+
+    /**
+     * The read position in the current block.
+     */
+    private int pos;
+
+    private boolean eof;
+
+    private IOException error;
+
+    /**
+     * Creates a new ReadAheadReader using daemon threads.
+     *
+     * @param reader The Reader to read from.
+     * @param depth The number of blocks to read ahead.
+     */
+    public ReadAheadReader(Reader reader, int depth) {
+        this(reader, DEFAULT_BLOCK_SIZE, depth, DEFAULT_THREAD_FACTORY);
+    }
+
+    /**
+     * Creates a new ReadAheadReader.
+     *
+     * @param reader The Reader to read from.
+     * @param blockSize The number of characters in a block.
+     * @param depth The number of blocks to read ahead.
+     * @param threadFactory The factory of the background thread.
+     */
+    public ReadAheadReader(Reader reader, int blockSize, int depth, ThreadFactory threadFactory) {
+        if (blockSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("blockSize=" + blockSize + ", depth=" + depth);
+        }
+
+        this.reader = reader;
+        // Room for every block, so that the background thread only waits for
+        // free blocks and never has to be interrupted. The free queue also
+        // has room for the poison block.
+        this.filled = new ArrayBlockingQueue<>(depth + 1);
+        this.free = new ArrayBlockingQueue<>(depth + 2);
+
+        // One block more than the depth is being consumed
+        for (int i = 0; i <= depth; i++) {
+            free.add(new Block(blockSize));
+        }
+
+        thread = threadFactory.newThread(this::readBlocks);
+        thread.start();
+    }
+
+    private void readBlocks() {
+        try {
+            while (!stopped) {
+                Block block = free.take();
+
+                if (block == POISON || stopped) {
+                    break;
+                }
+
+                block.length = 0;
+
+                try {
+                    while (block.length < block.data.length) {
+                        int n = reader.read(block.data, block.length, block.data.length - block.length);
+
+                        if (n == -1) {
+                            break;
+                        }
+
+                        block.length += n;
+                    }
+                } catch (IOException ex) {
+                    block.error = ex;
+                }
+
+                filled.put(block);
+
+                if (block.error != null || block.length < block.data.length) {
+                    // Nothing more to read
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Makes the next block current.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean next() throws IOException {
+        if (stopped) {
+            throw new IOException("Reader is closed");
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        if (eof) {
+            return false;
+        }
+
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+
+        Block block;
+
+        try {
+            block = filled.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        if (block.error != null) {
+            // Data read before the error is returned first
+            error = block.error;
+
+            if (block.length == 0) {
+                throw error;
+            }
+        }
+        else if (block.length < block.data.length) {
+            eof = true;
+        }
+
+        current = block;
+        pos = 0;
+
+        return block.length > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((current == null || pos == current.length) && !next()) {
+            return -1;
+        }
+
+        return current.data[pos++];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if ((current == null || pos == current.length) && !next()) {
+            return -1;
+        }
+
+        int n = Math.min(len, current.length - pos);
+
+        System.arraycopy(current.data, pos, cbuf, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    /**
+     * Stops the background thread without closing the underlying Reader, and
+     * waits for it to end. The thread isn't interrupted, since interrupting a
+     * read from a channel closes the channel, so a read in progress on the
+     * underlying Reader is completed first and no read happens after this
+     * method returns. If the calling thread is interrupted while waiting,
+     * the method returns early with the interrupt status set.
+     */
+    public void stop() {
+        if (stopped) {
+            return;
+        }
+
+        stopped = true;
+        free.offer(POISON);
+
+        if (thread == Thread.currentThread()) {
+            return;
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        reader.close();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A ParseBuffer reading from a Reader into a ring buffer. Advancing only
+ * moves the head of the ring, so buffered data is never moved because the
+ * cursor moved. The ring grows when more data is needed ahead of the cursor
+ * than it can hold, up to a hard limit, past which a
+ * {@link BufferLimitExceededException} is thrown.
+ *
+ * @author Azazar <spam@azazar.com>
+ */
+public class RingBufferParseBuffer implements ParseBuffer {
+
+    /**
+     * The default initial capacity of the ring.
+     */
+    private static final int DEFAULT_INITIAL_CAPACITY = 0x10000;
+
+    /**
+     * The length reported while the end of the stream isn't reached yet.
+     */
+    private static final int UNKNOWN_LENGTH = Integer.MAX_VALUE / 2;
+
+    /**
+     * The Reader to read data from.
+     */
+    private final Reader reader;
+
+    /**
+     * The maximum capacity of the ring.
+     */
+    private final int maxCapacity;
+
+    /**
+     * The ring buffer.
+     */
+    private char[] ring;
+
+    /**
+     * The index of the current position in the ring.
+     */
+    private int head;
+
+    /**
+     * The number of characters buffered from the current position.
+     */
+    private int size;
+
+    /**
+     * The position from the beginning of the stream.
+     */
+    private long position;
+
+    /**
+     * A flag indicating whether the entire input has been read.
+     */
+    private boolean fullyRead;
+
+    /**
+     * Creates a new RingBufferParseBuffer.
+     *
+     * @param reader The Reader to read data from.
+     * @param maxCapacity The maximum number of characters to buffer.
+     */
+    public RingBufferParseBuffer(Reader reader, int maxCapacity) {
+        this(reader, DEFAULT_INITIAL_CAPACITY, maxCapacity);
+    }
+
+    /**
+     * Creates a new RingBufferParseBuffer.
+     *
+     * @param reader The Reader to read data from.
+     * @param initialCapacity The number of characters to buffer initially.
+     * @param maxCapacity The maximum number of characters to buffer.
+     */
+    public RingBufferParseBuffer(Reader reader, int initialCapacity, int maxCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity=" + initialCapacity);
+        }
+
+        if (maxCapacity <= 0) {
+            throw new IllegalArgumentException("maxCapacity=" + maxCapacity);
+        }
+
+        this.reader = reader;
+        this.maxCapacity = maxCapacity;
+        this.ring = new char[Math.min(initialCapacity, maxCapacity)];
+    }
+
+    /**
+     * Makes sure the given number of characters is buffered from the current
+     * position, unless the end of the stream comes first.
+     *
+     * @param count The number of characters required.
+     * @return true if the characters are available.
+     */
+    private boolean fill(int count) {
+        if (count <= size) {
+            return true;
+        }
+
+        if (count > ring.length) {
+            grow(count);
+        }
+
+        try {
+            while (size < count && !fullyRead) {
+                int tail = head + size;
+
+                if (tail >= ring.length) {
+                    tail -= ring.length;
+                }
+
+                // Read into the contiguous free space after the tail
+                int free = tail >= head ? ring.length - tail : head - tail;
+                int read = reader.read(ring, tail, free);
+
+                if (read == -1) {
+                    fullyRead = true;
+                }
+                else {
+                    size += read;
+                }
+            }
+        } catch (IOException e) {
+            throw new IOExceptionWrapper(e);
+        }
+
+        return size >= count;
+    }
+
+    private void grow(int count) {
+        if (count > maxCapacity) {
+            throw new BufferLimitExceededException(count, maxCapacity, position);
+        }
+
+        char[] newRing = new char[(int) Math.min(Math.max((long) ring.length * 2, count), maxCapacity)];
+
+        copy(0, size, newRing, 0);
+
+        ring = newRing;
+        head = 0;
+    }
+
+    /**
+     * Copies buffered characters into an array.
+     */
+    private void copy(int start, int end, char[] dst, int dstOffset) {
+        int from = head + start;
+
+        if (from >= ring.length) {
+            from -= ring.length;
+        }
+
+        int length = end - start;
+        int first = Math.min(length, ring.length - from);
+
+        System.arraycopy(ring, from, dst, dstOffset, first);
+        System.arraycopy(ring, 0, dst, dstOffset + first, length - first);
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + ", end=" + end);
+        }
+
+        if (!fill(end)) {
+            throw new IndexOutOfBoundsException("end=" + end + " is past the end of the stream");
+        }
+    }
+
+    @Override
+    public void advance(int offset) {
+        fill(offset);
+
+        int n = Math.min(offset, size);
+
+        head += n;
+
+        if (head >= ring.length) {
+            head -= ring.length;
+        }
+
+        size -= n;
+        position += offset;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public int length() {
+        if (size == 0 && !fullyRead) {
+            fill(1);
+        }
+
+        return fullyRead ? size : UNKNOWN_LENGTH;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index < size || fill(index + 1);
+    }
+
+    /**
+     * Returns the character at the specified index.
+     *
+     * @param index The index of the character to return.
+     * @return The character at the specified index.
+     * @throws IndexOutOfBoundsException If the index is past the end of the
+     * stream.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index >= size && !fill(index + 1)) {
+            throw new IndexOutOfBoundsException("index=" + index + " is past the end of the stream");
+        }
+
+        int i = head + index;
+
+        if (i >= ring.length) {
+            i -= ring.length;
+        }
+
+        return ring[i];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String substring(int start, int end) {
+        checkRange(start, end);
+
+        char[] chars = new char[end - start];
+        copy(start, end, chars, 0);
+
+        return new String(chars);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb, int start, int end) {
+        checkRange(start, end);
+
+        int from = head + start;
+
+        if (from >= ring.length) {
+            from -= ring.length;
+        }
+
+        int length = end - start;
+        int first = Math.min(length, ring.length - from);
+
+        sb.append(ring, from, first);
+        sb.append(ring, 0, length - first);
+    }
+
+    @Override
+    public int indexOf(char a, char b, int from, int to) {
+        int i = from;
+
+        while (i < to) {
+            if (i >= size && !fill(i + 1)) {
+                return -1;
+            }
+
+            // Scan up to the end of the buffered data or of the array
+            int start = head + i;
+
+            if (start >= ring.length) {
+                start -= ring.length;
+            }
+
+            int end = start + Math.min(to, size) - i;
+
+            if (end > ring.length) {
+                end = ring.length;
+            }
+
+            char[] r = ring;
+
+            for (int j = start; j < end; j++) {
+                char ch = r[j];
+
+                if (ch == a || ch == b) {
+                    return i + j - start;
+                }
+            }
+
+            i += end - start;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return size == 0 ? "" : substring(0, size);
+    }
+
+}
@@ -17,11 +17,35 @@
 package com.azazar.sqldumpparser;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -210,4 +234,1144 @@ public class InsertParserTest {
         assertDeepEquals(expectedValues1, capturedInserts.get(0));
     }
     
+    @Test
+    void testUtf8BytesParsing() throws Exception {
+        String inputSql = "-- comment\nINSERT INTO `libgenrelist` VALUES (1,'sf_history','Альтернативная \\'история\\'','Фантастика 😀');";
+
+        SqlInsertParser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(1, capturedInserts.size());
+
+        Map<String, Object> expectedValues1 = new LinkedHashMap<>();
+
+        expectedValues1.put("#0", 1L);
+        expectedValues1.put("#1", "sf_history");
+        expectedValues1.put("#2", "Альтернативная 'история'");
+        expectedValues1.put("#3", "Фантастика 😀");
+
+        assertDeepEquals(expectedValues1, capturedInserts.get(0));
+    }
+
+    @Test
+    void testNumberParsing() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (0,-0,9223372036854775807,-9223372036854775808,18446744073709551615,1.5,-0.25,0.1,3.14159265358979323846,-123456789.123456789,-0.0,-0.00,0.0);";
+
+        SqlInsertParser.parse(inputSql, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, new BigDecimal("18446744073709551615"), 1.5, -0.25, 0.1, 3.14159265358979323846, -123456789.123456789, -0.0, -0.0, 0.0),
+                new ArrayList<>(capturedInserts.get(0).values()));
+    }
+
+    @Test
+    void testStringEscapes() throws Exception {
+        String longValue = "Фантастика ".repeat(2000) + "\\\\ end";
+        String inputSql = "INSERT INTO users VALUES ('it''s \\0\\Z\\%\\_\\\\\\\"\\'', \"say \"\"hi\"\"\", '" + longValue + "', '\\é\\Ф\\😀');";
+
+        List<Object> expected = List.of("it's \0\032\\%\\_\\\"'", "say \"hi\"", longValue.replace("\\\\", "\\"), "éФ😀");
+
+        SqlInsertParser.parse(inputSql, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+        SqlInsertParser.parse(new StringReader(inputSql), tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+        SqlInsertParser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(3, capturedInserts.size());
+
+        for (Map<String, Object> values : capturedInserts) {
+            assertEquals(expected, new ArrayList<>(values.values()));
+        }
+    }
+
+    @Test
+    void testNullValues() throws Exception {
+        String inputSql = "INSERT INTO users (id, name) VALUES (1, NULL), (2, null);";
+
+        SqlInsertParser.parse(inputSql, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(2, capturedInserts.size());
+        assertEquals(Arrays.asList(1L, null), new ArrayList<>(capturedInserts.get(0).values()));
+        assertEquals(Arrays.asList(2L, null), new ArrayList<>(capturedInserts.get(1).values()));
+    }
+
+    @Test
+    void testTuplesAreStreamed() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1),(2),(3),";
+
+        // The statement breaks off after the third tuple
+        Reader reader = new StringReader(inputSql) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = super.read(cbuf, off, len);
+
+                if (n == -1) {
+                    throw new IOException("connection reset");
+                }
+
+                return n;
+            }
+        };
+
+        assertThrows(IOException.class, () -> SqlInsertParser.parse(reader, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values))));
+
+        assertEquals(3, capturedInserts.size());
+    }
+
+    @Test
+    void testUnselectedAndOtherStatements() throws Exception {
+        String inputSql = "INSERT INTO other VALUES (1,'x');\n"
+                + "INSERT INTO `users` (`id`) VALUES (1) ;\n"
+                + "SELECT 1;\n"
+                + "INSERT INTO users VALUES (2);";
+
+        SqlInsertParser.parse(inputSql, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(Map.of("id", 1L), Map.of("#0", 2L)), capturedInserts);
+    }
+
+    @Test
+    void testRowCallback() throws Exception {
+        String inputSql = "CREATE TABLE users (id int, name varchar(10), score double, note text);\n"
+                + "INSERT INTO users VALUES (1, 'Alice', 2.5, NULL), (-2, 'Bob', 1000.25, 'x', 7);\n"
+                + "INSERT INTO users (name, id) VALUES ('Eve', '3');";
+
+        List<String> rows = new ArrayList<>();
+        Set<SqlRowView> views = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        SqlInsertParser.parse(inputSql, tableNames, row -> {
+            views.add(row);
+
+            StringBuilder sb = new StringBuilder(row.getTableName()).append(':');
+
+            for (int i = 0; i < row.columnCount(); i++) {
+                sb.append(' ').append(row.columnName(i)).append('=');
+
+                if (row.isNull(i)) {
+                    sb.append("NULL");
+                }
+                else if (row.columnName(i).equals("id") || row.columnName(i).startsWith("#")) {
+                    sb.append(row.getLong(i));
+                }
+                else if (row.columnName(i).equals("score")) {
+                    sb.append(row.getDouble(i));
+                }
+                else {
+                    sb.append(row.getCharSequence(i));
+                }
+            }
+
+            rows.add(sb.toString());
+        });
+
+        assertEquals(List.of(
+                "users: id=1 name=Alice score=2.5 note=NULL",
+                "users: id=-2 name=Bob score=1000.25 note=x #4=7",
+                "users: name=Eve id=3"), rows);
+        assertEquals(1, views.size());
+    }
+
+    @Test
+    void testRowCallbackValues() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1, 'a', 1.5, NULL, 12345678901234567890);";
+
+        List<Object> values = new ArrayList<>();
+
+        SqlInsertParser.parse(new StringReader(inputSql), tableNames, row -> {
+            for (int i = 0; i < row.columnCount(); i++) {
+                values.add(row.getValue(i));
+            }
+
+            assertEquals(0, row.getLong(3));
+            assertEquals("1", row.getCharSequence(0).toString());
+        });
+
+        assertEquals(Arrays.asList(1L, "a", 1.5, null, new BigDecimal("12345678901234567890")), values);
+    }
+
+    @Test
+    void testProjection() throws Exception {
+        String inputSql = "CREATE TABLE users (id int, name varchar(10), bio text, age int);\n"
+                + "INSERT INTO users VALUES (1, 'Alice', 'It''s a \\'long\\' text, with (parens);', 30),"
+                + " (2, 'Bob', NULL, -25.5), (3, 'Eve', 12345678901234567890, 0, 'extra');\n"
+                + "INSERT INTO logs VALUES (1, 'skipped');";
+
+        Map<String, Set<String>> projection = Map.of("users", Set.of("id", "age", "#4"));
+
+        SqlInsertParser.parse(inputSql, projection, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(
+                Map.of("id", 1L, "age", 30L),
+                Map.of("id", 2L, "age", -25.5),
+                Map.of("id", 3L, "age", 0L, "#4", "extra")), capturedInserts);
+
+        List<Object> names = new ArrayList<>();
+
+        SqlInsertParser.parse(new StringReader(inputSql), projection, row -> {
+            assertTrue(row.isNull(1));
+            assertEquals(null, row.getCharSequence(2));
+
+            names.add(row.getValue(1));
+        });
+
+        assertEquals(Arrays.asList(null, null, null), names);
+    }
+
+    @Test
+    void testProjectionWithoutColumnNames() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1, 'a', 5);";
+
+        // Names can't be resolved without a column list or a CREATE TABLE
+        var parser = new SqlInsertParser().select("users", "name");
+
+        assertThrows(SqlInsertParseException.class, () -> parser.parse(inputSql, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values))));
+        assertThrows(SqlInsertParseException.class, () -> parser.parse(new StringReader(inputSql), row -> {}));
+        assertEquals(List.of(), capturedInserts);
+
+        new SqlInsertParser().select("users", "#1").parse(inputSql, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+        parser.parse("CREATE TABLE users (id int, name text, tenant int);\n" + inputSql, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(Map.of("#1", "a"), Map.of("name", "a")), capturedInserts);
+    }
+
+    @Test
+    void testUnselectedStatementsAreSkipped() throws Exception {
+        String inputSql = "INSERT INTO logs VALUES (1, 'a;b', \"c\\\";d\", 'e'';f', -1, 2/3) /* ; */, (2, `x;y`) -- ;\n;\n"
+                + "INSERT INTO `logs` (`id`, `semi;colon`) VALUES (1, 'quoted ; semicolon');\n"
+                + "INSERT INTO users VALUES (1, 'ok;');";
+
+        SqlInsertParser.parse(inputSql, tableNames, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(Map.of("#0", 1L, "#1", "ok;")), capturedInserts);
+    }
+
+    @Test
+    void testWhere() throws Exception {
+        String inputSql = "CREATE TABLE orders (id int, tenant_id int, created_at datetime, note text);\n"
+                + "INSERT INTO orders VALUES (1, 1, '2025-12-31 23:59:59', 'old'), (2, 2, '2026-01-02 00:00:00', 'other'),"
+                + " (3, 1, '2026-01-01 00:00:00', 'new'), (4, NULL, '2026-02-01', 'null tenant'), (5, 3, '2026-03-01', 'third');\n"
+                + "INSERT INTO users VALUES (1);";
+
+        var parser = new SqlInsertParser()
+                .select("orders", "id", "note")
+                .select("users")
+                .where("orders", "tenant_id", SqlValuePredicate.in(1, 3))
+                .where("orders", "created_at", SqlValuePredicate.atLeast("2026-01-01"));
+
+        parser.parse(inputSql, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(List.of(
+                Map.of("id", 3L, "note", "new"),
+                Map.of("id", 5L, "note", "third"),
+                Map.of("#0", 1L)), capturedInserts);
+
+        List<Long> ids = new ArrayList<>();
+
+        new SqlInsertParser()
+                .select("orders", "id")
+                .where("orders", "tenant_id", SqlValuePredicate.equalTo(2).negate())
+                .where("orders", "note", SqlValuePredicate.in("old", "null tenant", "third"))
+                .parse(new StringReader(inputSql), row -> ids.add(row.getLong(0)));
+
+        assertEquals(List.of(1L, 4L, 5L), ids);
+    }
+
+    @Test
+    void testWhereUnknownColumn() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1, 'a', 5), (2, 'b', 6);";
+        List<Long> ids = new ArrayList<>();
+
+        // Rows must not pass a test that can't be applied
+        var parser = new SqlInsertParser().select("users").where("users", "tenant", SqlValuePredicate.equalTo(5));
+
+        assertThrows(SqlInsertParseException.class, () -> parser.parse(inputSql, row -> ids.add(row.getLong(0))));
+        assertThrows(SqlInsertParseException.class, () -> parser.parse(new StringReader(inputSql), row -> ids.add(row.getLong(0))));
+        assertThrows(SqlInsertParseException.class, () -> parser.parse("INSERT INTO users (id, name) VALUES (1, 'a');", row -> ids.add(row.getLong(0))));
+        assertEquals(List.of(), ids);
+
+        parser.parse("INSERT INTO users (id, name, tenant) VALUES (1, 'a', 5), (2, 'b', 6);", row -> ids.add(row.getLong(0)));
+        parser.parse("CREATE TABLE users (id int, name text, tenant int);\n" + inputSql, row -> ids.add(row.getLong(0)));
+
+        assertEquals(List.of(1L, 1L), ids);
+    }
+
+    @Test
+    void testValuePredicates() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1, 2.5, 'x', NULL), (2, 10, '3', 'y');";
+
+        List<Long> ids = new ArrayList<>();
+
+        new SqlInsertParser()
+                .select("users")
+                .where("users", "#1", SqlValuePredicate.between(2, 5))
+                .where("users", "#3", SqlValuePredicate.isNull())
+                .parse(inputSql, row -> ids.add(row.getLong(0)));
+
+        assertEquals(List.of(1L), ids);
+
+        ids.clear();
+
+        new SqlInsertParser()
+                .select("users")
+                .where("users", "#2", SqlValuePredicate.atMost(5))
+                .parse(inputSql, row -> ids.add(row.getLong(0)));
+
+        assertEquals(List.of(2L), ids);
+    }
+
+    @Test
+    void testIntegerPredicates() throws Exception {
+        String inputSql = "INSERT INTO t VALUES (1, 3.9), (2, 3), (3, '3'), (4, 3.0), (5, '3.9'), (6, 4.0000001), (7, NULL);";
+
+        List<Long> ids = new ArrayList<>();
+
+        new SqlInsertParser()
+                .select("t")
+                .where("t", "#1", SqlValuePredicate.equalTo(3))
+                .parse(inputSql, row -> ids.add(row.getLong(0)));
+
+        // Decimals aren't truncated
+        assertEquals(List.of(2L, 3L, 4L), ids);
+
+        ids.clear();
+
+        new SqlInsertParser()
+                .select("t")
+                .where("t", "#1", SqlValuePredicate.in(3, 4).negate())
+                .parse(inputSql, row -> ids.add(row.getLong(0)));
+
+        assertEquals(List.of(1L, 5L, 6L, 7L), ids);
+    }
+
+    @Test
+    void testBatches() throws Exception {
+        String inputSql = "INSERT INTO users (id, name, score) VALUES (1, 'Alice', 2.5), (2, NULL, 3), (3, 'Bob', NULL);\n"
+                + "INSERT INTO users (id, name, score) VALUES (4, 'Eve', 1.25, 'extra');\n"
+                + "INSERT INTO orders VALUES (10), (11);\n"
+                + "INSERT INTO users (id) VALUES (5);";
+
+        List<String> batches = new ArrayList<>();
+
+        new SqlInsertParser()
+                .select("users")
+                .select("orders")
+                .setBatchSize(3)
+                .parseBatches(inputSql, (tableName, batch) -> {
+                    StringBuilder sb = new StringBuilder(tableName).append(':');
+
+                    for (int r = 0; r < batch.size(); r++) {
+                        sb.append(" (");
+
+                        for (int c = 0; c < batch.columnCount(); c++) {
+                            sb.append(c > 0 ? ", " : "").append(batch.columnName(c)).append('=').append(batch.getValue(r, c));
+                        }
+
+                        sb.append(')');
+                    }
+
+                    batches.add(sb.toString());
+                });
+
+        assertEquals(List.of(
+                "users: (id=1, name=Alice, score=2.5) (id=2, name=null, score=3) (id=3, name=Bob, score=null)",
+                "users: (id=4, name=Eve, score=1.25, #3=extra)",
+                "orders: (#0=10) (#0=11)",
+                "users: (id=5)"), batches);
+    }
+
+    @Test
+    void testBatchColumns() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1, 'Alice', 2.5), (-2, NULL, 3), (3, '\u0444', NULL), (4, '', 12345678901234567890);";
+
+        List<Integer> sizes = new ArrayList<>();
+
+        new SqlInsertParser()
+                .select("users")
+                .parseBatches(new StringReader(inputSql), (tableName, batch) -> {
+                    assertEquals(4, batch.size());
+                    assertEquals(3, batch.columnCount());
+
+                    assertEquals(List.of(1L, -2L, 3L, 4L), Arrays.stream(batch.getLongs(0), 0, 4).boxed().toList());
+                    assertEquals(List.of(2.5, 3.0, 0.0), Arrays.stream(batch.getDoubles(2), 0, 3).boxed().toList());
+
+                    assertEquals(0b0010L, batch.getNulls(1)[0]);
+                    assertEquals(0b0100L, batch.getNulls(2)[0]);
+                    assertTrue(batch.isNull(1, 1));
+
+                    int[] offsets = batch.getOffsets(1);
+                    assertEquals("Alice\u0444", new String(batch.getChars(1), 0, offsets[4]));
+                    assertEquals(List.of(0, 5, 5, 6, 6), Arrays.stream(offsets, 0, 5).boxed().toList());
+                    assertEquals("\u0444", batch.getCharSequence(2, 1).toString());
+                    assertEquals("", batch.getString(3, 1));
+
+                    assertEquals(new BigDecimal("12345678901234567890"), batch.getValue(3, 2));
+                    assertEquals(3, batch.getLong(1, 2));
+
+                    sizes.add(batch.size());
+                });
+
+        assertEquals(List.of(4), sizes);
+    }
+
+    @Test
+    void testWorkers() throws Exception {
+        StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            sql.append("INSERT INTO a VALUES ");
+
+            for (int j = 0; j < 50; j++) {
+                sql.append(j > 0 ? "," : "").append('(').append(i * 50 + j).append(", 'a").append(j).append("')");
+            }
+
+            sql.append(";\nINSERT INTO b VALUES (").append(i).append(");\n");
+        }
+
+        Map<String, List<Long>> ids = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        new SqlInsertParser()
+                .select("a")
+                .select("b")
+                .setWorkers(2, r -> new Thread(r, "test-worker"))
+                .parse(sql, row -> {
+                    threads.add(Thread.currentThread().getName());
+                    ids.computeIfAbsent(row.getTableName(), t -> new ArrayList<>()).add(row.getLong(0));
+                });
+
+        assertEquals(Set.of("test-worker"), threads);
+        assertEquals(LongStream.range(0, 5000).boxed().toList(), ids.get("a"));
+        assertEquals(LongStream.range(0, 100).boxed().toList(), ids.get("b"));
+
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+
+        new SqlInsertParser()
+                .select("a")
+                .setWorkers(3)
+                .setBatchSize(1000)
+                .parseBatches(sql, (tableName, batch) -> sizes.add(batch.size()));
+
+        assertEquals(5000, sizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testWorkersMixedCaseTables() throws Exception {
+        List<String> tables = List.of("Users", "Orders", "LineItems", "ACCOUNTS", "Products", "Invoices", "Payments", "Stock");
+        StringBuilder sql = new StringBuilder();
+
+        for (String table : tables) {
+            sql.append("CREATE TABLE ").append(table).append(" (id int, name text);\n");
+            sql.append("INSERT INTO ").append(table).append(" VALUES (1, 'a'), (2, 'b');\n");
+        }
+
+        var parser = new SqlInsertParser();
+
+        tables.forEach(parser::select);
+
+        Map<String, List<String>> events = new ConcurrentHashMap<>();
+        var counter = new AtomicInteger();
+
+        parser.setWorkers(3, r -> new Thread(r, "test-worker-" + counter.getAndIncrement()))
+                .parse(sql, new SqlInsertRowCallback() {
+                    @Override
+                    public void onRow(SqlRowView row) {
+                        events.computeIfAbsent(Thread.currentThread().getName(), t -> new ArrayList<>())
+                                .add("row " + row.getTableName().toLowerCase(Locale.ROOT) + " " + row.getValue(1));
+                    }
+
+                    @Override
+                    public void onCreateTable(String tableName, List<String> fieldNames) {
+                        events.computeIfAbsent(Thread.currentThread().getName(), t -> new ArrayList<>())
+                                .add("create " + tableName + " " + fieldNames);
+                    }
+                });
+
+        for (String table : tables) {
+            String name = table.toLowerCase(Locale.ROOT);
+            List<String> expected = List.of("create " + name + " [id, name]", "row " + name + " a", "row " + name + " b");
+
+            assertTrue(events.values().stream().anyMatch(e -> e.stream().filter(s -> s.split(" ")[1].equals(name)).toList().equals(expected)), table);
+        }
+    }
+
+    @Test
+    void testWorkerFailure() throws Exception {
+        String inputSql = "INSERT INTO users VALUES (1), (2), (3);";
+
+        var parser = new SqlInsertParser().select("users").setWorkers(1);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> parser.parse(inputSql, row -> {
+            if (row.getLong(0) == 2) {
+                throw new IllegalStateException("failed");
+            }
+        }));
+
+        assertEquals("failed", ex.getMessage());
+
+        assertThrows(SqlInsertParseException.class, () -> parser.parse("INSERT INTO users VALUES (1, x);",
+                (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values))));
+        assertTrue(capturedInserts.isEmpty());
+    }
+
+    @Test
+    void testWorkerAbortKeepsChannelOpen() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+
+        // Fails only once the worker is in the callback
+        Reader reader = new Reader() {
+            private final Reader rows = new StringReader("INSERT INTO a VALUES (1);\n".repeat(ParallelRowCallback.CHUNK_SIZE * 2));
+            private final Reader failure = new StringReader("INSERT INTO a VALUES (1, ?);");
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int read = rows.read(cbuf, off, len);
+
+                if (read != -1) {
+                    return read;
+                }
+
+                try {
+                    delivering.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+
+                return failure.read(cbuf, off, len);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        Pipe pipe = Pipe.open();
+
+        // Unblocks the callback well after the parse failed
+        Thread writer = new Thread(() -> {
+            try {
+                delivering.await();
+                Thread.sleep(200);
+                pipe.sink().write(ByteBuffer.allocate(1));
+            } catch (InterruptedException | IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        writer.start();
+
+        try (Pipe.SourceChannel channel = pipe.source(); Pipe.SinkChannel sink = pipe.sink()) {
+            assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setWorkers(1)
+                    .parse(reader, row -> {
+                        if (delivering.getCount() == 0) {
+                            return;
+                        }
+
+                        delivering.countDown();
+
+                        try {
+                            channel.read(ByteBuffer.allocate(1));
+                        } catch (IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }));
+
+            // The worker was drained, not interrupted in the middle of a read
+            assertTrue(channel.isOpen());
+        }
+        finally {
+            writer.join();
+        }
+    }
+
+    @Test
+    void testPipeline() throws Exception {
+        StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < 2000; i++) {
+            sql.append("INSERT INTO a VALUES ");
+
+            for (int j = 0; j < 20; j++) {
+                sql.append(j > 0 ? "," : "").append('(').append(i * 20 + j).append(", 'x; \\'y\\' -- \u00e9").append(j).append("')");
+            }
+
+            sql.append(";\n-- ;\n/* ; */ INSERT INTO `b;` VALUES (").append(i).append(");\n");
+        }
+
+        Map<String, List<String>> expected = new HashMap<>();
+        Map<String, List<String>> actual = new ConcurrentHashMap<>();
+
+        new SqlInsertParser().select("a").select("b;")
+                .parse(new StringReader(sql.toString()), row -> expected.computeIfAbsent(row.getTableName(), t -> new ArrayList<>()).add(row.toString()));
+
+        var parser = new SqlInsertParser().select("a").select("b;").setPipelineDepth(2);
+
+        parser.parse(new StringReader(sql.toString()), row -> actual.computeIfAbsent(row.getTableName(), t -> new ArrayList<>()).add(row.toString()));
+
+        assertEquals(40000, expected.get("a").size());
+        assertEquals(expected, actual);
+
+        List<SqlPipelineStage> stages = parser.getPipelineStages();
+
+        assertEquals(List.of("read", "lex", "decode", "deliver"), stages.stream().map(SqlPipelineStage::getName).toList());
+        assertTrue(stages.get(2).getCount() > 1);
+        assertEquals(42000, stages.get(3).getCount());
+    }
+
+    @Test
+    void testPipelineLongStatement(@TempDir Path dir) throws Exception {
+        StringBuilder sql = new StringBuilder("INSERT INTO a VALUES (-2, 'first');\nINSERT INTO a VALUES (0, '").append("Фантастика € \\' ;".repeat(50000)).append("')");
+
+        for (int i = 1; i < 100000; i++) {
+            sql.append(", (").append(i).append(", 'x; \\'y\\' -- \u00e9").append(i).append("')");
+        }
+
+        sql.append(";\nINSERT INTO a VALUES (-1, 'short');\n");
+
+        List<String> expected = new ArrayList<>();
+        List<String> actual = Collections.synchronizedList(new ArrayList<>());
+
+        new SqlInsertParser().select("a").parse(new StringReader(sql.toString()), row -> expected.add(row.toString()));
+
+        var parser = new SqlInsertParser().select("a").setPipelineDepth(1);
+
+        parser.parse(new StringReader(sql.toString()), row -> actual.add(row.toString()));
+
+        assertEquals(100002, expected.size());
+        assertEquals(expected, actual);
+
+        // The statement is passed on in chunks of bounded size, not as a whole
+        assertTrue(parser.getPipelineStages().get(2).getCount() >= sql.length() / InsertPipeline.CHUNK_SIZE);
+
+        // Errors in a streamed statement are reported at the same positions
+        int mid = sql.indexOf(", (50000, ");
+        String bad = sql.substring(0, mid) + "?" + sql.substring(mid);
+        Path file = dir.resolve("dump.sql");
+
+        Files.writeString(file, bad);
+
+        SqlParseException expectedChars = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a")
+                .parse(new StringReader(bad), row -> {}));
+        SqlParseException actualChars = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setPipelineDepth(1)
+                .parse(new StringReader(bad), row -> {}));
+        SqlParseException expectedBytes = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a")
+                .parse(file, row -> {}));
+        SqlParseException actualBytes = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setPipelineDepth(1)
+                .parse(file, row -> {}));
+
+        assertEquals(expectedChars.getPosition(), actualChars.getPosition());
+        assertEquals(expectedBytes.getPosition(), actualBytes.getPosition());
+        assertTrue(expectedBytes.getPosition() > expectedChars.getPosition());
+    }
+
+    @Test
+    void testPipelineErrorPosition() throws Exception {
+        String inputSql = "INSERT INTO a VALUES (1);\n".repeat(5000) + "INSERT INTO a VALUES (1, ?);";
+
+        SqlParseException expected = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a")
+                .parse(new StringReader(inputSql), row -> {}));
+        SqlParseException actual = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setPipelineDepth(1)
+                .parse(new StringReader(inputSql), row -> {}));
+
+        assertEquals(expected.getPosition(), actual.getPosition());
+    }
+
+    @Test
+    void testPipelineErrorBytePosition(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("dump.sql");
+        Files.writeString(file, "INSERT INTO a VALUES (1, 'Фантастика €');\n".repeat(5000) + "INSERT INTO a VALUES (1, ?);");
+
+        SqlParseException expected = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a")
+                .parse(file, row -> {}));
+        SqlParseException actual = assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setPipelineDepth(1)
+                .parse(file, row -> {}));
+
+        assertEquals(Files.size(file) - 3, expected.getPosition());
+        assertEquals(expected.getPosition(), actual.getPosition());
+    }
+
+    @Test
+    void testPipelineErrorKeepsChannelOpen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("dump.sql");
+        Files.writeString(file, "INSERT INTO a VALUES (1, ?);\n" + "INSERT INTO a VALUES (1);\n".repeat(100000));
+
+        for (int i = 0; i < 20; i++) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8);
+
+                assertThrows(SqlParseException.class, () -> new SqlInsertParser().select("a").setPipelineDepth(1)
+                        .parse(reader, row -> {}));
+
+                long position = channel.position();
+
+                // The read stage neither closes the channel nor outlives the parse
+                assertTrue(channel.isOpen());
+                Thread.sleep(1);
+                assertEquals(position, channel.position());
+            }
+        }
+    }
+
+    @Test
+    void testDedup() throws Exception {
+        StringBuilder sql = new StringBuilder("INSERT INTO orders (id, status, note) VALUES ");
+        String[] statuses = { "new", "paid", "shipped" };
+
+        for (int i = 0; i < 3000; i++) {
+            sql.append(i > 0 ? "," : "").append('(').append(i).append(", '").append(statuses[i % 3]).append("', 'n").append(i % 3).append("')");
+        }
+
+        sql.append(';');
+
+        var parser = new SqlInsertParser().select("orders").dedup("orders", "status");
+
+        parser.parse(sql, (tableName, values) -> capturedInserts.add(new LinkedHashMap<>(values)));
+
+        assertEquals(3000, capturedInserts.size());
+
+        for (int i = 3; i < 3000; i++) {
+            assertSame(capturedInserts.get(i % 3).get("status"), capturedInserts.get(i).get("status"));
+            assertNotSame(capturedInserts.get(i % 3).get("note"), capturedInserts.get(i).get("note"));
+        }
+
+        SqlStringCache cache = parser.getStringCache("orders", "status");
+
+        assertEquals(2997, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+
+        List<String> batchValues = new ArrayList<>();
+
+        parser.parseBatches(sql, (tableName, batch) -> {
+            for (int row = 0; row < batch.size(); row++) {
+                batchValues.add(batch.getString(row, 1));
+            }
+        });
+
+        assertEquals(3000, batchValues.size());
+        assertSame(capturedInserts.get(0).get("status"), batchValues.get(2999 - 2999 % 3));
+    }
+
+    @Test
+    void testStringCacheEviction() throws Exception {
+        SqlStringCache cache = new SqlStringCache(4, 8);
+        char[] chars = "abcdefghijklmnop".toCharArray();
+
+        String a = cache.get("a");
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(a, cache.get(chars, 0, 1));
+        }
+
+        for (int i = 1; i < 16; i++) {
+            cache.get(chars, i, 1);
+        }
+
+        // Frequently used values survive a stream of single use values
+        assertSame(a, cache.get(new StringBuilder("a")));
+        assertEquals(4, cache.getCapacity());
+        assertTrue(cache.getEvictions() > 0);
+        assertNotSame(cache.get(new StringBuilder("too long value")), cache.get(new StringBuilder("too long value")));
+    }
+
+    @Test
+    void testBinaryLiterals() throws Exception {
+        String blob = "0123456789abcdef".repeat(1200);
+        String inputSql = "INSERT INTO users VALUES (0xCAFE, X'00ff', _binary 'a\\0\\'\\\\ф', 0xabc, _utf8mb4'x', 0x" + blob + ", 7);\n"
+                + "INSERT INTO users VALUES (x'', 0x0, _binary'', -1, _latin1 X'41', NULL, 8);";
+
+        byte[] bytes = new byte[blob.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(blob.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        List<List<Object>> expected = List.of(
+                List.of(new byte[] { (byte) 0xCA, (byte) 0xFE }, new byte[] { 0, (byte) 0xFF }, "a\0'\\ф".getBytes(StandardCharsets.UTF_8), new byte[] { 0x0A, (byte) 0xBC }, "x", bytes),
+                Arrays.asList(new byte[0], new byte[] { 0 }, new byte[0], -1L, new byte[] { 'A' }, null));
+
+        SqlInsertRowCallback rowCallback = row -> {
+            List<Object> values = new ArrayList<>();
+
+            for (int i = 0; i < row.columnCount(); i++) {
+                values.add(row.getValue(i));
+            }
+
+            capturedInserts.add(Map.of("values", values));
+        };
+
+        SqlInsertParser parser = new SqlInsertParser().select("users");
+
+        parser.parse(inputSql, rowCallback);
+        parser.parse(new StringReader(inputSql), rowCallback);
+        parser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), rowCallback);
+
+        assertEquals(6, capturedInserts.size());
+
+        for (int r = 0; r < 6; r++) {
+            List<?> values = (List<?>) capturedInserts.get(r).get("values");
+            List<Object> row = expected.get(r % 2);
+
+            for (int i = 0; i < row.size(); i++) {
+                if (row.get(i) instanceof byte[] b) {
+                    assertArrayEquals(b, (byte[]) values.get(i), "row " + r + ", column " + i);
+                }
+                else {
+                    assertEquals(row.get(i), values.get(i));
+                }
+            }
+        }
+
+        // Unselected binary columns are skipped, and the token parser reads them too
+        new SqlInsertParser().select("users", "#6").parse(inputSql, row -> capturedInserts.add(Map.of("id", row.getLong(6))));
+
+        assertEquals(7L, capturedInserts.get(6).get("id"));
+        assertEquals(8L, capturedInserts.get(7).get("id"));
+
+        SqlStatement statement = new SqlParser().parse("SELECT 0xCAFE, _binary 'a', _id;").get(0);
+
+        assertEquals(new SqlBinary(new byte[] { (byte) 0xCA, (byte) 0xFE }), statement.getTokens().get(1));
+        assertEquals(new SqlBinary(new byte[] { 'a' }), statement.getTokens().get(3));
+        assertEquals(new SqlIdentifier("_id"), statement.getTokens().get(5));
+        assertThrows(SqlParseException.class, () -> new SqlParser().parse("SELECT X'abc';"));
+    }
+
+    @Test
+    void testIntroducedStrings(@TempDir Path dir) throws Exception {
+        String text = "it''s ф\\n".repeat(500);
+        String inputSql = "INSERT INTO t VALUES (_utf8mb4'a''b', _latin1 \"c\\td\", _utf8mb4 '" + text + "');";
+        List<List<Object>> rows = new ArrayList<>();
+
+        SqlInsertParser parser = new SqlInsertParser().select("t").spill(1000, SqlSpillSink.tempFiles(dir));
+        SqlInsertRowCallback callback = row -> rows.add(Arrays.asList(row.getValue(0), row.getValue(1), row.getValue(2)));
+
+        parser.parse(inputSql, callback);
+        parser.parse(new StringReader(inputSql), callback);
+        parser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), callback);
+
+        assertEquals(3, rows.size());
+
+        for (List<Object> values : rows) {
+            assertEquals(List.of("a'b", "c\td"), values.subList(0, 2));
+
+            // Read into the row like other strings, so long ones are spilled
+            SqlSpilledValue spilled = (SqlSpilledValue) values.get(2);
+
+            assertEquals("it's ф\n".repeat(500), Files.readString(spilled.getPath(), StandardCharsets.UTF_8));
+            spilled.delete();
+        }
+    }
+
+    @Test
+    void testSpillCleanup(@TempDir Path dir) throws Exception {
+        String text = "x".repeat(50000);
+        String hex = "00ff".repeat(50000);
+        SqlInsertParser parser = new SqlInsertParser()
+                .select("t")
+                .where("t", "#2", SqlValuePredicate.equalTo(1))
+                .spill(1000, SqlSpillSink.tempFiles(dir));
+        List<SqlSpilledValue> values = new ArrayList<>();
+
+        // Spilled values of rejected rows are deleted
+        parser.parse("INSERT INTO t VALUES ('" + text + "', 0x" + hex + ", 0), ('" + text + "', X'" + hex + "', 1), (_binary '" + text + "', 0x00, 2);",
+                row -> {
+                    values.add((SqlSpilledValue) row.getValue(0));
+                    values.add((SqlSpilledValue) row.getValue(1));
+                });
+
+        assertEquals(2, values.size());
+
+        try (var files = Files.list(dir)) {
+            assertEquals(Set.of(values.get(0).getPath(), values.get(1).getPath()), files.collect(Collectors.toSet()));
+        }
+
+        for (SqlSpilledValue value : values) {
+            value.delete();
+        }
+
+        // So are values that fail to parse, and those of the row they are in
+        for (String sql : new String[] {
+            "INSERT INTO t VALUES ('" + text,
+            "INSERT INTO t VALUES (X'" + hex + "0'",
+            "INSERT INTO t VALUES (_binary '" + text + "', 0x" + hex + "q);",
+            "INSERT INTO t VALUES ('" + text + "', ?);" }) {
+            assertThrows(SqlParseException.class, () -> parser.parse(sql, row -> {}));
+
+            try (var files = Files.list(dir)) {
+                assertEquals(List.of(), files.toList(), sql.substring(0, 30));
+            }
+        }
+    }
+
+    @Test
+    void testSpill(@TempDir Path dir) throws Exception {
+        String text = "Фантастика 😀 it''s \\n ".repeat(5000);
+        String expectedText = "Фантастика 😀 it's \n ".repeat(5000);
+        String hex = "00ff7f80".repeat(3000);
+        String inputSql = "INSERT INTO users VALUES (1, 'short', '" + text + "', 0x" + hex + ", _binary '" + text + "', X'" + hex + "'), (2, 'x', '', 0x00, _binary 'b', X'');";
+
+        byte[] expectedHex = new byte[hex.length() / 2];
+
+        for (int i = 0; i < expectedHex.length; i++) {
+            expectedHex[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        SqlInsertParser parser = new SqlInsertParser().select("users").spill(1000, SqlSpillSink.tempFiles(dir));
+        List<List<Object>> rows = new ArrayList<>();
+
+        SqlInsertRowCallback callback = row -> {
+            List<Object> values = new ArrayList<>();
+
+            for (int i = 0; i < row.columnCount(); i++) {
+                values.add(row.getValue(i));
+            }
+
+            rows.add(values);
+        };
+
+        parser.parse(inputSql, callback);
+        parser.parse(new StringReader(inputSql), callback);
+        parser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), callback);
+
+        assertEquals(6, rows.size());
+
+        for (int r = 0; r < 6; r += 2) {
+            List<Object> values = rows.get(r);
+
+            assertEquals("short", values.get(1));
+
+            SqlSpilledValue spilled = (SqlSpilledValue) values.get(2);
+
+            assertEquals(expectedText.length(), spilled.getLength());
+            assertEquals(expectedText, Files.readString(spilled.getPath(), StandardCharsets.UTF_8));
+
+            assertArrayEquals(expectedHex, Files.readAllBytes(((SqlSpilledValue) values.get(3)).getPath()));
+            assertArrayEquals(expectedText.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(((SqlSpilledValue) values.get(4)).getPath()));
+
+            spilled = (SqlSpilledValue) values.get(5);
+
+            assertTrue(spilled.isBinary());
+            assertEquals(expectedHex.length, spilled.getLength());
+
+            try (InputStream in = spilled.openInputStream()) {
+                assertArrayEquals(expectedHex, in.readAllBytes());
+            }
+
+            for (int i = 2; i < 6; i++) {
+                ((SqlSpilledValue) values.get(i)).delete();
+            }
+
+            // Short values stay in memory
+            values = rows.get(r + 1);
+
+            assertEquals(List.of(2L, "x", ""), values.subList(0, 3));
+            assertArrayEquals(new byte[] { 0 }, (byte[]) values.get(3));
+            assertArrayEquals(new byte[] { 'b' }, (byte[]) values.get(4));
+            assertArrayEquals(new byte[0], (byte[]) values.get(5));
+        }
+
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+
+        // Values are streamed to the sink, which sees the preceding columns
+        Map<Long, StringWriter> writers = new HashMap<>();
+
+        new SqlInsertParser().select("users", "#0", "#2").spill(100, (row, column, binary) -> {
+            StringWriter writer = new StringWriter();
+
+            writers.put(row.getLong(0), writer);
+
+            return new SqlSpilledValue(writer);
+        }).parse(inputSql, row -> {});
+
+        assertEquals(Set.of(1L), writers.keySet());
+        assertEquals(expectedText, writers.get(1L).toString());
+    }
+
+    @Test
+    void testSpillOddHexDigits(@TempDir Path dir) throws Exception {
+        String hex = "f" + "0123456789abcdef".repeat(10000);
+        String inputSql = "INSERT INTO t VALUES (0x" + hex + ", _binary 0x" + hex + ", 0x" + hex.substring(1) + ");";
+
+        // An odd number of digits pads the first byte, like in memory
+        List<List<Object>> expected = new ArrayList<>();
+
+        new SqlInsertParser().select("t").parse(inputSql, row -> expected.add(List.of(row.getValue(0), row.getValue(1), row.getValue(2))));
+
+        byte[] odd = (byte[]) expected.get(0).get(0);
+
+        assertEquals((hex.length() + 1) / 2, odd.length);
+        assertEquals(0x0f, odd[0]);
+        assertEquals(0x01, odd[1]);
+        assertEquals((byte) 0xef, odd[odd.length - 1]);
+
+        SqlInsertParser parser = new SqlInsertParser().select("t").spill(1000, SqlSpillSink.tempFiles(dir));
+        List<Object> values = new ArrayList<>();
+        SqlInsertRowCallback callback = row -> values.addAll(List.of(row.getValue(0), row.getValue(1), row.getValue(2)));
+
+        parser.parse(inputSql, callback);
+        parser.parse(new StringReader(inputSql), callback);
+        parser.parse(ByteBuffer.wrap(inputSql.getBytes(StandardCharsets.UTF_8)), callback);
+
+        assertEquals(9, values.size());
+
+        for (int i = 0; i < 9; i++) {
+            SqlSpilledValue spilled = (SqlSpilledValue) values.get(i);
+            byte[] bytes = (byte[]) expected.get(0).get(i % 3);
+
+            assertEquals(bytes.length, spilled.getLength());
+            assertArrayEquals(bytes, Files.readAllBytes(spilled.getPath()));
+
+            spilled.delete();
+        }
+
+        // Streams get whole bytes in runs, and can't be padded once written
+        List<byte[]> streamed = new ArrayList<>();
+        List<Integer> writes = new ArrayList<>();
+
+        var streaming = new SqlInsertParser().select("t").spill(1000, (row, column, binary) -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    writes.add(len);
+                    super.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    streamed.add(toByteArray());
+                }
+            };
+
+            return new SqlSpilledValue(out);
+        });
+
+        streaming.parse("INSERT INTO t VALUES (0x" + hex.substring(1) + ");", row -> {});
+
+        assertEquals(1, streamed.size());
+        assertArrayEquals((byte[]) expected.get(0).get(2), streamed.get(0));
+        assertTrue(writes.size() > 2);
+        assertTrue(writes.stream().allMatch(len -> len <= 1000 + 0x2000));
+
+        assertThrows(SqlParseException.class, () -> streaming.parse("INSERT INTO t VALUES (0x" + hex + ");", row -> {}));
+        assertEquals(2, streamed.size());
+    }
+
+    @Test
+    void testDirectBatches() throws Exception {
+        String inputSql = "INSERT INTO users (id, price, name, data, code) VALUES (1, 10, 'Фантастика 😀', 0x00ff, 7), (2, NULL, NULL, NULL, 'x'), (3, 2.5, '', _binary 'ab', NULL);\n"
+                + "INSERT INTO users (id) VALUES (4), (5);";
+
+        List<SqlDirectBatch> batches = new ArrayList<>();
+        var parser = new SqlInsertParser().select("users").setBatchSize(2);
+
+        parser.parseDirectBatches(inputSql, (tableName, batch) -> batches.add(batch));
+
+        assertEquals(List.of(2, 1, 2), batches.stream().map(SqlDirectBatch::size).toList());
+
+        SqlDirectBatch batch = batches.get(0);
+
+        assertEquals(List.of(SqlDirectBatch.Type.BIGINT, SqlDirectBatch.Type.BIGINT, SqlDirectBatch.Type.UTF8, SqlDirectBatch.Type.BINARY, SqlDirectBatch.Type.UTF8),
+                IntStream.range(0, 5).mapToObj(batch::getType).toList());
+
+        ByteBuffer ids = batch.getValueBuffer(0);
+
+        assertEquals(16, ids.remaining());
+        assertEquals(1L, ids.getLong(0));
+        assertEquals(2L, ids.getLong(8));
+
+        // Validity bitmaps have the bit of a row set unless it's NULL
+        assertEquals(1, batch.getValidityBuffer(1).get(0));
+        assertEquals(1, batch.getNullCount(1));
+        assertTrue(batch.isNull(1, 2));
+
+        ByteBuffer offsets = batch.getOffsetBuffer(2);
+        ByteBuffer data = batch.getDataBuffer(2);
+        byte[] name = new byte[offsets.getInt(4) - offsets.getInt(0)];
+
+        data.get(offsets.getInt(0), name);
+
+        assertEquals("Фантастика 😀", new String(name, StandardCharsets.UTF_8));
+        assertEquals(offsets.getInt(4), offsets.getInt(8));
+        assertArrayEquals(new byte[] { 0, (byte) 0xFF }, batch.getBytes(0, 3));
+
+        // An integer followed by a string turns the column into text
+        assertEquals("7", batch.getString(0, 4));
+        assertEquals("x", batch.getString(1, 4));
+
+        SqlDirectBatch last = batches.get(1);
+
+        assertEquals(SqlDirectBatch.Type.DOUBLE, last.getType(1));
+        assertEquals(2.5, last.getDouble(0, 1));
+        assertEquals("", last.getString(0, 2));
+        assertArrayEquals("ab".getBytes(StandardCharsets.UTF_8), last.getBytes(0, 3));
+        assertEquals(SqlDirectBatch.Type.NULL, last.getType(4));
+        assertTrue(last.isNull(0, 4));
+
+        assertEquals(List.of(4L, 5L), List.of(batches.get(2).getLong(0, 0), batches.get(2).getLong(1, 0)));
+
+        for (SqlDirectBatch b : batches) {
+            b.release();
+        }
+
+        assertThrows(IllegalStateException.class, () -> batch.getValueBuffer(0));
+
+        // Columns mixing binary data with other values are binary
+        batches.clear();
+        new SqlInsertParser().select("m").parseDirectBatches("INSERT INTO m VALUES ('a', 0x80, 1), (0xff, 'b', 0x01);", (tableName, b) -> batches.add(b));
+
+        SqlDirectBatch mixed = batches.get(0);
+
+        assertEquals(List.of(SqlDirectBatch.Type.BINARY, SqlDirectBatch.Type.BINARY, SqlDirectBatch.Type.BINARY),
+                IntStream.range(0, 3).mapToObj(mixed::getType).toList());
+        assertArrayEquals(new byte[] { 'a' }, mixed.getBytes(0, 0));
+        assertArrayEquals(new byte[] { (byte) 0xFF }, mixed.getBytes(1, 0));
+        assertArrayEquals(new byte[] { (byte) 0x80 }, mixed.getBytes(0, 1));
+        assertArrayEquals(new byte[] { 'b' }, mixed.getBytes(1, 1));
+        assertArrayEquals(new byte[] { '1' }, mixed.getBytes(0, 2));
+        mixed.release();
+
+        // Buffers of released batches are reused
+        var pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_RETAINED);
+        var first = new SqlDirectBatch(pool, 4096);
+        var row = new SqlRow();
+
+        row.add();
+        row.setLong(0, 1);
+        first.add(row);
+
+        ByteBuffer values = first.getValueBuffer(0);
+
+        first.release();
+
+        assertTrue(pool.getRetained() > 0);
+
+        var second = new SqlDirectBatch(pool, 4096);
+
+        second.add(row);
+
+        assertEquals(0, pool.getRetained());
+        assertEquals(1L, second.getValueBuffer(0).getLong(0));
+        assertEquals(values.getLong(0), second.getLong(0, 0));
+        second.close();
+    }
+
+    @Test
+    void testDirectBatchesRejectSpill(@TempDir Path dir) throws Exception {
+        String inputSql = "INSERT INTO t VALUES (1, '" + "x".repeat(2000) + "');";
+        var parser = new SqlInsertParser().select("t").spill(1000, SqlSpillSink.tempFiles(dir));
+
+        // A spilled value has no place in a direct batch
+        assertThrows(IllegalStateException.class, () -> parser.parseDirectBatches(inputSql, (tableName, batch) -> batch.release()));
+
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+
+        List<SqlDirectBatch> batches = new ArrayList<>();
+
+        parser.spill(1000, null).parseDirectBatches(inputSql, (tableName, batch) -> batches.add(batch));
+
+        assertEquals(1, batches.size());
+        assertEquals(2000, batches.get(0).getOffsetBuffer(1).getInt(4));
+
+        batches.get(0).release();
+    }
+
 }
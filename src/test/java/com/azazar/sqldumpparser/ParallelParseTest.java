@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelParseTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes statements with semicolons, quotes and escapes inside strings,
+     * identifiers and comments, so that many chunk boundaries fall inside
+     * them.
+     */
+    private Path dump(int statements) throws Exception {
+        Random random = new Random(1);
+        StringBuilder sql = new StringBuilder("/*!40101 SET NAMES utf8; */;\n-- a comment; with 'quote\n");
+        String[] values = { "'a;b'", "'it''s;'", "'\\\\'", "'\\';'", "\"x;\\\"y\"", "NULL", "-1.5", "'ф;'", "'/* ; */'", "'-- ;'" };
+
+        for (int i = 0; i < statements; i++) {
+            sql.append("INSERT INTO `t;").append(i % 3).append("` VALUES ");
+
+            for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                sql.append(j > 0 ? "," : "").append('(').append(i).append(',').append(values[random.nextInt(values.length)]).append(')');
+            }
+
+            sql.append(random.nextBoolean() ? ";\n" : " /* ; */;");
+        }
+
+        Path file = dir.resolve("dump.sql");
+        Files.writeString(file, sql, StandardCharsets.UTF_8);
+
+        return file;
+    }
+
+    @Test
+    void testOrdered() throws Exception {
+        Path file = dump(500);
+
+        List<SqlStatement> expected = new ArrayList<>();
+        new SqlParser().parse(file, expected::add);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int chunkSize : new int[] { 1, 7, 100, 4096, 1 << 20 }) {
+                List<SqlStatement> actual = new ArrayList<>();
+                new SqlParser().setParallelChunkSize(chunkSize).parseParallel(file, actual::add, true, pool);
+
+                assertEquals(expected, actual, "chunkSize=" + chunkSize);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testUnordered() throws Exception {
+        Path file = dump(300);
+
+        List<SqlStatement> expected = new ArrayList<>();
+        new SqlParser().parse(file, expected::add);
+
+        List<SqlStatement> actual = new ArrayList<>();
+        new SqlParser().setParallelChunkSize(64).parseParallel(file, actual::add, false);
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    }
+
+    @Test
+    void testErrorPosition() throws Exception {
+        Path file = dir.resolve("broken.sql");
+        String valid = "INSERT INTO t VALUES (1, 'a;b');\n".repeat(100);
+        Files.writeString(file, valid + "INSERT INTO t VALUES (1, ?);\n" + valid, StandardCharsets.UTF_8);
+
+        SqlParseException expected = assertThrows(SqlParseException.class, () -> new SqlParser().parse(file, s -> {}));
+
+        SqlParseException actual = assertThrows(SqlParseException.class, () -> new SqlParser().setParallelChunkSize(256).parseParallel(file, s -> {}, true));
+
+        assertEquals(expected.getPosition(), actual.getPosition());
+        assertTrue(actual.getMessage().startsWith("Unexpected \"?\""));
+    }
+
+}
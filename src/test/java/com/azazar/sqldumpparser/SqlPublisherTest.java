@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlPublisherTest {
+
+    /**
+     * Records the signals of a subscription, requesting a given number of
+     * items up front.
+     */
+    private static class Recorder<T> implements Flow.Subscriber<T> {
+
+        final List<String> items = new ArrayList<>();
+
+        final CountDownLatch received;
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final long initialDemand;
+
+        volatile Flow.Subscription subscription;
+
+        volatile Throwable error;
+
+        volatile boolean completed;
+
+        Recorder(long initialDemand, int expected) {
+            this.initialDemand = initialDemand;
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(T item) {
+            synchronized (items) {
+                items.add(item.toString());
+            }
+
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+
+    }
+
+    /**
+     * An endless dump of single row INSERT statements.
+     */
+    private static class EndlessDump extends InputStream {
+
+        volatile long read;
+
+        private long statements;
+
+        volatile boolean closed;
+
+        private byte[] statement = new byte[0];
+
+        private int pos;
+
+        @Override
+        public int read() {
+            if (pos == statement.length) {
+                statement = ("INSERT INTO t VALUES (" + statements++ + ");\n").getBytes(StandardCharsets.UTF_8);
+                pos = 0;
+            }
+
+            read++;
+
+            return statement[pos++];
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+    }
+
+    @Test
+    void testStatements() throws Exception {
+        var recorder = new Recorder<SqlStatement>(Long.MAX_VALUE, 3);
+
+        new SqlParser().publish("SELECT 1; UPDATE t SET a = 'x;'; DELETE FROM t;").subscribe(recorder);
+
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertTrue(recorder.completed);
+        assertEquals(3, recorder.items.size());
+        assertTrue(recorder.items.get(1).contains("'x;'"));
+    }
+
+    @Test
+    void testParseError() throws Exception {
+        var recorder = new Recorder<SqlStatement>(1, 1);
+
+        new SqlParser().publish("SELECT 1; SELECT 'x").subscribe(recorder);
+
+        // Errors are signaled without demand
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, recorder.items.size());
+        assertInstanceOf(SqlParseException.class, recorder.error);
+    }
+
+    @Test
+    void testDemand() throws Exception {
+        var dump = new EndlessDump();
+        var recorder = new Recorder<SqlRowView>(3, 3);
+
+        new SqlInsertParser().select("t").publishRows(dump).subscribe(recorder);
+
+        assertTrue(recorder.received.await(10, TimeUnit.SECONDS));
+
+        long read = dump.read;
+
+        Thread.sleep(100);
+
+        // The parser waits for demand instead of reading on
+        assertEquals(3, recorder.items.size());
+        assertEquals(read, dump.read);
+
+        recorder.subscription.request(2);
+        recorder.subscription.cancel();
+
+        for (int i = 0; i < 100 && !dump.closed; i++) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(dump.closed);
+        // Cancellation may overtake the last request
+        assertTrue(recorder.items.size() <= 5);
+        assertEquals(List.of("t(#0=0)", "t(#0=1)", "t(#0=2)", "t(#0=3)", "t(#0=4)").subList(0, recorder.items.size()), recorder.items);
+        assertNull(recorder.error);
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    void testInvalidRequest() throws Exception {
+        var recorder = new Recorder<SqlRowView>(0, 0);
+
+        new SqlInsertParser().select("t").publishRows("INSERT INTO t VALUES (1);").subscribe(recorder);
+
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, recorder.error);
+        assertTrue(recorder.items.isEmpty());
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlReservedKeywordTest {
+
+    @Test
+    void testLookup() {
+        assertSame(SqlReservedKeyword.VALUES, SqlReservedKeyword.lookup("VALUES", 0, 6));
+        assertSame(SqlReservedKeyword.VALUES, SqlReservedKeyword.lookup("values", 0, 6));
+        assertSame(SqlReservedKeyword.NULL, SqlReservedKeyword.lookup("(1,nUlL)", 3, 7));
+        assertSame(SqlReservedKeyword.SESSION_USER, SqlReservedKeyword.lookup("session_user", 0, 12));
+
+        assertNull(SqlReservedKeyword.lookup("VALUE", 0, 5));
+        assertNull(SqlReservedKeyword.lookup("VALUESS", 0, 7));
+        assertNull(SqlReservedKeyword.lookup("users", 0, 5));
+    }
+
+    @Test
+    void testCreate() {
+        assertTrue(SqlReservedKeyword.isKeyword("Insert"));
+        assertFalse(SqlReservedKeyword.isKeyword("inserts"));
+        assertSame(SqlReservedKeyword.INTO, SqlReservedKeyword.create("into"));
+        assertThrows(IllegalArgumentException.class, () -> SqlReservedKeyword.create("onto"));
+    }
+
+    @Test
+    void testIdentifiersAreShared() throws Exception {
+        var statements = new SqlParser().parse("INSERT INTO `users` VALUES (1);\nINSERT INTO users VALUES (2);");
+
+        assertSame(statements.get(0).getTokens().get(2), statements.get(1).getTokens().get(2));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlStringTest {
+
+    private static final String SQL = "SELECT 'plain', 'it''s', 'a\\nb\\%', \"q\\\"\", 'ф';";
+
+    private static List<SqlString> strings(List<SqlStatement> statements) {
+        List<SqlString> result = new ArrayList<>();
+
+        for (SqlToken token : statements.get(0).getTokens()) {
+            if (token instanceof SqlString s) {
+                result.add(s);
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    void testLazyValues() throws Exception {
+        List<List<SqlString>> parsed = List.of(
+                strings(new SqlParser().parse(SQL)),
+                strings(new SqlParser().parse(new StringReader(SQL))),
+                strings(new SqlParser().parse(ByteBuffer.wrap(SQL.getBytes(StandardCharsets.UTF_8)))));
+
+        for (List<SqlString> strings : parsed) {
+            assertEquals(List.of(false, true, true, true, false), strings.stream().map(SqlString::hasEscapes).toList());
+            assertEquals(List.of("plain", "it''s", "a\\nb\\%", "q\\\"", "ф"), strings.stream().map(s -> s.getRaw().toString()).toList());
+            assertEquals(List.of("plain", "it's", "a\nb\\%", "q\"", "ф"), strings.stream().map(SqlString::getString).toList());
+            assertEquals(new SqlString("it's"), strings.get(1));
+        }
+    }
+
+    @Test
+    void testEscapedNonAscii() throws Exception {
+        String sql = "SELECT '\\é\\Ф\\😀 \\©';";
+
+        for (List<SqlString> strings : List.of(
+                strings(new SqlParser().parse(sql)),
+                strings(new SqlParser().parse(ByteBuffer.wrap(sql.getBytes(StandardCharsets.UTF_8)))))) {
+            assertEquals("\\é\\Ф\\😀 \\©", strings.get(0).getRaw().toString());
+            assertEquals("éФ😀 ©", strings.get(0).getString());
+        }
+    }
+
+    @Test
+    void testCharSequenceView() throws Exception {
+        SqlString plain = strings(new SqlParser().parse(SQL)).get(0);
+
+        assertEquals("plain", plain.getCharSequence().toString());
+        assertEquals(0, CharSequence.compare("plain", plain.getCharSequence()));
+        assertEquals("it's", strings(new SqlParser().parse(SQL)).get(1).getCharSequence());
+    }
+
+}
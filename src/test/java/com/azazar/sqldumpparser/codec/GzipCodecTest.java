@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.codec;
+
+import com.azazar.sqldumpparser.SqlParseException;
+import com.azazar.sqldumpparser.SqlParser;
+import com.azazar.sqldumpparser.SqlStatement;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipCodecTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gz.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Writes members of random sizes. Stored members contain bytes looking
+     * like a member header, which must not be taken for a boundary.
+     */
+    private Path multiMember(ByteArrayOutputStream plain, int members) throws IOException {
+        Random random = new Random(1);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        for (int i = 0; i < members; i++) {
+            byte[] data = new byte[random.nextInt(200000)];
+
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) ('a' + random.nextInt(random.nextInt(26) + 1));
+            }
+
+            if (data.length > 100) {
+                System.arraycopy(new byte[] { 0x1F, (byte) 0x8B, 8, 0, 0, 0 }, 0, data, random.nextInt(data.length - 6), 6);
+            }
+
+            plain.write(data);
+            compressed.write(gzip(data, i % 3 == 0 ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION));
+        }
+
+        Path file = dir.resolve("dump.sql.gz");
+        Files.write(file, compressed.toByteArray());
+
+        return file;
+    }
+
+    @Test
+    void testMultiMember() throws Exception {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        Path file = multiMember(plain, 40);
+
+        assertArrayEquals(plain.toByteArray(), readAll(new GzipCodec(4).decode(file)));
+        assertArrayEquals(plain.toByteArray(), readAll(new GzipCodec(0).decode(file)));
+        assertArrayEquals(plain.toByteArray(), readAll(InputCodecs.decode(Files.newInputStream(file))));
+    }
+
+    @Test
+    void testLargeMembersAreStreamed() throws Exception {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        Path file = multiMember(plain, 10);
+        ParallelGzipInputStream in = new ParallelGzipInputStream(file, 2, 1000);
+
+        in.start(BackgroundInputStream.DAEMON_THREADS);
+
+        assertArrayEquals(plain.toByteArray(), readAll(in));
+    }
+
+    private static Set<Thread> decompressThreads() {
+        Set<Thread> threads = new HashSet<>();
+
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("sql-decompress") && t.isAlive()) {
+                threads.add(t);
+            }
+        }
+
+        return threads;
+    }
+
+    @Test
+    void testCloseStopsThreads() throws Exception {
+        Path file = multiMember(new ByteArrayOutputStream(), 40);
+
+        for (int i = 0; i < 10; i++) {
+            Set<Thread> before = decompressThreads();
+            InputStream in = new GzipCodec(4).decode(file);
+
+            in.read(new byte[1000]);
+            in.close();
+
+            // Neither the producer nor the workers outlive close(), though a
+            // pool thread may still be exiting after the pool has terminated
+            Set<Thread> after = decompressThreads();
+
+            after.removeAll(before);
+
+            for (Thread t : after) {
+                t.join(1000);
+                assertFalse(t.isAlive());
+            }
+        }
+    }
+
+    @Test
+    void testCorruptMember() throws Exception {
+        byte[] data = gzip("INSERT INTO t VALUES (1);".repeat(1000).getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+
+        // Break the CRC
+        data[data.length - 8] ^= 1;
+
+        Path file = dir.resolve("corrupt.sql.gz");
+        Files.write(file, data);
+
+        assertThrows(ZipException.class, () -> readAll(new GzipCodec(2).decode(file)));
+    }
+
+    @Test
+    void testDetection() throws Exception {
+        byte[] sql = "INSERT INTO `t` VALUES (1,'Фантастика');\nDROP TABLE `t`;".getBytes(StandardCharsets.UTF_8);
+        List<SqlStatement> expected = new SqlParser().parse(new String(sql, StandardCharsets.UTF_8));
+
+        Path file = dir.resolve("t.sql.gz");
+        Files.write(file, gzip(sql, Deflater.DEFAULT_COMPRESSION));
+
+        assertEquals("gzip", InputCodecs.detect(file).getName());
+
+        List<SqlStatement> fromFile = new ArrayList<>();
+        new SqlParser().parse(file, fromFile::add);
+        assertEquals(expected, fromFile);
+
+        List<SqlStatement> fromStream = new ArrayList<>();
+        new SqlParser().parse(new ByteArrayInputStream(gzip(sql, Deflater.DEFAULT_COMPRESSION)), fromStream::add);
+        assertEquals(expected, fromStream);
+
+        List<SqlStatement> fromPlainStream = new ArrayList<>();
+        new SqlParser().parse(new ByteArrayInputStream(sql), fromPlainStream::add);
+        assertEquals(expected, fromPlainStream);
+    }
+
+    @Test
+    void testDecodedOnce() throws Exception {
+        byte[] sql = "INSERT INTO `t` VALUES (1);".getBytes(StandardCharsets.UTF_8);
+
+        // The content of the file is itself gzip data, which isn't SQL
+        Path file = dir.resolve("t.sql.gz.gz");
+        Files.write(file, gzip(gzip(sql, Deflater.DEFAULT_COMPRESSION), Deflater.DEFAULT_COMPRESSION));
+
+        assertThrows(SqlParseException.class, () -> new SqlParser().parse(file, stmt -> {}));
+    }
+
+}
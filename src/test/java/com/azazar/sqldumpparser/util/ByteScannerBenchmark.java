@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import com.azazar.sqldumpparser.SqlParser;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares parsing throughput of byte input with and without word-at-a-time
+ * scanning. Not run by default, use
+ * {@code mvn test -Dtest=ByteScannerBenchmark}.
+ */
+class ByteScannerBenchmark {
+
+    static byte[] generateDump(int statements, int rowsPerStatement) {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("-- MySQL dump\n/*!40101 SET NAMES utf8mb4 */;\n");
+
+        for (int s = 0; s < statements; s++) {
+            sb.append("INSERT INTO `events` (`id`, `tenant_id`, `status`, `name`, `payload`, `created_at`) VALUES ");
+
+            for (int r = 0; r < rowsPerStatement; r++) {
+                if (r > 0) {
+                    sb.append(',');
+                }
+
+                sb.append('(').append(s * rowsPerStatement + r)
+                        .append(',').append(random.nextInt(1000))
+                        .append(',').append(random.nextInt(5))
+                        .append(",'user_").append(random.nextInt(100000)).append("'")
+                        .append(",'{\\\"items\\\":[");
+
+                for (int i = 0, n = random.nextInt(40); i < n; i++) {
+                    sb.append("{\\\"sku\\\":\\\"SKU-").append(random.nextInt(1000000)).append("\\\",\\\"title\\\":\\\"Товар номер ").append(i).append("\\\"},");
+                }
+
+                sb.append("{}]}','2026-01-").append(10 + random.nextInt(18)).append(" 12:00:00')");
+            }
+
+            sb.append(";\n");
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double measure(byte[] dump, ByteScanner scanner) throws Exception {
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            new SqlParser().parse(new ByteParseBuffer(ByteBuffer.wrap(dump), scanner), stmt -> {});
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return dump.length / (best / 1e9) / (1 << 20);
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        byte[] dump = generateDump(200, 500);
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("scalar: %.1f MB/s%n", measure(dump, ByteScanner.SCALAR));
+            System.out.printf("swar:   %.1f MB/s%n", measure(dump, ByteScanner.SWAR));
+        }
+    }
+
+}
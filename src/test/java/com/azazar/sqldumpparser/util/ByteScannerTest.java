@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteScannerTest {
+
+    private static final byte[] ALPHABET = "aZz09_ '\\\"`;*/\n\u0000ÿ@[{\u0080\u007f\u0010".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+
+    private static int[] scan(ByteScanner scanner, ByteBuffer bytes, int from, int to) {
+        return new int[] {
+            scanner.indexOf(bytes, (byte) '\'', (byte) '\\', from, to),
+            scanner.indexOf(bytes, (byte) 0x80, (byte) 0x80, from, to),
+            scanner.skipWordBytes(bytes, from, to),
+            scanner.skipDigitBytes(bytes, from, to)
+        };
+    }
+
+    @Test
+    void testMatchesScalarScan() {
+        Random random = new Random(1);
+
+        for (int round = 0; round < 2000; round++) {
+            byte[] data = new byte[random.nextInt(40)];
+
+            // Long runs of a single class make the word loops go past the first word
+            byte fill = ALPHABET[random.nextInt(ALPHABET.length)];
+
+            for (int i = 0; i < data.length; i++) {
+                data[i] = random.nextInt(4) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)] : fill;
+            }
+
+            int from = data.length == 0 ? 0 : random.nextInt(data.length);
+
+            for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                ByteBuffer bytes = ByteBuffer.wrap(data).order(order);
+
+                int[] expected = scan(ByteScanner.SCALAR, bytes, from, data.length);
+                int[] actual = scan(ByteScanner.SWAR, bytes, from, data.length);
+
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+}
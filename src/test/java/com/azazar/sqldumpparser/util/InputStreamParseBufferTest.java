@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import com.azazar.sqldumpparser.SqlParser;
+import com.azazar.sqldumpparser.SqlStatement;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputStreamParseBufferTest {
+
+    private final String input = "/* header */ INSERT INTO `t` VALUES (1,'Фантастика','a\\'b'),(2,'x',-3.5);\n-- end\nDROP TABLE `t`;";
+
+    /**
+     * Returns at most a few bytes per read.
+     */
+    private static InputStream trickle(byte[] b) {
+        return new FilterInputStream(new ByteArrayInputStream(b)) {
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                return super.read(buf, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    @Test
+    void testSmallBuffers() throws Exception {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<SqlStatement> expected = new SqlParser().parse(input);
+
+        for (int bufferSize : new int[] { 1, 3, 7, 64 }) {
+            List<SqlStatement> actual = new ArrayList<>();
+
+            try (InputStreamParseBuffer buf = new InputStreamParseBuffer(trickle(bytes), bufferSize)) {
+                new SqlParser().parse(buf, actual::add);
+
+                assertEquals(bytes.length, buf.position());
+                assertTrue(buf.isEmpty());
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testEndOfStream() throws Exception {
+        // A NUL byte is data, not the end of the stream
+        String sql = "SELECT _binary'a\0', X'00', 12";
+        byte[] bytes = sql.getBytes(StandardCharsets.UTF_8);
+        List<SqlStatement> actual = new ArrayList<>();
+
+        try (InputStreamParseBuffer buf = new InputStreamParseBuffer(trickle(bytes), 4)) {
+            assertTrue(buf.has(bytes.length - 1));
+            assertEquals(0, buf.charAt(bytes.length - 13));
+            assertFalse(buf.has(bytes.length));
+            assertEquals(bytes.length, buf.length());
+            assertThrows(IndexOutOfBoundsException.class, () -> buf.charAt(bytes.length));
+
+            new SqlParser().parse(buf, actual::add);
+        }
+
+        assertEquals(new SqlParser().parse(sql), actual);
+    }
+
+}
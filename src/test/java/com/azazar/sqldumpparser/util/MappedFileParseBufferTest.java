@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import com.azazar.sqldumpparser.SqlParseException;
+import com.azazar.sqldumpparser.SqlParser;
+import com.azazar.sqldumpparser.SqlStatement;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileParseBufferTest {
+
+    private final String input = "/* header */ INSERT INTO `t` VALUES (1,'Фантастика','a\\'b'),(2,'x',-3.5);\n-- end\nDROP TABLE `t`;";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testSmallWindows() throws Exception {
+        Path file = dir.resolve("dump.sql");
+        Files.writeString(file, input, StandardCharsets.UTF_8);
+
+        List<SqlStatement> expected = new SqlParser().parse(input);
+
+        for (int windowSize : new int[] { 1, 3, 7, 64 }) {
+            List<SqlStatement> actual = new ArrayList<>();
+
+            try (MappedFileParseBuffer buf = new MappedFileParseBuffer(file, windowSize)) {
+                new SqlParser().parse(buf, actual::add);
+
+                assertEquals(input.getBytes(StandardCharsets.UTF_8).length, buf.position());
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testErrorPosition() throws Exception {
+        Path file = dir.resolve("broken.sql");
+        Files.writeString(file, "SELECT 1; /* endless", StandardCharsets.UTF_8);
+
+        SqlParseException ex = assertThrows(SqlParseException.class, () -> new SqlParser().parse(file, stmt -> {}));
+
+        assertEquals(10, ex.getPosition());
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import com.azazar.sqldumpparser.SqlParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadAheadReaderTest {
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    void testReadsInOrder() throws Exception {
+        Random random = new Random(1);
+
+        for (int length : new int[] { 0, 1, 15, 16, 17, 1000 }) {
+            String text = randomText(random, length);
+
+            try (ReadAheadReader reader = new ReadAheadReader(new StringReader(text), 16, 2, Thread::new)) {
+                StringBuilder sb = new StringBuilder();
+                char[] buf = new char[7];
+                int n;
+
+                while ((n = reader.read(buf, 0, random.nextInt(buf.length) + 1)) != -1) {
+                    sb.append(buf, 0, n);
+                }
+
+                assertEquals(text, sb.toString());
+                assertEquals(-1, reader.read());
+            }
+        }
+    }
+
+    @Test
+    void testReadError() throws Exception {
+        Reader failing = new Reader() {
+            int calls;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (calls++ > 0) {
+                    throw new IOException("disk gone");
+                }
+
+                cbuf[off] = 'x';
+
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (ReadAheadReader reader = new ReadAheadReader(failing, 16, 2, Thread::new)) {
+            assertEquals('x', reader.read());
+
+            IOException ex = assertThrows(IOException.class, () -> reader.read(new char[16], 0, 16));
+
+            assertEquals("disk gone", ex.getMessage());
+        }
+    }
+
+    @Test
+    void testParser() throws Exception {
+        StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            sql.append("INSERT INTO `t` VALUES (").append(i).append(",'row ").append(i).append("');\n");
+        }
+
+        assertEquals(new SqlParser().parse(sql), new SqlParser().setReadAhead(3).parse(new StringReader(sql.toString())));
+    }
+
+    @Test
+    void testStopKeepsChannelOpen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("text.txt");
+        Files.writeString(file, randomText(new Random(1), 1 << 20));
+
+        for (int i = 0; i < 50; i++) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                Reader channelReader = Channels.newReader(channel, StandardCharsets.UTF_8);
+                ReadAheadReader reader = new ReadAheadReader(channelReader, 64, 2, Thread::new);
+
+                assertTrue(reader.read() != -1);
+
+                reader.stop();
+
+                long position = channel.position();
+
+                Thread.sleep(1);
+
+                // Stopping neither closes the channel nor leaves a reader behind
+                assertTrue(channel.isOpen());
+                assertEquals(position, channel.position());
+                assertTrue(channelReader.read() != -1);
+            }
+        }
+    }
+
+}
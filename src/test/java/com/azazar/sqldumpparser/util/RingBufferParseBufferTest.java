@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2023 Azazar <spam@azazar.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.azazar.sqldumpparser.util;
+
+import com.azazar.sqldumpparser.SqlParser;
+import com.azazar.sqldumpparser.SqlStatement;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferParseBufferTest {
+
+    private final String input = "/* header */ INSERT INTO `t` VALUES (1,'Фантастика','a\\'b'),(2,'x',-3.5);\n-- end\nDROP TABLE `t`;";
+
+    /**
+     * Returns at most a few characters per read, so that reads end at
+     * arbitrary places in the ring.
+     */
+    private static Reader trickle(String s) {
+        return new FilterReader(new StringReader(s)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    @Test
+    void testWrapAround() throws Exception {
+        List<SqlStatement> expected = new SqlParser().parse(input);
+
+        for (int capacity : new int[] { 1, 4, 7, 64 }) {
+            List<SqlStatement> actual = new ArrayList<>();
+            ParseBuffer buf = new RingBufferParseBuffer(trickle(input), capacity, 1024);
+
+            new SqlParser().parse(buf, actual::add);
+
+            assertEquals(expected, actual);
+            assertEquals(input.length(), buf.position());
+            assertTrue(buf.isEmpty());
+        }
+    }
+
+    @Test
+    void testBufferAccess() {
+        ParseBuffer buf = new RingBufferParseBuffer(trickle("abcdefghij"), 4, 8);
+
+        buf.advance(3);
+        assertEquals("defgh", buf.substring(0, 5));
+        assertEquals(4, buf.indexOf('h', 'x', 0, buf.length()));
+        buf.advance(4);
+
+        StringBuilder sb = new StringBuilder();
+        buf.appendTo(sb, 0, 3);
+        assertEquals("hij", sb.toString());
+        assertEquals(-1, buf.indexOf('a', 'b', 0, buf.length()));
+        assertEquals(3, buf.length());
+        assertTrue(buf.has(2));
+        assertFalse(buf.has(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.charAt(3));
+    }
+
+    @Test
+    void testLongStringWithinLimit() throws Exception {
+        String sql = "INSERT INTO t VALUES ('" + "x".repeat(100000) + "');";
+
+        assertEquals(new SqlParser().parse(sql), new SqlParser().setMaxBufferSize(0x4000).parse(new StringReader(sql)));
+    }
+
+    @Test
+    void testLimitExceeded() {
+        String sql = "SELECT 1; /* " + "x".repeat(100000) + " */ SELECT 2;";
+
+        BufferLimitExceededException ex = assertThrows(BufferLimitExceededException.class,
+                () -> new SqlParser().setMaxBufferSize(0x4000).parse(new StringReader(sql)));
+
+        assertEquals(10, ex.getPosition());
+    }
+
+}